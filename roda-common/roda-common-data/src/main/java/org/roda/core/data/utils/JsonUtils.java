@@ -9,6 +9,7 @@ package org.roda.core.data.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -17,9 +18,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.io.IOUtils;
-import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadataMixIn;
@@ -27,9 +29,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 
@@ -38,6 +44,18 @@ public final class JsonUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(JsonUtils.class);
   private static final String JSON_ERROR_MESSAGE = "Error while parsing JSON";
 
+  // ObjectMapper configuration must not change after being used, so every
+  // mixin combination gets its own (lazily created) mapper; readers and
+  // writers are immutable and thus safely shared between threads
+  private static final ObjectMapper MAPPER = new ObjectMapper(new JsonFactory());
+  private static final ObjectWriter WRITER = MAPPER.writer();
+  private static final ObjectWriter WRITER_WITH_DESCRIPTIVE_METADATA_MIXIN = new ObjectMapper(new JsonFactory())
+    .addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class).writer();
+  private static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, String>>() {});
+  private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Class<?>, ObjectReader> LIST_READERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, ObjectWriter> MIXIN_WRITERS = new ConcurrentHashMap<>();
+
   /** Private empty constructor */
   private JsonUtils() {
 
@@ -52,16 +70,30 @@ public final class JsonUtils {
   }
 
   public static void writeObjectToFile(Object object, Path file) throws GenericException {
-    try {
-      String json = getJsonFromObject(object);
-      if (json != null) {
-        Files.write(file, json.getBytes(), StandardOpenOption.CREATE);
-      }
+    try (OutputStream outputStream = Files.newOutputStream(file, StandardOpenOption.CREATE)) {
+      writeObjectToStream(object, outputStream);
     } catch (IOException e) {
       throw new GenericException("Error writing object, as json, to file", e);
     }
   }
 
+  /**
+   * Writes the object, as json, directly into the stream (which is not closed)
+   * without creating an intermediate string
+   */
+  public static void writeObjectToStream(Object object, OutputStream outputStream) throws GenericException {
+    writeObjectToStream(object, null, outputStream);
+  }
+
+  public static void writeObjectToStream(Object object, Class<?> mixin, OutputStream outputStream)
+    throws GenericException {
+    try {
+      getWriter(object, mixin).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(outputStream, object);
+    } catch (IOException e) {
+      throw new GenericException("Error writing object, as json, to stream", e);
+    }
+  }
+
   public static void appendObjectToFile(Object object, Path file) throws GenericException {
     try {
       String json = getJsonFromObject(object) + "\n";
@@ -74,8 +106,7 @@ public final class JsonUtils {
   public static Map<String, String> getMapFromJson(String json) {
     Map<String, String> ret = new HashMap<>();
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      ret = mapper.readValue(json, new TypeReference<Map<String, String>>() {});
+      ret = MAP_READER.readValue(json);
     } catch (IOException e) {
       LOGGER.error("Error transforming json string to Map<String,String>", e);
     }
@@ -89,66 +120,78 @@ public final class JsonUtils {
   public static String getJsonFromObject(Object object, Class<?> mixin) {
     String ret = null;
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      mapper = addMixinsToMapper(mapper, object, mixin);
-      ret = mapper.writeValueAsString(object);
+      ret = getWriter(object, mixin).writeValueAsString(object);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", object, e);
     }
     return ret;
   }
 
-  private static ObjectMapper addMixinsToMapper(ObjectMapper mapper, Object object, Class<?> mixin) {
+  private static ObjectWriter getWriter(Object object, Class<?> mixin) {
+    boolean descriptiveMetadataMixin = useDescriptiveMetadataMixin(object);
+    ObjectWriter writer;
+    if (mixin == null || object == null) {
+      writer = descriptiveMetadataMixin ? WRITER_WITH_DESCRIPTIVE_METADATA_MIXIN : WRITER;
+    } else {
+      Class<?> objectClass = object.getClass();
+      String key = objectClass.getName() + "|" + mixin.getName() + "|" + descriptiveMetadataMixin;
+      writer = MIXIN_WRITERS.computeIfAbsent(key, k -> {
+        ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+        if (descriptiveMetadataMixin) {
+          mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
+        }
+        mapper.addMixIn(objectClass, mixin);
+        return mapper.writer();
+      });
+    }
+    return writer;
+  }
+
+  private static boolean useDescriptiveMetadataMixin(Object object) {
+    boolean ret = false;
     if (!(object instanceof DescriptiveMetadata)) {
       if (object instanceof List<?>) {
         List<?> objectList = (List<?>) object;
-        if (!objectList.isEmpty() && !(objectList.get(0) instanceof DescriptiveMetadata)) {
-          mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
-        }
+        ret = !objectList.isEmpty() && !(objectList.get(0) instanceof DescriptiveMetadata);
       } else {
-        mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
+        ret = true;
       }
     }
+    return ret;
+  }
 
-    if (mixin != null) {
-      mapper.addMixIn(object.getClass(), mixin);
-    }
+  private static ObjectReader getReader(Class<?> objectClass) {
+    return READERS.computeIfAbsent(objectClass, MAPPER::readerFor);
+  }
 
-    return mapper;
+  private static ObjectReader getListReader(Class<?> objectClass) {
+    return LIST_READERS.computeIfAbsent(objectClass, c -> {
+      JavaType type = TypeFactory.defaultInstance().constructCollectionType(ArrayList.class, c);
+      return MAPPER.readerFor(type);
+    });
   }
 
   public static <T> T getObjectFromJson(Path json, Class<T> objectClass) throws GenericException {
-    T ret;
-    InputStream stream = null;
-    try {
-      stream = Files.newInputStream(json);
-      String jsonString = IOUtils.toString(stream, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+    try (InputStream stream = Files.newInputStream(json)) {
+      return getReader(objectClass).readValue(stream);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
-    } finally {
-      IOUtils.closeQuietly(stream);
     }
-    return ret;
   }
 
   public static <T> T getObjectFromJson(InputStream json, Class<T> objectClass) throws GenericException {
-    T ret;
     try {
-      String jsonString = IOUtils.toString(json, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+      return getReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(e);
     } finally {
       IOUtils.closeQuietly(json);
     }
-    return ret;
   }
 
   public static <T> T getObjectFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readValue(json, objectClass);
+      return getReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -156,18 +199,25 @@ public final class JsonUtils {
 
   public static <T> List<T> getListFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      TypeFactory t = TypeFactory.defaultInstance();
-      return mapper.readValue(json, t.constructCollectionType(ArrayList.class, objectClass));
+      return getListReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
   }
 
+  public static <T> List<T> getListFromJson(InputStream json, Class<T> objectClass) throws GenericException {
+    try {
+      return getListReader(objectClass).readValue(json);
+    } catch (IOException e) {
+      throw new GenericException(JSON_ERROR_MESSAGE, e);
+    } finally {
+      IOUtils.closeQuietly(json);
+    }
+  }
+
   public static JsonNode parseJson(String json) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readTree(json);
+      return MAPPER.readTree(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -175,8 +225,7 @@ public final class JsonUtils {
 
   public static JsonNode parseJson(InputStream json) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readTree(json);
+      return MAPPER.readTree(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     } finally {
@@ -187,8 +236,7 @@ public final class JsonUtils {
   public static String getJsonFromNode(JsonNode node) {
     String ret = null;
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      ret = mapper.writeValueAsString(node);
+      ret = WRITER.writeValueAsString(node);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", node, e);
     }
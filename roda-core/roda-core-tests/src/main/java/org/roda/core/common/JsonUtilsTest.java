@@ -7,6 +7,8 @@
  */
 package org.roda.core.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -45,4 +47,17 @@ public class JsonUtilsTest {
       AssertJUnit.assertNotNull(report);
     }
   }
+
+  @Test
+  public void testStreamRoundTrip() throws GenericException {
+    Report report = new Report();
+    report.setId("report-id");
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    JsonUtils.writeObjectToStream(report, outputStream);
+    AssertJUnit.assertEquals(JsonUtils.getJsonFromObject(report), outputStream.toString());
+
+    Report report2 = JsonUtils.getObjectFromJson(new ByteArrayInputStream(outputStream.toByteArray()), Report.class);
+    AssertJUnit.assertEquals(report.getId(), report2.getId());
+  }
 }
@@ -36,6 +36,7 @@ import org.hamcrest.collection.IsCollectionWithSize;
 import org.roda.core.CorporaConstants;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.TestsHelper;
+import org.roda.core.common.ActionLogWriter;
 import org.roda.core.common.RodaUtils;
 import org.roda.core.common.notifications.EmailNotificationProcessor;
 import org.roda.core.data.common.RodaConstants;
@@ -281,6 +282,28 @@ public class IndexServiceTest {
     model.deleteAIP(aipId);
   }
 
+  @Test
+  public void testAIPMetadataUpdate() throws RODAException {
+    final String aipId = IdUtils.createUUID();
+    final AIP aip = model.createAIP(aipId, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.SOURCE_AIP_ID),
+      RodaConstants.ADMIN);
+
+    // only permissions change, which must reach the representations anyway
+    final String username = "metadata-update-user";
+    aip.getPermissions().setUserPermissions(username, new HashSet<>(Arrays.asList(PermissionType.READ)));
+    final AIP updatedAIP = model.updateAIP(aip, RodaConstants.ADMIN);
+    index.commitAIPs();
+
+    compareAIPWithIndexedAIP(updatedAIP, index.retrieve(IndexedAIP.class, aipId, new ArrayList<>()));
+
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, aipId),
+      new SimpleFilterParameter(RodaConstants.INDEX_PERMISSION_USERS_PREFIX + PermissionType.READ, username));
+    assertEquals(Long.valueOf(aip.getRepresentations().size()), index.count(IndexedRepresentation.class, filter));
+
+    model.deleteAIP(aipId);
+  }
+
   @Test
   public void testListCollections() throws RODAException {
     // set up
@@ -450,6 +473,28 @@ public class IndexServiceTest {
     assertEquals(entries2.getTotalCount(), 0);
   }
 
+  @Test
+  public void testActionLogWriter() throws GenericException, RequestNotValidException {
+    ActionLogWriter writer = new ActionLogWriter(model, logPath, null, 100, 3, 10, false);
+    writer.start();
+    for (int i = 0; i < 10; i++) {
+      LogEntry entry = new LogEntry();
+      entry.setId("WRITER_ID" + i);
+      entry.setActionComponent("WRITER_ACTION");
+      entry.setDatetime(new Date());
+      entry.setState(LOG_ENTRY_STATE.SUCCESS);
+      assertTrue(writer.add(entry));
+    }
+    // pending entries are written before shutdown returns
+    writer.shutdown();
+    assertEquals(writer.getQueueSize(), 0);
+
+    index.commit(LogEntry.class);
+
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.LOG_ACTION_COMPONENT, "WRITER_ACTION"));
+    MatcherAssert.assertThat(index.count(LogEntry.class, filter), Matchers.is(10L));
+  }
+
   @Test
   public void testReindexLogEntry() throws GenericException, RequestNotValidException, AuthorizationDeniedException,
     NotFoundException, InterruptedException {
@@ -0,0 +1,103 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class AdaptiveBlockSizerTest {
+  private static final String PLUGIN = AdaptiveBlockSizerTest.class.getName();
+  private static final int DEFAULT_BLOCK_SIZE = 100;
+  private static final long TARGET_DURATION = 1000;
+  private static final int MIN_BLOCK_SIZE = 10;
+  private static final int MAX_BLOCK_SIZE = 5000;
+
+  @AfterMethod
+  public void tearDown() {
+    AdaptiveBlockSizer.reset();
+  }
+
+  private int getBlockSize() {
+    return AdaptiveBlockSizer.getBlockSize(PLUGIN, DEFAULT_BLOCK_SIZE, TARGET_DURATION, MIN_BLOCK_SIZE,
+      MAX_BLOCK_SIZE);
+  }
+
+  @Test
+  public void testDefaultBlockSizeWithoutMeasurements() {
+    Assert.assertEquals(getBlockSize(), DEFAULT_BLOCK_SIZE);
+    Assert.assertEquals(AdaptiveBlockSizer.getBlockSize(PLUGIN, 1, TARGET_DURATION, MIN_BLOCK_SIZE, MAX_BLOCK_SIZE),
+      MIN_BLOCK_SIZE);
+
+    // empty blocks are not measurements
+    AdaptiveBlockSizer.record(PLUGIN, 0, 1000);
+    Assert.assertEquals(getBlockSize(), DEFAULT_BLOCK_SIZE);
+  }
+
+  @Test
+  public void testBlockSizeFromMeasurements() {
+    // 1 milli per object
+    AdaptiveBlockSizer.record(PLUGIN, 100, 100);
+    Assert.assertEquals(getBlockSize(), 1000);
+
+    // 10 millis per object, weighted: 1 + 0.3 * (10 - 1) = 3.7 millis
+    AdaptiveBlockSizer.record(PLUGIN, 100, 1000);
+    Assert.assertEquals(getBlockSize(), 270);
+  }
+
+  @Test
+  public void testBlockSizeGrowsUpToMax() {
+    AdaptiveBlockSizer.record(PLUGIN, 1, 1000);
+    int blockSize = getBlockSize();
+    Assert.assertEquals(blockSize, MIN_BLOCK_SIZE);
+
+    for (int i = 0; i < 100; i++) {
+      AdaptiveBlockSizer.record(PLUGIN, 1000, 1);
+      int newBlockSize = getBlockSize();
+      Assert.assertTrue(newBlockSize >= blockSize, "Block size should not shrink with faster blocks");
+      Assert.assertTrue(newBlockSize <= MAX_BLOCK_SIZE, "Block size above max: " + newBlockSize);
+      blockSize = newBlockSize;
+    }
+    Assert.assertEquals(blockSize, MAX_BLOCK_SIZE);
+
+    // instantaneous blocks
+    AdaptiveBlockSizer.reset();
+    AdaptiveBlockSizer.record(PLUGIN, 1000, 0);
+    Assert.assertEquals(getBlockSize(), MAX_BLOCK_SIZE);
+  }
+
+  @Test
+  public void testBlockSizeShrinksDownToMin() {
+    AdaptiveBlockSizer.record(PLUGIN, 1000, 1);
+    int blockSize = getBlockSize();
+    Assert.assertEquals(blockSize, MAX_BLOCK_SIZE);
+
+    for (int i = 0; i < 100; i++) {
+      AdaptiveBlockSizer.record(PLUGIN, 1, 1000);
+      int newBlockSize = getBlockSize();
+      Assert.assertTrue(newBlockSize <= blockSize, "Block size should not grow with slower blocks");
+      Assert.assertTrue(newBlockSize >= MIN_BLOCK_SIZE, "Block size below min: " + newBlockSize);
+      blockSize = newBlockSize;
+    }
+    Assert.assertEquals(blockSize, MIN_BLOCK_SIZE);
+  }
+
+  @Test
+  public void testMeasurementsArePerPlugin() {
+    String otherPlugin = PLUGIN + ".Other";
+    AdaptiveBlockSizer.record(PLUGIN, 100, 100);
+    AdaptiveBlockSizer.record(otherPlugin, 1, 1000);
+    Assert.assertEquals(getBlockSize(), 1000);
+    Assert.assertEquals(
+      AdaptiveBlockSizer.getBlockSize(otherPlugin, DEFAULT_BLOCK_SIZE, TARGET_DURATION, MIN_BLOCK_SIZE, MAX_BLOCK_SIZE),
+      MIN_BLOCK_SIZE);
+  }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.plugins.plugins.DummyPlugin;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class JobCheckpointTest {
+  private static Path basePath;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+
+    boolean deploySolr = false;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  private static BitSet positions(int fromInclusive, int toExclusive) {
+    BitSet positions = new BitSet();
+    positions.set(fromInclusive, toExclusive);
+    return positions;
+  }
+
+  @Test
+  public void testCheckpointLifecycle() {
+    String jobId = IdUtils.createUUID();
+    Assert.assertFalse(JobCheckpoint.exists(jobId));
+    Assert.assertNull(JobCheckpoint.get(jobId));
+
+    JobCheckpoint checkpoint = JobCheckpoint.register(jobId);
+    Assert.assertFalse(checkpoint.isResumed());
+    Assert.assertNull(checkpoint.getLastUUID());
+    Assert.assertSame(JobCheckpoint.get(jobId), checkpoint);
+    // a new job can already be resumed from the beginning
+    Assert.assertTrue(JobCheckpoint.exists(jobId));
+
+    JobCheckpoint.unregister(jobId, true);
+    Assert.assertNull(JobCheckpoint.get(jobId));
+    Assert.assertFalse(JobCheckpoint.exists(jobId));
+  }
+
+  @Test
+  public void testLastUUIDOnlyMovesPastProcessedBlocks() {
+    String jobId = IdUtils.createUUID();
+    JobCheckpoint checkpoint = JobCheckpoint.register(jobId);
+    DummyPlugin first = new DummyPlugin();
+    DummyPlugin second = new DummyPlugin();
+    DummyPlugin third = new DummyPlugin();
+    DummyPlugin fourth = new DummyPlugin();
+
+    checkpoint.blockSent(first, "uuid-10");
+    checkpoint.blockSent(second, "uuid-20");
+    checkpoint.blockSent(third, "uuid-30");
+    checkpoint.blockSkipped("uuid-40");
+    checkpoint.blockSent(fourth, "uuid-50");
+
+    // out of order, the first block is still being processed
+    checkpoint.blockDone(second, false);
+    Assert.assertNull(checkpoint.getLastUUID());
+
+    checkpoint.blockDone(first, false);
+    Assert.assertEquals(checkpoint.getLastUUID(), "uuid-20");
+
+    // a failed block is never considered as processed
+    checkpoint.blockDone(third, true);
+    checkpoint.blockDone(fourth, false);
+    Assert.assertEquals(checkpoint.getLastUUID(), "uuid-20");
+
+    // done twice or from an unknown plugin instance is ignored
+    checkpoint.blockDone(first, false);
+    checkpoint.blockDone(new DummyPlugin(), false);
+    Assert.assertEquals(checkpoint.getLastUUID(), "uuid-20");
+
+    JobCheckpoint.unregister(jobId, true);
+  }
+
+  @Test
+  public void testResumeFromLastUUID() {
+    String jobId = IdUtils.createUUID();
+    JobCheckpoint checkpoint = JobCheckpoint.register(jobId);
+    DummyPlugin first = new DummyPlugin();
+    DummyPlugin second = new DummyPlugin();
+    checkpoint.blockSent(first, "uuid-10");
+    checkpoint.blockSent(second, "uuid-20");
+    checkpoint.blockDone(first, false);
+
+    // RODA stopping
+    JobCheckpoint.unregister(jobId, false);
+    Assert.assertTrue(JobCheckpoint.exists(jobId));
+
+    JobCheckpoint resumed = JobCheckpoint.register(jobId);
+    Assert.assertTrue(resumed.isResumed());
+    Assert.assertEquals(resumed.getLastUUID(), "uuid-10");
+
+    // progress of the resumed execution is written as well
+    DummyPlugin third = new DummyPlugin();
+    resumed.blockSent(third, "uuid-20");
+    resumed.blockDone(third, false);
+    resumed.save();
+    JobCheckpoint.unregister(jobId, false);
+    Assert.assertEquals(JobCheckpoint.register(jobId).getLastUUID(), "uuid-20");
+
+    JobCheckpoint.unregister(jobId, true);
+    Assert.assertFalse(JobCheckpoint.exists(jobId));
+  }
+
+  @Test
+  public void testResumeFromProcessedPositions() {
+    String jobId = IdUtils.createUUID();
+    JobCheckpoint checkpoint = JobCheckpoint.register(jobId);
+    DummyPlugin first = new DummyPlugin();
+    DummyPlugin second = new DummyPlugin();
+    DummyPlugin third = new DummyPlugin();
+    checkpoint.blockSent(first, positions(0, 3));
+    checkpoint.blockSent(second, positions(3, 5));
+    checkpoint.blockSent(third, positions(5, 8));
+    checkpoint.blockDone(third, false);
+    checkpoint.blockDone(second, true);
+    checkpoint.save();
+    JobCheckpoint.unregister(jobId, false);
+
+    JobCheckpoint resumed = JobCheckpoint.register(jobId);
+    Assert.assertTrue(resumed.isResumed());
+    Assert.assertNull(resumed.getLastUUID());
+    for (int position = 0; position < 10; position++) {
+      Assert.assertEquals(resumed.isProcessed(position), position >= 5 && position < 8,
+        "Wrong state of position " + position);
+    }
+
+    JobCheckpoint.unregister(jobId, true);
+  }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.plugins.orchestrate.JobPriority;
+import org.roda.core.plugins.orchestrate.akka.AkkaJobsManager.JobWaiting;
+import org.roda.core.plugins.plugins.DummyPlugin;
+import org.roda.core.plugins.plugins.reindex.ReindexAIPPlugin;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class AkkaJobsManagerTest {
+  private static final String REINDEX_PLUGIN = ReindexAIPPlugin.class.getName();
+
+  private static Job createJob(String id, String plugin, PluginType pluginType) {
+    return new Job().setId(id).setPlugin(plugin).setPluginType(pluginType);
+  }
+
+  @Test
+  public void testJobPriority() {
+    Assert.assertEquals(JobPriority.of(createJob("ingest", DummyPlugin.class.getName(), PluginType.INGEST)),
+      JobPriority.HIGH);
+    Assert.assertEquals(JobPriority.of(createJob("misc", DummyPlugin.class.getName(), PluginType.MISC)),
+      JobPriority.MEDIUM);
+    Assert.assertEquals(JobPriority.of(createJob("reindex", REINDEX_PLUGIN, PluginType.MISC)), JobPriority.LOW);
+
+    Assert.assertTrue(JobPriority.HIGH.isHigherThan(JobPriority.MEDIUM));
+    Assert.assertTrue(JobPriority.MEDIUM.isHigherThan(JobPriority.LOW));
+    Assert.assertFalse(JobPriority.LOW.isHigherThan(JobPriority.LOW));
+    Assert.assertFalse(JobPriority.LOW.isHigherThan(JobPriority.HIGH));
+  }
+
+  @Test
+  public void testJobsWaitingOrderedByPriorityAndArrival() {
+    List<Job> arrivals = new ArrayList<>();
+    arrivals.add(createJob("reindex1", REINDEX_PLUGIN, PluginType.MISC));
+    arrivals.add(createJob("misc1", DummyPlugin.class.getName(), PluginType.MISC));
+    arrivals.add(createJob("ingest1", DummyPlugin.class.getName(), PluginType.INGEST));
+    arrivals.add(createJob("reindex2", REINDEX_PLUGIN, PluginType.MISC));
+    arrivals.add(createJob("misc2", DummyPlugin.class.getName(), PluginType.MISC));
+    arrivals.add(createJob("ingest2", DummyPlugin.class.getName(), PluginType.INGEST));
+
+    PriorityQueue<JobWaiting> jobsWaiting = new PriorityQueue<>(JobWaiting.BY_PRIORITY_AND_ARRIVAL);
+    long order = 0;
+    for (Job job : arrivals) {
+      jobsWaiting.offer(new JobWaiting(job, order++));
+    }
+
+    List<String> dequeued = new ArrayList<>();
+    while (!jobsWaiting.isEmpty()) {
+      dequeued.add(jobsWaiting.poll().job.getId());
+    }
+    Assert.assertEquals(dequeued, Arrays.asList("ingest1", "ingest2", "misc1", "misc2", "reindex1", "reindex2"));
+  }
+
+}
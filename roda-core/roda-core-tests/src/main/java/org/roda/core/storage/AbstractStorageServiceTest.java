@@ -556,6 +556,36 @@ public abstract class AbstractStorageServiceTest<T extends StorageService> {
     getStorage().deleteContainer(containerStoragePath);
   }
 
+  public void testGetBinaryContentRange() throws RODAException, IOException {
+
+    // create container
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    getStorage().createContainer(containerStoragePath);
+
+    // create binary
+    final StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    getStorage().createBinary(binaryStoragePath, new StringContentPayload("0123456789"), false);
+    final Binary binary = getStorage().getBinary(binaryStoragePath);
+
+    // 1) range inside the content
+    try (InputStream stream = binary.getContent().createInputStream(2, 5)) {
+      assertEquals("23456", IOUtils.toString(stream, "UTF-8"));
+    }
+
+    // 2) range that goes beyond the end of the content
+    try (InputStream stream = binary.getContent().createInputStream(8, 5)) {
+      assertEquals("89", IOUtils.toString(stream, "UTF-8"));
+    }
+
+    // 3) range after the end of the content
+    try (InputStream stream = binary.getContent().createInputStream(20, 5)) {
+      assertEquals("", IOUtils.toString(stream, "UTF-8"));
+    }
+
+    // cleanup
+    getStorage().deleteContainer(containerStoragePath);
+  }
+
   public void testUpdateBinaryThatDoesntExist() throws RODAException, IOException {
     // create container
     final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
@@ -0,0 +1,143 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the deduplicating File System based StorageService
+ *
+ * @see DeduplicatingFileStorageService
+ */
+public class DeduplicatingFileStorageServiceTest extends AbstractStorageServiceTest<DeduplicatingFileStorageService> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeduplicatingFileStorageServiceTest.class);
+
+  private static Path basePath;
+  private static DeduplicatingFileStorageService storage;
+
+  @BeforeMethod
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(DeduplicatingFileStorageServiceTest.class, true);
+    storage = new DeduplicatingFileStorageService(basePath);
+  }
+
+  @AfterMethod
+  public static void tearDown() throws RODAException {
+    FSUtils.deletePath(basePath);
+    FSUtils.deletePath(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.HISTORY_SUFFIX));
+    FSUtils.deletePath(
+      basePath.getParent().resolve(basePath.getFileName() + DeduplicatingFileStorageService.BLOBS_SUFFIX));
+  }
+
+  @Override
+  @Test
+  public void testClassInstantiation() throws RODAException {
+    try {
+      // basePath is a file
+      Path fileAsBasePath = Files.createTempFile("xpto", null);
+      try {
+        new DeduplicatingFileStorageService(fileAsBasePath);
+        Assert.fail("Storage service should not be created on top of a file");
+      } catch (GenericException e) {
+        // do nothing
+      }
+
+      // test specific cleanup
+      FSUtils.deletePath(fileAsBasePath);
+    } catch (IOException e) {
+      Assert.fail(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testSameContentIsStoredOnce() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    final StoragePath binaryStoragePath1 = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(containerStoragePath);
+    final StoragePath binaryStoragePath2 = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(containerStoragePath);
+    final StoragePath copyStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(binaryStoragePath1, new StringContentPayload("same content"), false);
+    storage.createBinary(binaryStoragePath2, new StringContentPayload("same content"), false);
+    storage.copy(storage, binaryStoragePath1, copyStoragePath);
+
+    Assert.assertTrue(Files.isSameFile(storage.resolve(binaryStoragePath1), storage.resolve(binaryStoragePath2)));
+    Assert.assertTrue(Files.isSameFile(storage.resolve(binaryStoragePath1), storage.resolve(copyStoragePath)));
+
+    // updating one binary must not change the others
+    storage.updateBinaryContent(binaryStoragePath1, new StringContentPayload("other content"), false, false);
+    Assert.assertEquals(
+      IOUtils.toString(storage.getBinary(binaryStoragePath1).getContent().createInputStream(), "UTF-8"),
+      "other content");
+    Assert.assertEquals(
+      IOUtils.toString(storage.getBinary(binaryStoragePath2).getContent().createInputStream(), "UTF-8"),
+      "same content");
+    Assert.assertEquals(IOUtils.toString(storage.getBinary(copyStoragePath).getContent().createInputStream(), "UTF-8"),
+      "same content");
+
+    // referenced contents are kept
+    Assert.assertEquals(storage.deleteUnreferencedBlobs(), 0);
+
+    // cleanup
+    storage.deleteContainer(containerStoragePath);
+  }
+
+  @Override
+  protected DeduplicatingFileStorageService getStorage() {
+    return storage;
+  }
+
+  @Override
+  public void cleanUp() {
+    LOGGER.debug("Cleanning up");
+    try {
+      // recursively delete directory
+      Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Files.delete(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+          Files.delete(dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+      });
+      // re-create directory
+      Files.createDirectory(basePath);
+    } catch (IOException e) {
+      LOGGER.error("Could not clean up", e);
+    }
+  }
+
+}
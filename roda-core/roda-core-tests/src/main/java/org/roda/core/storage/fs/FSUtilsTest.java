@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.util.FileUtility;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FSUtilsTest {
+
+  private static final List<String> ALGORITHMS = Arrays.asList("MD5", "SHA-1", "SHA-256");
+
+  private static Path basePath;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(FSUtilsTest.class, true);
+  }
+
+  @AfterClass
+  public static void tearDown() throws NotFoundException, GenericException {
+    FSUtils.deletePath(basePath);
+  }
+
+  private Path createRandomFile(String name, long size) throws IOException {
+    Path file = basePath.resolve(name);
+    Random random = new Random(size);
+    byte[] buffer = new byte[8192];
+    try (OutputStream out = Files.newOutputStream(file)) {
+      long written = 0;
+      while (written < size) {
+        random.nextBytes(buffer);
+        int length = (int) Math.min(buffer.length, size - written);
+        out.write(buffer, 0, length);
+        written += length;
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void testGenerateContentDigest() throws IOException, GenericException, NoSuchAlgorithmException {
+    // bigger than the digest buffer so that several reads are needed
+    Path file = createRandomFile("digest.bin", 3 * 1048576L + 17);
+
+    Map<String, String> digests = FSUtils.generateContentDigest(file, ALGORITHMS);
+    Assert.assertEquals(digests.keySet().size(), ALGORITHMS.size());
+
+    for (String algorithm : ALGORITHMS) {
+      try (InputStream inputStream = Files.newInputStream(file)) {
+        Assert.assertEquals(digests.get(algorithm), FileUtility.checksum(inputStream, algorithm));
+      }
+      Assert.assertEquals(FSUtils.computeContentDigest(file, algorithm), digests.get(algorithm));
+    }
+  }
+
+  @Test
+  public void testGenerateContentDigests() throws IOException, GenericException {
+    List<Path> files = Arrays.asList(createRandomFile("a.bin", 0), createRandomFile("b.bin", 1024),
+      createRandomFile("c.bin", 1048576));
+
+    Map<Path, Map<String, String>> digests = FSUtils.generateContentDigests(files, ALGORITHMS, 2);
+    for (Path file : files) {
+      Assert.assertEquals(digests.get(file), FSUtils.generateContentDigest(file, ALGORITHMS));
+    }
+  }
+
+  @Test
+  public void testCopyFileReplacesTargetWithoutChangingItsLinks() throws IOException {
+    Path source = createRandomFile("source.bin", 4096);
+    Path target = createRandomFile("target.bin", 1024);
+    Path link = basePath.resolve("link.bin");
+    Files.createLink(link, target);
+    byte[] linkContent = Files.readAllBytes(link);
+
+    try {
+      FSUtils.copyFile(source, target, false);
+      Assert.fail("Existing target should not be replaced");
+    } catch (FileAlreadyExistsException e) {
+      // do nothing
+    }
+
+    FSUtils.copyFile(source, target, true);
+    Assert.assertEquals(Files.readAllBytes(target), Files.readAllBytes(source));
+    Assert.assertEquals(Files.readAllBytes(link), linkContent);
+    try (DirectoryStream<Path> temporaryFiles = Files.newDirectoryStream(basePath, "target.bin.temp*")) {
+      Assert.assertFalse(temporaryFiles.iterator().hasNext());
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StringContentPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the File System based StorageService that packs metadata
+ * binaries
+ *
+ * @see PackedFileStorageService
+ */
+public class PackedFileStorageServiceTest extends AbstractStorageServiceTest<PackedFileStorageService> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PackedFileStorageServiceTest.class);
+
+  private static Path basePath;
+  private static PackedFileStorageService storage;
+
+  @BeforeMethod
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(PackedFileStorageServiceTest.class, true);
+    storage = new PackedFileStorageService(basePath);
+  }
+
+  @AfterMethod
+  public static void tearDown() throws RODAException {
+    FSUtils.deletePath(basePath);
+    FSUtils.deletePath(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.HISTORY_SUFFIX));
+  }
+
+  @Override
+  @Test
+  public void testClassInstantiation() throws RODAException {
+    try {
+      // basePath is a file
+      Path fileAsBasePath = Files.createTempFile("xpto", null);
+      try {
+        new PackedFileStorageService(fileAsBasePath);
+        Assert.fail("Storage service should not be created on top of a file");
+      } catch (GenericException e) {
+        // do nothing
+      }
+
+      // test specific cleanup
+      FSUtils.deletePath(fileAsBasePath);
+    } catch (IOException e) {
+      Assert.fail(e.getMessage());
+    }
+  }
+
+  @Test
+  public void testMetadataBinariesArePacked() throws RODAException, IOException {
+    final String aipId = UUID.randomUUID().toString();
+    final StoragePath metadataStoragePath = DefaultStoragePath.parse(RodaConstants.STORAGE_CONTAINER_AIP, aipId,
+      RodaConstants.STORAGE_DIRECTORY_METADATA);
+    final StoragePath binaryStoragePath = DefaultStoragePath.parse(metadataStoragePath, "descriptive.xml");
+    storage.createBinary(binaryStoragePath, new StringContentPayload("<xml/>"), false);
+
+    // packed, i.e. not a file of its own
+    Assert.assertFalse(Files.exists(storage.resolve(binaryStoragePath)));
+    Assert.assertEquals(
+      IOUtils.toString(storage.getBinary(binaryStoragePath).getContent().createInputStream(), "UTF-8"), "<xml/>");
+    Assert.assertEquals(storage.countResourcesUnderDirectory(metadataStoragePath, false).longValue(), 1L);
+    try (CloseableIterable<Resource> resources = storage.listResourcesUnderDirectory(metadataStoragePath, false)) {
+      Assert.assertEquals(resources.iterator().next().getStoragePath(), binaryStoragePath);
+    }
+
+    storage.updateBinaryContent(binaryStoragePath, new StringContentPayload("<xml></xml>"), false, false);
+    Assert.assertEquals(
+      IOUtils.toString(storage.getBinary(binaryStoragePath).getContent().createInputStream(), "UTF-8"), "<xml></xml>");
+
+    storage.deleteResource(binaryStoragePath);
+    Assert.assertEquals(storage.countResourcesUnderDirectory(metadataStoragePath, false).longValue(), 0L);
+    try {
+      storage.getBinary(binaryStoragePath);
+      Assert.fail("Deleted binary should not be found");
+    } catch (NotFoundException e) {
+      // do nothing
+    }
+  }
+
+  @Test
+  public void testIncompleteLastPackRecordIsIgnored() throws RODAException, IOException {
+    final String aipId = UUID.randomUUID().toString();
+    final StoragePath metadataStoragePath = DefaultStoragePath.parse(RodaConstants.STORAGE_CONTAINER_AIP, aipId,
+      RodaConstants.STORAGE_DIRECTORY_METADATA);
+    final StoragePath binaryStoragePath = DefaultStoragePath.parse(metadataStoragePath, "descriptive.xml");
+    final StoragePath otherBinaryStoragePath = DefaultStoragePath.parse(metadataStoragePath, "other.xml");
+    storage.createBinary(binaryStoragePath, new StringContentPayload("<xml/>"), false);
+
+    // a record that was being appended when RODA stopped
+    Path packFile = storage.resolve(DefaultStoragePath.parse(RodaConstants.STORAGE_CONTAINER_AIP, aipId,
+      PackedFileStorageService.PACK_FILE_NAME));
+    long size = Files.size(packFile);
+    Files.write(packFile, new byte[] {0, 0, 0, 9, 'o', 't', 'h'}, StandardOpenOption.APPEND);
+
+    // reading does not change the file
+    PackedFileStorageService otherStorage = new PackedFileStorageService(basePath);
+    Assert.assertEquals(
+      IOUtils.toString(otherStorage.getBinary(binaryStoragePath).getContent().createInputStream(), "UTF-8"), "<xml/>");
+    Assert.assertEquals(Files.size(packFile), size + 7);
+
+    // writing replaces the incomplete record
+    otherStorage.createBinary(otherBinaryStoragePath, new StringContentPayload("<other/>"), false);
+    Assert.assertEquals(otherStorage.countResourcesUnderDirectory(metadataStoragePath, false).longValue(), 2L);
+    Assert.assertEquals(
+      IOUtils.toString(storage.getBinary(otherBinaryStoragePath).getContent().createInputStream(), "UTF-8"),
+      "<other/>");
+
+    // an invalid record that is not the last one is not silently dropped
+    byte[] content = Files.readAllBytes(packFile);
+    content[Integer.BYTES + 2] ^= 1;
+    Files.write(packFile, content);
+    try {
+      new PackedFileStorageService(basePath).getBinary(otherBinaryStoragePath);
+      Assert.fail("Corrupted pack file should not be read");
+    } catch (GenericException e) {
+      // do nothing
+    }
+  }
+
+  @Override
+  protected PackedFileStorageService getStorage() {
+    return storage;
+  }
+
+  @Override
+  public void cleanUp() {
+    LOGGER.debug("Cleanning up");
+    try {
+      // recursively delete directory
+      Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Files.delete(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+          Files.delete(dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+      });
+      // re-create directory
+      Files.createDirectory(basePath);
+    } catch (IOException e) {
+      LOGGER.error("Could not clean up", e);
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.storage.fs.ParallelDirectoryWalker.WalkEntry;
+import org.roda.core.storage.fs.ParallelDirectoryWalker.WalkIterator;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ParallelDirectoryWalkerTest {
+
+  private static Path basePath;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ParallelDirectoryWalkerTest.class, false);
+  }
+
+  @AfterClass
+  public static void tearDown() throws NotFoundException, GenericException {
+    FSUtils.deletePath(basePath);
+  }
+
+  /**
+   * Creates a tree with (2 files + 3 folders) per folder, 3 levels deep
+   *
+   * @return number of files and folders created
+   */
+  private static int createTree(Path folder, int depth) throws IOException {
+    Files.createDirectories(folder);
+    int created = 0;
+    for (int i = 0; i < 2; i++) {
+      Files.write(folder.resolve("file" + i), new byte[] {(byte) i});
+      created++;
+    }
+    if (depth > 0) {
+      for (int i = 0; i < 3; i++) {
+        created += 1 + createTree(folder.resolve("folder" + i), depth - 1);
+      }
+    }
+    return created;
+  }
+
+  @Test
+  public void testEachDirectoryIsFollowedByItsEntries() throws IOException {
+    Path root = basePath.resolve("ordering");
+    int created = createTree(root, 3);
+
+    List<Path> paths = ParallelDirectoryWalker.walk(root, false).stream().map(WalkEntry::getPath)
+      .collect(Collectors.toList());
+    Assert.assertEquals(paths.size(), created);
+    Assert.assertEquals(new HashSet<>(paths).size(), created);
+
+    for (int i = 0; i < paths.size(); i++) {
+      Path path = paths.get(i);
+      // the parent comes before and everything in between is under the parent
+      if (!path.getParent().equals(root)) {
+        int parentIndex = paths.indexOf(path.getParent());
+        Assert.assertTrue(parentIndex >= 0 && parentIndex < i, path.toString());
+        for (Path between : paths.subList(parentIndex + 1, i)) {
+          Assert.assertTrue(between.startsWith(path.getParent()), between + " before " + path);
+        }
+      }
+    }
+
+    Assert.assertEquals(ParallelDirectoryWalker.count(root, false), created);
+  }
+
+  @Test
+  public void testIteratorCanBeClosedBeforeTheEnd() throws IOException {
+    Path root = basePath.resolve("closing");
+    createTree(root, 3);
+
+    try (WalkIterator iterator = ParallelDirectoryWalker.iterate(root, false)) {
+      Assert.assertTrue(iterator.hasNext());
+      Assert.assertNotNull(iterator.next());
+    }
+  }
+
+  @Test
+  public void testSymbolicLinkLoopsAreNotFollowed() throws IOException {
+    Path root = basePath.resolve("loops");
+    Path folder = root.resolve("folder");
+    Files.createDirectories(folder);
+    Files.write(folder.resolve("file"), new byte[] {1});
+    Files.createSymbolicLink(folder.resolve("link-to-root"), root);
+
+    Set<Path> paths = new HashSet<>();
+    for (WalkEntry entry : ParallelDirectoryWalker.walk(root, true)) {
+      paths.add(entry.getPath());
+    }
+    Assert.assertEquals(paths.size(), 3);
+    Assert.assertTrue(paths.contains(folder.resolve("link-to-root")));
+    Assert.assertEquals(ParallelDirectoryWalker.count(root, true), 3);
+
+    // without following links, the link is just another entry
+    List<WalkEntry> entries = new ArrayList<>(ParallelDirectoryWalker.walk(root, false));
+    Assert.assertEquals(entries.size(), 3);
+  }
+
+  @Test
+  public void testMissingRoot() throws IOException {
+    Path root = basePath.resolve("missing");
+    try {
+      ParallelDirectoryWalker.walk(root, false);
+      Assert.fail("Walking a missing directory should fail");
+    } catch (NoSuchFileException e) {
+      // do nothing
+    }
+    try {
+      ParallelDirectoryWalker.count(root, false);
+      Assert.fail("Counting a missing directory should fail");
+    } catch (NoSuchFileException e) {
+      // do nothing
+    }
+    try {
+      FSUtils.recursivelyListPath(basePath, root);
+      Assert.fail("Listing a missing directory should fail");
+    } catch (NotFoundException e) {
+      // do nothing
+    } catch (GenericException e) {
+      Assert.fail(e.getMessage());
+    }
+  }
+
+}
@@ -59,6 +59,8 @@ import org.reflections.scanners.ResourcesScanner;
 import org.reflections.util.ClasspathHelper;
 import org.reflections.util.ConfigurationBuilder;
 import org.reflections.util.FilterBuilder;
+import org.roda.core.common.ActionLogWriter;
+import org.roda.core.common.CrosswalkRegistry;
 import org.roda.core.common.LdapUtility;
 import org.roda.core.common.Messages;
 import org.roda.core.common.RodaUtils;
@@ -97,6 +99,7 @@ import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.ShadowIndexBuilder;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.migration.MigrationManager;
 import org.roda.core.model.ModelService;
@@ -110,8 +113,10 @@ import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fedora.FedoraStorageService;
+import org.roda.core.storage.fs.DeduplicatingFileStorageService;
 import org.roda.core.storage.fs.FSUtils;
 import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.storage.fs.PackedFileStorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -153,6 +158,7 @@ public class RodaCoreFactory {
 
   private static StorageService storage;
   private static ModelService model;
+  private static ActionLogWriter actionLogWriter = null;
   private static IndexService index;
   private static SolrClient solr;
   private static boolean FEATURE_OVERRIDE_INDEX_CONFIGS = true;
@@ -322,6 +328,11 @@ public class RodaCoreFactory {
         instantiatePluginManager();
         LOGGER.debug("Finished instantiating plugin manager");
 
+        // interrupted jobs can only be resumed after plugins are loaded
+        if (NodeType.MASTER == nodeType && pluginOrchestrator != null) {
+          pluginOrchestrator.resumeInterruptedJobs();
+        }
+
         instantiated = true;
 
       } catch (ConfigurationException e) {
@@ -474,16 +485,19 @@ public class RodaCoreFactory {
     if (TEST_DEPLOY_DEFAULT_RESOURCES) {
       try {
         CloseableIterable<Resource> resources = storage.listResourcesUnderContainer(DefaultStoragePath.parse(""), true);
-        Iterator<Resource> resourceIterator = resources.iterator();
         boolean hasFileResources = false;
-
-        while (resourceIterator.hasNext() && !hasFileResources) {
-          Resource resource = resourceIterator.next();
-          if (!resource.isDirectory()) {
-            hasFileResources = true;
+        try {
+          Iterator<Resource> resourceIterator = resources.iterator();
+          while (resourceIterator.hasNext() && !hasFileResources) {
+            Resource resource = resourceIterator.next();
+            if (!resource.isDirectory()) {
+              hasFileResources = true;
+            }
           }
+        } finally {
+          // stops listing the rest of the storage
+          IOUtils.closeQuietly(resources);
         }
-        IOUtils.closeQuietly(resources);
 
         if (!hasFileResources) {
           copyFilesFromClasspath(RodaConstants.CORE_DEFAULT_FOLDER + "/", rodaHomePath, true);
@@ -609,6 +623,18 @@ public class RodaCoreFactory {
     } else if (storageType == RodaConstants.StorageType.FILESYSTEM) {
       LOGGER.debug("Going to instantiate Filesystem on '{}'", storagePath);
       String trashDirName = getRodaConfiguration().getString("core.storage.filesystem.trash", "trash");
+      if (getRodaConfiguration().getBoolean("core.storage.filesystem.pack_metadata", false)) {
+        return new PackedFileStorageService(storagePath, trashDirName,
+          getRodaConfiguration().getInt("core.storage.filesystem.pack_metadata.max_binary_size",
+            PackedFileStorageService.DEFAULT_MAX_PACKED_BINARY_SIZE));
+      } else if (getRodaConfiguration().getBoolean("core.storage.filesystem.deduplicate", false)) {
+        DeduplicatingFileStorageService deduplicatingStorage = new DeduplicatingFileStorageService(storagePath,
+          trashDirName);
+        if (getRodaConfiguration().getBoolean("core.storage.filesystem.deduplicate.cleanup_on_startup", false)) {
+          deduplicatingStorage.deleteUnreferencedBlobs();
+        }
+        return deduplicatingStorage;
+      }
       return new FileStorageService(storagePath, trashDirName);
     } else {
       LOGGER.error("Unknown storage service '{}'", storageType.name());
@@ -697,31 +723,39 @@ public class RodaCoreFactory {
 
   private static void setSolrSystemProperties() {
     System.setProperty("solr.data.dir", indexDataPath.toString());
-    System.setProperty("solr.data.dir.aip", indexDataPath.resolve(RodaConstants.CORE_AIP_FOLDER).toString());
+    System.setProperty("solr.data.dir.aip", getIndexDataFolder(RodaConstants.CORE_AIP_FOLDER).toString());
     System.setProperty("solr.data.dir.representations",
-      indexDataPath.resolve(RodaConstants.CORE_REPRESENTATION_FOLDER).toString());
-    System.setProperty("solr.data.dir.file", indexDataPath.resolve(RodaConstants.CORE_FILE_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_REPRESENTATION_FOLDER).toString());
+    System.setProperty("solr.data.dir.file", getIndexDataFolder(RodaConstants.CORE_FILE_FOLDER).toString());
     System.setProperty("solr.data.dir.preservationevent",
-      indexDataPath.resolve(RodaConstants.CORE_PRESERVATIONEVENT_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_PRESERVATIONEVENT_FOLDER).toString());
     System.setProperty("solr.data.dir.preservationagent",
-      indexDataPath.resolve(RodaConstants.CORE_PRESERVATIONAGENT_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_PRESERVATIONAGENT_FOLDER).toString());
     System.setProperty("solr.data.dir.actionlog",
-      indexDataPath.resolve(RodaConstants.CORE_ACTIONLOG_FOLDER).toString());
-    System.setProperty("solr.data.dir.members", indexDataPath.resolve(RodaConstants.CORE_MEMBERS_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_ACTIONLOG_FOLDER).toString());
+    System.setProperty("solr.data.dir.members", getIndexDataFolder(RodaConstants.CORE_MEMBERS_FOLDER).toString());
     System.setProperty("solr.data.dir.transferredresource",
-      indexDataPath.resolve(RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER).toString());
-    System.setProperty("solr.data.dir.job", indexDataPath.resolve(RodaConstants.CORE_JOB_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER).toString());
+    System.setProperty("solr.data.dir.job", getIndexDataFolder(RodaConstants.CORE_JOB_FOLDER).toString());
     System.setProperty("solr.data.dir.jobreport",
-      indexDataPath.resolve(RodaConstants.CORE_JOBREPORT_FOLDER).toString());
-    System.setProperty("solr.data.dir.risk", indexDataPath.resolve(RodaConstants.CORE_RISK_FOLDER).toString());
-    System.setProperty("solr.data.dir.agent", indexDataPath.resolve(RodaConstants.CORE_AGENT_FOLDER).toString());
-    System.setProperty("solr.data.dir.format", indexDataPath.resolve(RodaConstants.CORE_FORMAT_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_JOBREPORT_FOLDER).toString());
+    System.setProperty("solr.data.dir.risk", getIndexDataFolder(RodaConstants.CORE_RISK_FOLDER).toString());
+    System.setProperty("solr.data.dir.agent", getIndexDataFolder(RodaConstants.CORE_AGENT_FOLDER).toString());
+    System.setProperty("solr.data.dir.format", getIndexDataFolder(RodaConstants.CORE_FORMAT_FOLDER).toString());
     System.setProperty("solr.data.dir.notification",
-      indexDataPath.resolve(RodaConstants.CORE_NOTIFICATION_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_NOTIFICATION_FOLDER).toString());
     System.setProperty("solr.data.dir.riskincidence",
-      indexDataPath.resolve(RodaConstants.CORE_RISKINCIDENCE_FOLDER).toString());
-    System.setProperty("solr.data.dir.dip", indexDataPath.resolve(RodaConstants.CORE_DIP_FOLDER).toString());
-    System.setProperty("solr.data.dir.dipfile", indexDataPath.resolve(RodaConstants.CORE_DIP_FILE_FOLDER).toString());
+      getIndexDataFolder(RodaConstants.CORE_RISKINCIDENCE_FOLDER).toString());
+    System.setProperty("solr.data.dir.dip", getIndexDataFolder(RodaConstants.CORE_DIP_FOLDER).toString());
+    System.setProperty("solr.data.dir.dipfile", getIndexDataFolder(RodaConstants.CORE_DIP_FILE_FOLDER).toString());
+  }
+
+  /**
+   * @return the data folder of an embedded Solr core, which is not the default
+   *         one if the index was rebuilt in a shadow core
+   */
+  private static Path getIndexDataFolder(String defaultFolder) {
+    return indexDataPath.resolve(ShadowIndexBuilder.getDataFolder(indexDataPath, defaultFolder));
   }
 
   private static void instantiateNodeSpecificObjects(NodeType nodeType) {
@@ -754,6 +788,27 @@ public class RodaCoreFactory {
     instantiateTransferredResourcesScanner();
 
     processPreservationEventTypeProperties();
+
+    instantiateActionLogWriter();
+
+    preloadCrosswalks();
+  }
+
+  private static void preloadCrosswalks() {
+    for (String type : getRodaConfigurationAsList("core", "crosswalks", "preload")) {
+      String[] typeAndVersion = type.split(RodaConstants.METADATA_VERSION_SEPARATOR, 2);
+      CrosswalkRegistry.preload(RodaConstants.CORE_CROSSWALKS_INGEST, typeAndVersion[0],
+        typeAndVersion.length > 1 ? typeAndVersion[1] : null);
+    }
+    CrosswalkRegistry.preload(RodaConstants.CORE_CROSSWALKS_INGEST_OTHER, RodaConstants.PREMIS_METADATA_TYPE,
+      RodaConstants.PREMIS_METADATA_VERSION);
+  }
+
+  private static void instantiateActionLogWriter() {
+    if (getRodaConfiguration().getBoolean("core.actionlogs.async.enabled", true)) {
+      actionLogWriter = new ActionLogWriter(model, logPath, metricsRegistry);
+      actionLogWriter.start();
+    }
   }
 
   private static void instantiateWorkerNodeSpecificObjects() {
@@ -762,6 +817,8 @@ public class RodaCoreFactory {
       getSystemProperty(RodaConstants.CORE_CLUSTER_PORT, RodaConstants.DEFAULT_NODE_PORT),
       getSystemProperty(RodaConstants.CORE_NODE_HOSTNAME, RodaConstants.DEFAULT_NODE_HOSTNAME),
       getSystemProperty(RodaConstants.CORE_NODE_PORT, "0"));
+
+    preloadCrosswalks();
   }
 
   private static void instantiateTestNodeSpecificObjects() {
@@ -798,6 +855,9 @@ public class RodaCoreFactory {
     if (instantiated) {
 
       if (nodeType == NodeType.MASTER) {
+        if (actionLogWriter != null) {
+          actionLogWriter.shutdown();
+        }
         solr.close();
         stopApacheDS();
         pluginManager.shutdown();
@@ -969,6 +1029,14 @@ public class RodaCoreFactory {
     return storage;
   }
 
+  /**
+   * @return the writer to use to register actions asynchronously or null if
+   *         actions must be registered synchronously
+   */
+  public static ActionLogWriter getActionLogWriter() {
+    return actionLogWriter;
+  }
+
   public static ModelService getModelService() {
     return model;
   }
@@ -1029,6 +1097,10 @@ public class RodaCoreFactory {
     return dataPath;
   }
 
+  public static Path getIndexDataPath() {
+    return indexDataPath;
+  }
+
   public static Path getStoragePath() {
     return storagePath;
   }
@@ -1174,6 +1246,7 @@ public class RodaCoreFactory {
     rodaPropertiesCache.clear();
     RODA_SCHEMAS_CACHE.invalidateAll();
     I18N_CACHE.invalidateAll();
+    CrosswalkRegistry.invalidateAll();
     processPreservationEventTypeProperties();
 
     LOGGER.info("Reloaded roda configurations after file change!");
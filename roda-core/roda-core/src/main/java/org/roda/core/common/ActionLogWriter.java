@@ -0,0 +1,185 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.log.LogEntry;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Registers action log entries asynchronously: callers only enqueue entries
+ * (never blocking; when the queue is full the entry is dropped and counted)
+ * and a single writer thread group-commits them, i.e. appends all pending
+ * entries to the daily log file with one write and indexes them in bulk.
+ *
+ * Durability is configurable: the writer may wait up to a flush interval to
+ * gather more entries per write and may force each write to disk (fsync).
+ */
+public class ActionLogWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ActionLogWriter.class);
+
+  private static final int DEFAULT_QUEUE_SIZE = 10000;
+  private static final int DEFAULT_MAX_BATCH_SIZE = 500;
+  private static final int DEFAULT_FLUSH_INTERVAL_IN_MILLIS = 0;
+  private static final long POLL_TIMEOUT_IN_MILLIS = 1000;
+
+  private final ModelService model;
+  private final Path logDirectory;
+  private final BlockingQueue<LogEntry> queue;
+  private final int maxBatchSize;
+  private final long flushIntervalInMillis;
+  private final boolean sync;
+  private final Thread writerThread;
+  private volatile boolean running = false;
+
+  private final Counter writtenEntries;
+  private final Counter droppedEntries;
+  private final Counter failedEntries;
+
+  public ActionLogWriter(ModelService model, Path logDirectory, MetricRegistry metrics) {
+    this(model, logDirectory, metrics, getConfiguredInt(DEFAULT_QUEUE_SIZE, "queue_size"),
+      getConfiguredInt(DEFAULT_MAX_BATCH_SIZE, "batch_size"),
+      getConfiguredInt(DEFAULT_FLUSH_INTERVAL_IN_MILLIS, "flush_interval_ms"),
+      RodaCoreFactory.getRodaConfiguration() != null
+        && RodaCoreFactory.getRodaConfiguration().getBoolean("core.actionlogs.async.fsync", false));
+  }
+
+  public ActionLogWriter(ModelService model, Path logDirectory, MetricRegistry metrics, int queueSize,
+    int maxBatchSize, long flushIntervalInMillis, boolean sync) {
+    this.model = model;
+    this.logDirectory = logDirectory;
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.flushIntervalInMillis = Math.max(0, flushIntervalInMillis);
+    this.sync = sync;
+
+    MetricRegistry registry = metrics != null ? metrics : new MetricRegistry();
+    registry.remove(MetricRegistry.name(ActionLogWriter.class, "queueSize"));
+    registry.register(MetricRegistry.name(ActionLogWriter.class, "queueSize"), (Gauge<Integer>) queue::size);
+    this.writtenEntries = registry.counter(MetricRegistry.name(ActionLogWriter.class, "written"));
+    this.droppedEntries = registry.counter(MetricRegistry.name(ActionLogWriter.class, "dropped"));
+    this.failedEntries = registry.counter(MetricRegistry.name(ActionLogWriter.class, "failed"));
+
+    this.writerThread = new Thread(this::run, "action-log-writer");
+    this.writerThread.setDaemon(true);
+  }
+
+  private static int getConfiguredInt(int defaultValue, String key) {
+    int value = defaultValue;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      value = RodaCoreFactory.getRodaConfigurationAsInt(defaultValue, "core", "actionlogs", "async", key);
+    }
+    return value;
+  }
+
+  public void start() {
+    running = true;
+    writerThread.start();
+  }
+
+  /**
+   * Stops accepting entries and waits for the ones already enqueued to be
+   * written
+   */
+  public void shutdown() {
+    running = false;
+    // not interrupting the writer, as that would close the log file channel
+    // in the middle of a write; it notices the stop within the poll timeout
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while waiting for action log writer to finish");
+    }
+  }
+
+  /**
+   * Enqueues the log entry to be written, without blocking
+   *
+   * @return false if the entry was dropped (writer stopped or queue full)
+   */
+  public boolean add(LogEntry logEntry) {
+    boolean added = running && queue.offer(logEntry);
+    if (!added) {
+      droppedEntries.inc();
+      LOGGER.warn("Action log entry dropped (actionComponent={}, actionMethod={}, id={})",
+        logEntry.getActionComponent(), logEntry.getActionMethod(), logEntry.getId());
+    }
+    return added;
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  public long getDroppedEntries() {
+    return droppedEntries.getCount();
+  }
+
+  private void run() {
+    List<LogEntry> batch = new ArrayList<>(maxBatchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        collectBatch(batch);
+      } catch (InterruptedException e) {
+        // shutting down: write whatever is still pending
+        queue.drainTo(batch);
+      }
+
+      if (!batch.isEmpty()) {
+        write(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  private void collectBatch(List<LogEntry> batch) throws InterruptedException {
+    LogEntry first = running ? queue.poll(POLL_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS) : queue.poll();
+    if (first != null) {
+      batch.add(first);
+      queue.drainTo(batch, maxBatchSize - batch.size());
+
+      // wait a bit for more entries so that they share the same write
+      long deadline = System.currentTimeMillis() + flushIntervalInMillis;
+      long remaining = flushIntervalInMillis;
+      while (running && batch.size() < maxBatchSize && remaining > 0) {
+        LogEntry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+        if (next != null) {
+          batch.add(next);
+          queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+    }
+  }
+
+  private void write(List<LogEntry> batch) {
+    try {
+      model.addLogEntries(batch, logDirectory, true, sync);
+      writtenEntries.inc(batch.size());
+    } catch (RODAException | RuntimeException e) {
+      failedEntries.inc(batch.size());
+      LOGGER.error("Error registering {} action log entries", batch.size(), e);
+    }
+  }
+
+}
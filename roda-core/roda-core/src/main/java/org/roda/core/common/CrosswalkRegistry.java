@@ -0,0 +1,226 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.lang3.tuple.Triple;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.sf.saxon.s9api.Destination;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+
+/**
+ * Keeps the compiled metadata crosswalks (XSLT stylesheets), per stylesheet
+ * found for the base path, metadata type and metadata version, for as long as
+ * RODA runs (or until the configuration is reloaded), together with a pool of
+ * transformers for each of them, so that neither stylesheets are compiled nor
+ * transformers are created for each metadata file.
+ */
+public final class CrosswalkRegistry {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CrosswalkRegistry.class);
+
+  private static final Processor PROCESSOR = new Processor(false);
+
+  private static final int MAX_RESOLVED_STYLESHEETS = 1000;
+
+  // stylesheet (configuration file) found for each base path, metadata type
+  // and metadata version, so that all the ones falling back to the same
+  // stylesheet share its compiled crosswalk
+  private static final Cache<Triple<String, String, String>, String> STYLESHEETS = CacheBuilder.newBuilder()
+    .maximumSize(MAX_RESOLVED_STYLESHEETS).build();
+
+  private static final Map<String, PooledCrosswalk> CROSSWALKS = new ConcurrentHashMap<>();
+
+  /** Private empty constructor */
+  private CrosswalkRegistry() {
+    // do nothing
+  }
+
+  /**
+   * Compiles the crosswalk, if not already compiled, logging (instead of
+   * throwing) any error
+   */
+  public static void preload(String basePath, String metadataType, String metadataVersion) {
+    try {
+      getCrosswalk(basePath, metadataType, metadataVersion);
+    } catch (GenericException e) {
+      LOGGER.warn("Could not preload crosswalk at basePath={}, metadataType={}, metadataVersion={}", basePath,
+        metadataType, metadataVersion, e);
+    }
+  }
+
+  /**
+   * Discards all compiled crosswalks (e.g. because the configuration changed)
+   */
+  public static void invalidateAll() {
+    STYLESHEETS.invalidateAll();
+    CROSSWALKS.clear();
+  }
+
+  /**
+   * Transforms the binary with the crosswalk of the metadata type and version
+   * (falling back to the crosswalk of the metadata type and then to the plain
+   * crosswalk), sending the result to the destination.
+   */
+  public static void transform(Binary binary, String basePath, String metadataType, String metadataVersion,
+    Map<String, String> parameters, Destination destination) throws GenericException {
+    PooledCrosswalk crosswalk = getCrosswalk(basePath, metadataType, metadataVersion);
+    // transformers are pooled by parameter names so that every parameter set
+    // in a previous use is set again
+    Set<String> parameterNames = new TreeSet<>(parameters.keySet());
+    XsltTransformer transformer = crosswalk.borrow(parameterNames);
+
+    try (Reader reader = new InputStreamReader(new BOMInputStream(binary.getContent().createInputStream()))) {
+      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+      xmlReader.setEntityResolver(new RodaEntityResolver());
+      transformer.setSource(new SAXSource(xmlReader, new InputSource(reader)));
+      transformer.setDestination(destination);
+
+      for (Entry<String, String> parameter : parameters.entrySet()) {
+        transformer.setParameter(new QName(parameter.getKey()), new XdmAtomicValue(parameter.getValue()));
+      }
+
+      transformer.transform();
+      // only transformers that completed a transformation are reused
+      crosswalk.giveBack(parameterNames, transformer);
+    } catch (IOException | SAXException | SaxonApiException e) {
+      throw new GenericException("Could not process metadata binary " + binary.getStoragePath()
+        + " metadata type " + metadataType + " and version " + metadataVersion, e);
+    }
+  }
+
+  private static PooledCrosswalk getCrosswalk(String basePath, String metadataType, String metadataVersion)
+    throws GenericException {
+    Triple<String, String, String> key = Triple.of(basePath, metadataType, metadataVersion);
+    String stylesheet = STYLESHEETS.getIfPresent(key);
+    if (stylesheet == null) {
+      stylesheet = findStylesheet(basePath, metadataType, metadataVersion);
+      STYLESHEETS.put(key, stylesheet);
+    }
+
+    PooledCrosswalk crosswalk = CROSSWALKS.get(stylesheet);
+    if (crosswalk == null) {
+      try {
+        crosswalk = new PooledCrosswalk(compile(stylesheet));
+      } catch (SaxonApiException e) {
+        throw new GenericException("Could not compile stylesheet " + stylesheet, e);
+      }
+      // if compiled concurrently, the first one wins
+      PooledCrosswalk existing = CROSSWALKS.putIfAbsent(stylesheet, crosswalk);
+      if (existing != null) {
+        crosswalk = existing;
+      }
+    }
+    return crosswalk;
+  }
+
+  /**
+   * @return the configuration file of the stylesheet of the metadata type and
+   *         version, falling back to the one of the metadata type and then to
+   *         the plain one
+   */
+  private static String findStylesheet(String basePath, String metadataType, String metadataVersion)
+    throws GenericException {
+    List<String> candidates = new ArrayList<>();
+    if (metadataType != null) {
+      String lowerCaseMetadataType = metadataType.toLowerCase();
+      if (metadataVersion != null) {
+        candidates.add(
+          basePath + lowerCaseMetadataType + RodaConstants.METADATA_VERSION_SEPARATOR + metadataVersion + ".xslt");
+      }
+      candidates.add(basePath + lowerCaseMetadataType + ".xslt");
+    }
+    // TODO change plain to default
+    candidates.add(basePath + "plain.xslt");
+
+    for (String candidate : candidates) {
+      InputStream transformerStream = RodaCoreFactory.getConfigurationFileAsStream(candidate);
+      if (transformerStream != null) {
+        IOUtils.closeQuietly(transformerStream);
+        return candidate;
+      }
+    }
+
+    throw new GenericException("Could not find stylesheet nor fallback at basePath=" + basePath + ", metadataType="
+      + metadataType + ", metadataVersion=" + metadataVersion);
+  }
+
+  private static XsltExecutable compile(String stylesheet) throws SaxonApiException, GenericException {
+    InputStream transformerStream = RodaCoreFactory.getConfigurationFileAsStream(stylesheet);
+    if (transformerStream == null) {
+      throw new GenericException("Could not find stylesheet " + stylesheet);
+    }
+
+    try {
+      XsltCompiler compiler = PROCESSOR.newXsltCompiler();
+      compiler.setURIResolver(new RodaURIFileResolver());
+      return compiler.compile(new StreamSource(transformerStream));
+    } finally {
+      IOUtils.closeQuietly(transformerStream);
+    }
+  }
+
+  private static class PooledCrosswalk {
+    private final XsltExecutable executable;
+    private final Map<Set<String>, Queue<XsltTransformer>> transformers = new ConcurrentHashMap<>();
+
+    public PooledCrosswalk(XsltExecutable executable) {
+      this.executable = executable;
+    }
+
+    public XsltTransformer borrow(Set<String> parameterNames) {
+      XsltTransformer transformer = null;
+      Queue<XsltTransformer> pool = transformers.get(parameterNames);
+      if (pool != null) {
+        transformer = pool.poll();
+      }
+      return transformer != null ? transformer : executable.load();
+    }
+
+    public void giveBack(Set<String> parameterNames, XsltTransformer transformer) {
+      transformers.computeIfAbsent(parameterNames, k -> new ConcurrentLinkedQueue<>()).offer(transformer);
+    }
+  }
+
+}
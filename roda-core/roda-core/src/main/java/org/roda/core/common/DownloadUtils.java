@@ -56,7 +56,7 @@ public class DownloadUtils {
 
         @Override
         public void consumeOutputStream(OutputStream out) throws IOException {
-          CloseableIterable<Resource> resources;
+          CloseableIterable<Resource> resources = null;
           BufferedOutputStream bos = new BufferedOutputStream(out);
           ZipOutputStream zos = new ZipOutputStream(bos);
           try {
@@ -85,11 +85,10 @@ public class DownloadUtils {
               }
             }
 
-            IOUtils.closeQuietly(resources);
-
           } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
             throw new IOException(e);
           } finally {
+            IOUtils.closeQuietly(resources);
             IOUtils.closeQuietly(zos);
             IOUtils.closeQuietly(bos);
             IOUtils.closeQuietly(out);
@@ -56,7 +56,7 @@ import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.plugins.characterization.PremisSkeletonPluginUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
-import org.roda.core.util.FileUtility;
+import org.roda.core.storage.fs.FSUtils;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,9 +106,7 @@ public final class PremisV3Utils {
   public static List<Fixity> calculateFixities(Binary binary, Collection<String> algorithms, String originator)
     throws IOException, NoSuchAlgorithmException {
     List<Fixity> ret = new ArrayList<>();
-    InputStream stream = binary.getContent().createInputStream();
-
-    Map<String, String> checksums = FileUtility.checksums(stream, algorithms);
+    Map<String, String> checksums = FSUtils.generateContentDigest(binary, algorithms);
 
     for (Entry<String, String> entry : checksums.entrySet()) {
       String algorithm = entry.getKey();
@@ -116,7 +114,6 @@ public final class PremisV3Utils {
       ret.add(new Fixity(algorithm, checksum, originator));
     }
 
-    IOUtils.closeQuietly(stream);
     return ret;
   }
 
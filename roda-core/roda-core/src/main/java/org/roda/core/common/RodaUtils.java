@@ -44,7 +44,6 @@ import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.lang3.tuple.Triple;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
@@ -74,19 +73,6 @@ public class RodaUtils {
 
   private static final Processor PROCESSOR = new Processor(false);
 
-  private static final LoadingCache<Triple<String, String, String>, XsltExecutable> CACHE = CacheBuilder.newBuilder()
-    .expireAfterWrite(1, TimeUnit.MINUTES).build(new CacheLoader<Triple<String, String, String>, XsltExecutable>() {
-
-      @Override
-      public XsltExecutable load(Triple<String, String, String> key) throws Exception {
-        String basePath = key.getLeft();
-        String metadataType = key.getMiddle();
-        String metadataVersion = key.getRight();
-        return createMetadataTransformer(basePath, metadataType, metadataVersion);
-      }
-
-    });
-
   private static final LoadingCache<String, XsltExecutable> EVENT_CACHE = CacheBuilder.newBuilder()
     .expireAfterWrite(1, TimeUnit.MINUTES).build(new CacheLoader<String, XsltExecutable>() {
       @Override
@@ -233,36 +219,10 @@ public class RodaUtils {
 
   public static Reader applyMetadataStylesheet(Binary binary, String basePath, String metadataType,
     String metadataVersion, Map<String, String> parameters) throws GenericException {
-    try (
-      Reader descMetadataReader = new InputStreamReader(new BOMInputStream(binary.getContent().createInputStream()))) {
-
-      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-      xmlReader.setEntityResolver(new RodaEntityResolver());
-      InputSource source = new InputSource(descMetadataReader);
-      Source text = new SAXSource(xmlReader, source);
-
-      XsltExecutable xsltExecutable = CACHE.get(Triple.of(basePath, metadataType, metadataVersion));
-
-      XsltTransformer transformer = xsltExecutable.load();
-      CharArrayWriter transformerResult = new CharArrayWriter();
-
-      transformer.setSource(text);
-      transformer.setDestination(PROCESSOR.newSerializer(transformerResult));
-
-      for (Entry<String, String> parameter : parameters.entrySet()) {
-        QName qName = new QName(parameter.getKey());
-        XdmValue xdmValue = new XdmAtomicValue(parameter.getValue());
-        transformer.setParameter(qName, xdmValue);
-      }
-
-      transformer.transform();
-
-      return new CharArrayReader(transformerResult.toCharArray());
-
-    } catch (IOException | SAXException | ExecutionException | SaxonApiException e) {
-      throw new GenericException("Could not process descriptive metadata binary " + binary.getStoragePath()
-        + " metadata type " + metadataType + " and version " + metadataVersion, e);
-    }
+    CharArrayWriter transformerResult = new CharArrayWriter();
+    CrosswalkRegistry.transform(binary, basePath, metadataType, metadataVersion, parameters,
+      PROCESSOR.newSerializer(transformerResult));
+    return new CharArrayReader(transformerResult.toCharArray());
   }
 
   public static Reader applyEventStylesheet(Binary binary, boolean onlyDetails, Map<String, String> translations,
@@ -300,46 +260,6 @@ public class RodaUtils {
     }
   }
 
-  protected static XsltExecutable createMetadataTransformer(String basePath, String metadataType,
-    String metadataVersion) throws SaxonApiException, GenericException {
-    InputStream transformerStream = null;
-
-    try {
-      // get xslt from metadata type and version if defined
-      if (metadataType != null) {
-        String lowerCaseMetadataType = metadataType.toLowerCase();
-        if (metadataVersion != null) {
-          String lowerCaseMetadataTypeWithVersion = lowerCaseMetadataType + RodaConstants.METADATA_VERSION_SEPARATOR
-            + metadataVersion;
-          transformerStream = RodaCoreFactory
-            .getConfigurationFileAsStream(basePath + lowerCaseMetadataTypeWithVersion + ".xslt");
-        }
-        if (transformerStream == null) {
-          transformerStream = RodaCoreFactory.getConfigurationFileAsStream(basePath + lowerCaseMetadataType + ".xslt");
-        }
-      }
-
-      // fallback
-      if (transformerStream == null) {
-        // TODO change plain to default
-        transformerStream = RodaCoreFactory.getConfigurationFileAsStream(basePath + "plain.xslt");
-      }
-
-      if (transformerStream == null) {
-        throw new GenericException("Could not find stylesheet nor fallback at basePath=" + basePath + ", metadataType="
-          + metadataType + ", metadataVersion=" + metadataVersion);
-      }
-
-      XsltCompiler compiler = PROCESSOR.newXsltCompiler();
-      compiler.setURIResolver(new RodaURIFileResolver());
-      // compiler.setSchemaAware(false);
-      return compiler.compile(new StreamSource(transformerStream));
-
-    } finally {
-      IOUtils.closeQuietly(transformerStream);
-    }
-  }
-
   protected static XsltExecutable createEventTransformer(String path) throws SaxonApiException, GenericException {
     InputStream transformerStream = RodaCoreFactory.getConfigurationFileAsStream(path);
     try {
@@ -9,9 +9,18 @@ package org.roda.core.index;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
@@ -19,6 +28,7 @@ import javax.xml.xpath.XPathExpressionException;
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.roda.core.RodaCoreFactory;
@@ -39,7 +49,6 @@ import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIP;
-import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.DIP;
 import org.roda.core.data.v2.ip.DIPFile;
 import org.roda.core.data.v2.ip.File;
@@ -48,6 +57,7 @@ import org.roda.core.data.v2.ip.IndexedDIP;
 import org.roda.core.data.v2.ip.IndexedFile;
 import org.roda.core.data.v2.ip.IndexedRepresentation;
 import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Permissions.PermissionType;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.TransferredResource;
@@ -68,6 +78,10 @@ import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.data.v2.user.User;
+import org.roda.core.index.utils.AIPSubtreePropagator;
+import org.roda.core.index.utils.AncestorsCache;
+import org.roda.core.index.utils.FulltextReader;
+import org.roda.core.index.utils.SolrDocumentBuffer;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
@@ -90,38 +104,88 @@ public class IndexModelObserver implements ModelObserver {
 
   private static final int TEN_MB_IN_BYTES = 10485760;
   private static final Logger LOGGER = LoggerFactory.getLogger(IndexModelObserver.class);
+  private static final int DEFAULT_PENDING_UPDATES_FLUSH_INTERVAL_MS = 1000;
+
+  private static final ScheduledExecutorService PENDING_UPDATES_FLUSHER = Executors
+    .newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "index-pending-updates-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
 
   private final SolrClient index;
   private final ModelService model;
+  private final AncestorsCache ancestorsCache;
+  private final AIPSubtreePropagator propagator;
+  private final FulltextReader fulltextReader;
+  // partial updates of files that are sent to the index in batches
+  private final SolrDocumentBuffer pendingFileUpdates;
+  private final long pendingUpdatesFlushInterval;
+  private ScheduledFuture<?> scheduledFlush = null;
 
   public IndexModelObserver(SolrClient index, ModelService model) {
     super();
     this.index = index;
     this.model = model;
+    this.ancestorsCache = new AncestorsCache(model);
+    this.propagator = new AIPSubtreePropagator(index);
+    this.fulltextReader = new FulltextReader();
+    this.pendingFileUpdates = new SolrDocumentBuffer(index);
+    this.pendingUpdatesFlushInterval = getPendingUpdatesFlushInterval();
+  }
+
+  private static long getPendingUpdatesFlushInterval() {
+    long interval = DEFAULT_PENDING_UPDATES_FLUSH_INTERVAL_MS;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      interval = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_PENDING_UPDATES_FLUSH_INTERVAL_MS, "core", "index",
+        "pending_updates_flush_interval_ms");
+    }
+    return interval;
   }
 
   @Override
   public ReturnWithExceptions<Void> aipCreated(final AIP aip) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
     try {
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
       ReturnWithExceptions<Void> aipExceptions = indexAIP(aip, ancestors);
       exceptions.addExceptions(aipExceptions.getExceptions());
 
-      ReturnWithExceptions<Void> repExceptions = indexRepresentations(aip, ancestors);
+      ReturnWithExceptions<Void> repExceptions = indexRepresentations(aip, ancestors, buffer);
       exceptions.addExceptions(repExceptions.getExceptions());
 
-      ReturnWithExceptions<Void> eventExceptions = indexPreservationsEvents(aip.getId(), null);
+      ReturnWithExceptions<Void> eventExceptions = indexPreservationsEvents(aip.getId(), null, buffer);
       exceptions.addExceptions(eventExceptions.getExceptions());
 
     } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
       LOGGER.error("Error getting ancestors when creating AIP");
       exceptions.addException(e);
+    } finally {
+      flushBuffer(buffer, exceptions);
+      propagator.subtreeIndexed(aip.getId());
     }
 
     return exceptions;
   }
 
+  private void flushBuffer(SolrDocumentBuffer buffer, ReturnWithExceptions<?> exceptions) {
+    try {
+      buffer.flush();
+    } catch (SolrServerException | SolrException | IOException e) {
+      LOGGER.error("Cannot send buffered documents to index", e);
+      exceptions.addException(e);
+    }
+  }
+
+  /**
+   * Forgets all cached AIP ancestors, e.g. when AIPs may have been changed
+   * without going through the model
+   */
+  public void invalidateAncestorsCache() {
+    ancestorsCache.invalidateAll();
+  }
+
   private ReturnWithExceptions<Void> indexAIP(final AIP aip, final List<String> ancestors) {
     return indexAIP(aip, ancestors, false);
   }
@@ -151,6 +215,15 @@ public class IndexModelObserver implements ModelObserver {
   }
 
   public ReturnWithExceptions<Void> indexPreservationsEvents(final String aipId, final String representationId) {
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
+    ReturnWithExceptions<Void> exceptions = indexPreservationsEvents(aipId, representationId, buffer);
+    flushBuffer(buffer, exceptions);
+    propagator.subtreeIndexed(aipId);
+    return exceptions;
+  }
+
+  private ReturnWithExceptions<Void> indexPreservationsEvents(final String aipId, final String representationId,
+    final SolrDocumentBuffer buffer) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
     CloseableIterable<OptionalWithCause<PreservationMetadata>> preservationMetadata = null;
     try {
@@ -165,7 +238,7 @@ public class IndexModelObserver implements ModelObserver {
           PreservationMetadata pm = opm.get();
           if (pm.getType().equals(PreservationMetadataType.EVENT)) {
             try {
-              indexPreservationEvent(pm);
+              indexPreservationEvent(pm, buffer);
             } catch (SolrServerException | SolrException | IOException | RequestNotValidException | GenericException
               | NotFoundException | AuthorizationDeniedException e) {
               LOGGER.error("Cannot index premis event", e);
@@ -187,8 +260,9 @@ public class IndexModelObserver implements ModelObserver {
     return exceptions;
   }
 
-  private void indexPreservationEvent(PreservationMetadata pm) throws RequestNotValidException, GenericException,
-    NotFoundException, AuthorizationDeniedException, SolrServerException, IOException {
+  private void indexPreservationEvent(PreservationMetadata pm, SolrDocumentBuffer buffer)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
+    SolrServerException, IOException {
     StoragePath filePath = ModelUtils.getPreservationMetadataStoragePath(pm);
     Binary binary = model.getStorage().getBinary(filePath);
     AIP aip = model.retrieveAIP(pm.getAipId());
@@ -205,20 +279,21 @@ public class IndexModelObserver implements ModelObserver {
 
     SolrInputDocument premisEventDocument = SolrUtils.premisToSolr(pm.getType(), aip, representationUUID, fileUUID,
       binary);
-    index.add(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument);
+    buffer.add(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument);
   }
 
-  private ReturnWithExceptions<Void> indexRepresentations(final AIP aip, final List<String> ancestors) {
+  private ReturnWithExceptions<Void> indexRepresentations(final AIP aip, final List<String> ancestors,
+    final SolrDocumentBuffer buffer) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
     for (Representation representation : aip.getRepresentations()) {
-      ReturnWithExceptions<Void> repExceptions = indexRepresentation(aip, representation, ancestors);
+      ReturnWithExceptions<Void> repExceptions = indexRepresentation(aip, representation, ancestors, buffer);
       exceptions.addExceptions(repExceptions.getExceptions());
     }
     return exceptions;
   }
 
   private ReturnWithExceptions<Void> indexRepresentation(final AIP aip, final Representation representation,
-    final List<String> ancestors) {
+    final List<String> ancestors, final SolrDocumentBuffer buffer) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
     CloseableIterable<OptionalWithCause<File>> allFiles = null;
     try {
@@ -230,7 +305,7 @@ public class IndexModelObserver implements ModelObserver {
       for (OptionalWithCause<File> file : allFiles) {
         if (file.isPresent()) {
           boolean recursiveIndexFile = false;
-          ReturnWithExceptions<Long> ret = indexFile(aip, file.get(), ancestors, recursiveIndexFile);
+          ReturnWithExceptions<Long> ret = indexFile(aip, file.get(), ancestors, recursiveIndexFile, buffer);
           sizeInBytes += ret.getRet();
           exceptions.addExceptions(ret.getExceptions());
         } else {
@@ -262,7 +337,7 @@ public class IndexModelObserver implements ModelObserver {
 
       SolrInputDocument representationDocument = SolrUtils.representationToSolrDocument(aip, representation,
         sizeInBytes, numberOfDataFiles, numberOfDocumentationFiles, numberOfSchemaFiles, ancestors);
-      index.add(RodaConstants.INDEX_REPRESENTATION, representationDocument);
+      buffer.add(RodaConstants.INDEX_REPRESENTATION, representationDocument);
 
     } catch (SolrServerException | SolrException | IOException | RequestNotValidException | GenericException
       | NotFoundException | AuthorizationDeniedException e) {
@@ -275,7 +350,8 @@ public class IndexModelObserver implements ModelObserver {
     return exceptions;
   }
 
-  private ReturnWithExceptions<Long> indexFile(AIP aip, File file, List<String> ancestors, boolean recursive) {
+  private ReturnWithExceptions<Long> indexFile(AIP aip, File file, List<String> ancestors, boolean recursive,
+    SolrDocumentBuffer buffer) {
     ReturnWithExceptions<Long> exceptions = new ReturnWithExceptions<>();
     Long sizeInBytes = 0L;
     SolrInputDocument fileDocument = SolrUtils.fileToSolrDocument(aip, file, ancestors);
@@ -294,14 +370,12 @@ public class IndexModelObserver implements ModelObserver {
     }
 
     // Add full text
-    String fulltext = getFileFulltext(file);
-    if (fulltext != null) {
-      fileDocument.addField(RodaConstants.FILE_FULLTEXT, fulltext);
-
+    for (String fulltextChunk : getFileFulltext(file)) {
+      fileDocument.addField(RodaConstants.FILE_FULLTEXT, fulltextChunk);
     }
 
     try {
-      index.add(RodaConstants.INDEX_FILE, fileDocument);
+      buffer.add(RodaConstants.INDEX_FILE, fileDocument);
     } catch (SolrServerException | SolrException | IOException e) {
       LOGGER.error("Cannot index file: {}", file, e);
       exceptions.addException(e);
@@ -312,7 +386,7 @@ public class IndexModelObserver implements ModelObserver {
         CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true);
         for (OptionalWithCause<File> subfile : allFiles) {
           if (subfile.isPresent()) {
-            ReturnWithExceptions<Long> ret = indexFile(aip, subfile.get(), ancestors, false);
+            ReturnWithExceptions<Long> ret = indexFile(aip, subfile.get(), ancestors, false, buffer);
             sizeInBytes += ret.getRet();
             exceptions.addExceptions(ret.getExceptions());
           } else {
@@ -344,8 +418,8 @@ public class IndexModelObserver implements ModelObserver {
     return premisFile;
   }
 
-  private String getFileFulltext(File file) {
-    String fulltext = "";
+  private List<String> getFileFulltext(File file) {
+    List<String> fulltext = Collections.emptyList();
     InputStream inputStream = null;
     try {
       Binary fulltextBinary = model.retrieveOtherMetadataBinary(file.getAipId(), file.getRepresentationId(),
@@ -354,7 +428,7 @@ public class IndexModelObserver implements ModelObserver {
       if (fulltextBinary.getSizeInBytes() < RodaCoreFactory.getRodaConfigurationAsInt(TEN_MB_IN_BYTES,
         "core.index.fulltext_threshold_in_bytes")) {
         inputStream = fulltextBinary.getContent().createInputStream();
-        fulltext = IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
+        fulltext = fulltextReader.read(inputStream, file);
       }
     } catch (RequestNotValidException | GenericException | AuthorizationDeniedException | IOException e) {
       LOGGER.warn("Error getting fulltext for file: {}", file, e);
@@ -374,122 +448,103 @@ public class IndexModelObserver implements ModelObserver {
   }
 
   @Override
-  public void aipStateUpdated(AIP aip) {
+  public void aipMetadataUpdated(AIP aip) {
+    SolrDocument indexedDocument = null;
     try {
-      // change AIP
-      SolrInputDocument aipDoc = SolrUtils.aipStateUpdateToSolrDocument(aip);
-      index.add(RodaConstants.INDEX_AIP, aipDoc);
-    } catch (SolrServerException | IOException e) {
-      LOGGER.error("Cannot do a partial update", e);
+      indexedDocument = index.getById(RodaConstants.INDEX_AIP, aip.getId());
+    } catch (SolrServerException | SolrException | IOException e) {
+      LOGGER.warn("Could not retrieve indexed AIP {}, indexing it again with all its descendants", aip.getId(), e);
     }
 
-    // change Representations and Files
-    representationsStateUpdated(aip);
-    // change Preservation events
-    preservationEventsStateUpdated(aip);
+    if (indexedDocument == null || !isOnlyAIPMetadataChange(aip, indexedDocument)) {
+      aipUpdated(aip);
+    } else {
+      IndexedAIP indexedAIP = SolrUtils.solrDocumentToIndexedAIP(indexedDocument);
+      try {
+        List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
+        indexAIP(aip, ancestors);
+      } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
+        LOGGER.error("Error getting ancestors when updating AIP", e);
+      }
 
-  }
+      // representations, files and events only hold the AIP state and
+      // permissions, which can be changed in place
+      if (aip.getState() != indexedAIP.getState()) {
+        logPropagationErrors(aip.getId(), propagator.propagateState(aip.getId(), aip.getState()));
+      }
 
-  private void representationsStateUpdated(final AIP aip) {
-    for (Representation representation : aip.getRepresentations()) {
-      representationStateUpdated(aip, representation);
+      if (!samePermissions(aip.getPermissions(), indexedAIP.getPermissions())) {
+        logPropagationErrors(aip.getId(),
+          propagator.propagatePermissions(aip.getId(), aip.getPermissions(), aip.getState()));
+      }
     }
   }
 
-  private void representationStateUpdated(final AIP aip, final Representation representation) {
-    CloseableIterable<OptionalWithCause<File>> allFiles = null;
-    try {
-      SolrInputDocument repDoc = SolrUtils.representationStateUpdateToSolrDocument(representation, aip.getState());
-      index.add(RodaConstants.INDEX_REPRESENTATION, repDoc);
-      final boolean recursive = true;
-      allFiles = model.listFilesUnder(representation.getAipId(), representation.getId(), recursive);
-      for (OptionalWithCause<File> file : allFiles) {
-        if (file.isPresent()) {
-          boolean recursiveIndexFile = false;
-          fileStateUpdated(aip, file.get(), recursiveIndexFile);
-        } else {
-          LOGGER.error("Cannot do a partial update on File", file.getCause());
-        }
-      }
-
-    } catch (SolrServerException | AuthorizationDeniedException | IOException | NotFoundException | GenericException
-      | RequestNotValidException e) {
-      LOGGER.error("Cannot do a partial update", e);
-    } finally {
-      IOUtils.closeQuietly(allFiles);
+  private static void logPropagationErrors(String aipId, ReturnWithExceptions<Void> propagation) {
+    for (Exception e : propagation.getExceptions()) {
+      LOGGER.error("Could not change the indexed representations, files and events of AIP {}, which must be reindexed",
+        aipId, e);
     }
   }
 
-  private void fileStateUpdated(AIP aip, File file, boolean recursive) {
-    SolrInputDocument fileDoc = SolrUtils.fileStateUpdateToSolrDocument(file, aip.getState());
-    try {
-      index.add(RodaConstants.INDEX_FILE, fileDoc);
-
-    } catch (SolrServerException | IOException e) {
-      LOGGER.error("Cannot index file: {}", file, e);
+  /**
+   * @return true if, when compared with what is indexed, the AIP changes do not
+   *         require re-creating the documents of its representations, files
+   *         and preservation events
+   */
+  private boolean isOnlyAIPMetadataChange(AIP aip, SolrDocument indexedDocument) {
+    Set<String> representationIds = aip.getRepresentations().stream().map(Representation::getId)
+      .collect(Collectors.toSet());
+    Set<String> indexedRepresentationIds = new HashSet<>();
+    Collection<Object> indexedValues = indexedDocument.getFieldValues(RodaConstants.AIP_REPRESENTATION_ID);
+    if (indexedValues != null) {
+      indexedValues.forEach(value -> indexedRepresentationIds.add(value.toString()));
     }
 
-    if (recursive && file.isDirectory()) {
-      try {
-        CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true);
-        for (OptionalWithCause<File> subfile : allFiles) {
-          if (subfile.isPresent()) {
-            fileStateUpdated(aip, subfile.get(), false);
-          } else {
-            LOGGER.error("Cannot index file sub-resources", subfile.getCause());
-          }
-        }
-        IOUtils.closeQuietly(allFiles);
-
-      } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
-        LOGGER.error("Cannot index file sub-resources: {}", file, e);
-      }
-    }
+    IndexedAIP indexedAIP = SolrUtils.solrDocumentToIndexedAIP(indexedDocument);
+    return representationIds.equals(indexedRepresentationIds)
+      && Objects.equals(aip.getParentId(), indexedAIP.getParentID())
+      && Objects.equals(emptyIfNull(aip.getIngestSIPIds()), emptyIfNull(indexedAIP.getIngestSIPIds()))
+      && Objects.equals(aip.getIngestJobId() != null ? aip.getIngestJobId() : "", indexedAIP.getIngestJobId())
+      && Objects.equals(emptyIfNull(aip.getIngestUpdateJobIds()), emptyIfNull(indexedAIP.getIngestUpdateJobIds()));
   }
 
-  private void preservationEventsStateUpdated(final AIP aip) {
+  private static List<String> emptyIfNull(List<String> list) {
+    return list != null ? list : Collections.emptyList();
+  }
 
-    CloseableIterable<OptionalWithCause<PreservationMetadata>> preservationMetadata = null;
-    try {
-      boolean includeRepresentations = true;
-      preservationMetadata = model.listPreservationMetadata(aip.getId(), includeRepresentations);
-      for (OptionalWithCause<PreservationMetadata> opm : preservationMetadata) {
-        if (opm.isPresent()) {
-          PreservationMetadata pm = opm.get();
-          if (pm.getType().equals(PreservationMetadataType.EVENT)) {
-            try {
-              preservationEventStateUpdated(pm, aip.getState());
-            } catch (SolrServerException | IOException | RequestNotValidException | GenericException | NotFoundException
-              | AuthorizationDeniedException e) {
-              LOGGER.error("Cannot index premis event", e);
-            }
-          }
-        } else {
-          LOGGER.error("Cannot index premis event", opm.getCause());
-        }
-      }
-    } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
-      LOGGER.error("Cannot index preservation events", e);
-    } finally {
-      IOUtils.closeQuietly(preservationMetadata);
+  private static boolean samePermissions(Permissions permissions, Permissions otherPermissions) {
+    boolean same = true;
+    for (PermissionType type : PermissionType.values()) {
+      same &= permissions.getUsers().getOrDefault(type, Collections.emptySet())
+        .equals(otherPermissions.getUsers().getOrDefault(type, Collections.emptySet()));
+      same &= permissions.getGroups().getOrDefault(type, Collections.emptySet())
+        .equals(otherPermissions.getGroups().getOrDefault(type, Collections.emptySet()));
     }
-
+    return same;
   }
 
-  private void preservationEventStateUpdated(PreservationMetadata pm, AIPState state) throws RequestNotValidException,
-    GenericException, NotFoundException, AuthorizationDeniedException, SolrServerException, IOException {
-    SolrInputDocument premisEventDocument = SolrUtils.preservationEventStateUpdateToSolrDocument(pm.getId(),
-      pm.getAipId(), state);
+  @Override
+  public void aipStateUpdated(AIP aip) {
+    try {
+      // change AIP
+      SolrInputDocument aipDoc = SolrUtils.aipStateUpdateToSolrDocument(aip);
+      index.add(RodaConstants.INDEX_AIP, aipDoc);
+    } catch (SolrServerException | IOException e) {
+      LOGGER.error("Cannot do a partial update", e);
+    }
 
-    index.add(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument);
+    // change Representations, Files and Preservation events
+    logPropagationErrors(aip.getId(), propagator.propagateState(aip.getId(), aip.getState()));
   }
 
   @Override
   public void aipMoved(AIP aip, String oldParentId, String newParentId) {
 
+    ancestorsCache.invalidate(aip.getId());
     try {
       LOGGER.debug("Reindexing moved aip {}", aip.getId());
-      List<String> topAncestors = SolrUtils.getAncestors(newParentId, model);
+      List<String> topAncestors = ancestorsCache.getAncestors(newParentId);
       SolrInputDocument aipDoc = SolrUtils.updateAIPParentId(aip.getId(), newParentId, topAncestors);
       index.add(RodaConstants.INDEX_AIP, aipDoc);
       updateRepresentationAndFileAncestors(aip, topAncestors);
@@ -509,7 +564,7 @@ public class IndexModelObserver implements ModelObserver {
             // 20161109 hsilva: lets test if descendant exists, otherwise there
             // is not point in trying to updated it in the index
             AIP aip = model.retrieveAIP(item.getId());
-            List<String> ancestors = SolrUtils.getAncestors(item.getParentID(), model);
+            List<String> ancestors = ancestorsCache.getAncestors(item.getParentID());
             descendantDoc = SolrUtils.updateAIPAncestors(item.getId(), ancestors);
             index.add(RodaConstants.INDEX_AIP, descendantDoc);
 
@@ -552,6 +607,9 @@ public class IndexModelObserver implements ModelObserver {
 
   @Override
   public void aipDeleted(String aipId, boolean deleteIncidences) {
+    ancestorsCache.invalidate(aipId);
+    // otherwise pending partial updates would re-create deleted files
+    flushPendingUpdates();
     deleteDocumentFromIndex(IndexedAIP.class, aipId);
     deleteDocumentsFromIndex(IndexedRepresentation.class, RodaConstants.REPRESENTATION_AIP_ID, aipId);
     deleteDocumentsFromIndex(IndexedFile.class, RodaConstants.FILE_AIP_ID, aipId);
@@ -568,7 +626,7 @@ public class IndexModelObserver implements ModelObserver {
     if (descriptiveMetadata.isFromAIP()) {
       try {
         AIP aip = model.retrieveAIP(descriptiveMetadata.getAipId());
-        List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+        List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
         indexAIP(aip, ancestors);
       } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
         LOGGER.error("Error when descriptive metadata created on retrieving the full AIP", e);
@@ -583,7 +641,7 @@ public class IndexModelObserver implements ModelObserver {
     if (descriptiveMetadata.isFromAIP()) {
       try {
         AIP aip = model.retrieveAIP(descriptiveMetadata.getAipId());
-        List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+        List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
         indexAIP(aip, ancestors);
       } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
         LOGGER.error("Error when descriptive metadata updated on retrieving the full AIP", e);
@@ -596,7 +654,7 @@ public class IndexModelObserver implements ModelObserver {
     if (representationId == null) {
       try {
         AIP aip = model.retrieveAIP(aipId);
-        List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+        List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
         indexAIP(aip, ancestors);
       } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
         LOGGER.error("Error when descriptive metadata deleted on retrieving the full AIP", e);
@@ -607,17 +665,23 @@ public class IndexModelObserver implements ModelObserver {
   @Override
   public ReturnWithExceptions<Void> representationCreated(Representation representation) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
     try {
       AIP aip = model.retrieveAIP(representation.getAipId());
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+      List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
 
-      ReturnWithExceptions<Void> representationExceptions = indexRepresentation(aip, representation, ancestors);
+      ReturnWithExceptions<Void> representationExceptions = indexRepresentation(aip, representation, ancestors,
+        buffer);
       exceptions.addExceptions(representationExceptions.getExceptions());
 
-      ReturnWithExceptions<Void> eventExceptions = indexPreservationsEvents(aip.getId(), representation.getId());
+      ReturnWithExceptions<Void> eventExceptions = indexPreservationsEvents(aip.getId(), representation.getId(),
+        buffer);
       exceptions.addExceptions(eventExceptions.getExceptions());
     } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
       LOGGER.error("Cannot index representation: {}", representation, e);
+    } finally {
+      flushBuffer(buffer, exceptions);
+      propagator.subtreeIndexed(representation.getAipId());
     }
 
     return exceptions;
@@ -631,6 +695,8 @@ public class IndexModelObserver implements ModelObserver {
 
   @Override
   public void representationDeleted(String aipId, String representationId, boolean deleteIncidences) {
+    // otherwise pending partial updates would re-create deleted files
+    flushPendingUpdates();
     String representationUUID = IdUtils.getRepresentationId(aipId, representationId);
     deleteDocumentFromIndex(IndexedRepresentation.class, representationUUID);
     deleteDocumentsFromIndex(IndexedFile.class, RodaConstants.FILE_REPRESENTATION_UUID, representationUUID);
@@ -645,14 +711,18 @@ public class IndexModelObserver implements ModelObserver {
   @Override
   public ReturnWithExceptions<Void> fileCreated(File file) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
     boolean recursive = true;
     try {
       AIP aip = model.retrieveAIP(file.getAipId());
-      List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
-      ReturnWithExceptions<Long> fileExceptions = indexFile(aip, file, ancestors, recursive);
+      List<String> ancestors = ancestorsCache.getAncestors(aip.getParentId());
+      ReturnWithExceptions<Long> fileExceptions = indexFile(aip, file, ancestors, recursive, buffer);
       exceptions.addExceptions(fileExceptions.getExceptions());
     } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
       LOGGER.error("Error indexing file: {}", file, e);
+    } finally {
+      flushBuffer(buffer, exceptions);
+      propagator.subtreeIndexed(file.getAipId());
     }
 
     return exceptions;
@@ -668,6 +738,8 @@ public class IndexModelObserver implements ModelObserver {
   public void fileDeleted(String aipId, String representationId, List<String> fileDirectoryPath, String fileId,
     boolean deleteIncidences) {
     String uuid = IdUtils.getFileId(aipId, representationId, fileDirectoryPath, fileId);
+    // otherwise pending partial updates would re-create deleted files
+    flushPendingUpdates();
     deleteDocumentFromIndex(IndexedFile.class, uuid);
 
     if (deleteIncidences) {
@@ -690,6 +762,25 @@ public class IndexModelObserver implements ModelObserver {
     return exceptions;
   }
 
+  @Override
+  public ReturnWithExceptions<Void> logEntriesCreated(List<LogEntry> entries) {
+    ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
+
+    try {
+      for (LogEntry entry : entries) {
+        buffer.add(RodaConstants.INDEX_ACTION_LOG, SolrUtils.logEntryToSolrDocument(entry));
+      }
+    } catch (SolrServerException | SolrException | IOException e) {
+      LOGGER.error("Log entries were not added to index", e);
+      exceptions.addException(e);
+    } finally {
+      flushBuffer(buffer, exceptions);
+    }
+
+    return exceptions;
+  }
+
   @Override
   public void userCreated(User user) {
     addDocumentToIndex(RODAMember.class, user);
@@ -746,6 +837,9 @@ public class IndexModelObserver implements ModelObserver {
       PreservationMetadataType type = pm.getType();
       if (PreservationMetadataType.EVENT.equals(type)) {
         index.add(RodaConstants.INDEX_PRESERVATION_EVENTS, premisFileDocument);
+        if (pm.getAipId() != null) {
+          propagator.subtreeIndexed(pm.getAipId());
+        }
       } else if (PreservationMetadataType.AGENT.equals(type)) {
         index.add(RodaConstants.INDEX_PRESERVATION_AGENTS, premisFileDocument);
       }
@@ -778,18 +872,66 @@ public class IndexModelObserver implements ModelObserver {
     if (RodaConstants.OTHER_METADATA_TYPE_APACHE_TIKA.equalsIgnoreCase(otherMetadataBinary.getType())
       && RodaConstants.TIKA_FILE_SUFFIX_METADATA.equalsIgnoreCase(otherMetadataBinary.getFileSuffix())) {
       try {
-        SolrInputDocument solrFile = SolrUtils.addOtherPropertiesToIndexedFile("tika_", otherMetadataBinary, model,
-          index);
-        index.add(RodaConstants.INDEX_FILE, solrFile);
-      } catch (SolrServerException | RequestNotValidException | GenericException | NotFoundException
-        | AuthorizationDeniedException | XPathExpressionException | ParserConfigurationException | SAXException
-        | IOException e) {
+        SolrInputDocument solrFile = SolrUtils.otherPropertiesUpdateToSolrDocument("tika_", otherMetadataBinary,
+          model);
+        addPendingFileUpdate(solrFile);
+      } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException
+        | XPathExpressionException | ParserConfigurationException | SAXException | IOException e) {
         LOGGER.error("Error adding other properties to indexed file", e);
       }
 
     }
   }
 
+  private void addPendingFileUpdate(SolrInputDocument document) {
+    synchronized (pendingFileUpdates) {
+      try {
+        pendingFileUpdates.add(RodaConstants.INDEX_FILE, document);
+      } catch (SolrServerException | SolrException | IOException e) {
+        LOGGER.error("Error adding other properties to indexed file", e);
+      }
+
+      if (pendingUpdatesFlushInterval <= 0) {
+        flushPendingUpdates();
+      } else if (scheduledFlush == null && pendingFileUpdates.size(RodaConstants.INDEX_FILE) > 0) {
+        scheduledFlush = PENDING_UPDATES_FLUSHER.schedule(this::flushPendingUpdates, pendingUpdatesFlushInterval,
+          TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Sends the pending partial updates of files (e.g. properties obtained from
+   * other metadata) to the index. Done periodically, and before committing.
+   */
+  /**
+   * @return the AIPs whose representations, files or events may not be
+   *         searchable yet, to be given to {@link #committed(Set)} after
+   *         committing them
+   */
+  public Set<String> getUncommittedAIPIds() {
+    return propagator.getUncommittedAIPIds();
+  }
+
+  public void committed(Set<String> aipIds) {
+    propagator.committed(aipIds);
+  }
+
+  public void flushPendingUpdates() {
+    synchronized (pendingFileUpdates) {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+      }
+
+      try {
+        pendingFileUpdates.flush();
+      } catch (SolrServerException | SolrException | IOException e) {
+        LOGGER.error("Error adding other properties to indexed files", e);
+      }
+    }
+  }
+
   @Override
   public ReturnWithExceptions<Void> jobCreatedOrUpdated(Job job, boolean reindexJobReports) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
@@ -908,11 +1050,9 @@ public class IndexModelObserver implements ModelObserver {
       LOGGER.error("Cannot do a partial update", e);
     }
 
-    // change Representations and Files
-    representationsPermissionsUpdated(aip);
-    // change Preservation events
-    preservationEventsPermissionsUpdated(aip);
-
+    // change Representations, Files and Preservation events
+    logPropagationErrors(aip.getId(),
+      propagator.propagatePermissions(aip.getId(), aip.getPermissions(), aip.getState()));
   }
 
   @Override
@@ -926,102 +1066,6 @@ public class IndexModelObserver implements ModelObserver {
     }
   }
 
-  private void representationsPermissionsUpdated(final AIP aip) {
-    for (Representation representation : aip.getRepresentations()) {
-      representationPermissionsUpdated(aip, representation);
-    }
-  }
-
-  private void representationPermissionsUpdated(final AIP aip, final Representation representation) {
-    CloseableIterable<OptionalWithCause<File>> allFiles = null;
-    try {
-      SolrInputDocument repDoc = SolrUtils.representationPermissionsUpdateToSolrDocument(representation,
-        aip.getPermissions());
-      index.add(RodaConstants.INDEX_REPRESENTATION, repDoc);
-      final boolean recursive = true;
-      allFiles = model.listFilesUnder(representation.getAipId(), representation.getId(), recursive);
-      for (OptionalWithCause<File> file : allFiles) {
-        if (file.isPresent()) {
-          boolean recursiveIndexFile = false;
-          filePermissionsUpdated(aip, file.get(), recursiveIndexFile);
-        } else {
-          LOGGER.error("Cannot do a partial update on file", file.getCause());
-        }
-      }
-
-    } catch (SolrServerException | AuthorizationDeniedException | IOException | NotFoundException | GenericException
-      | RequestNotValidException e) {
-      LOGGER.error("Cannot do a partial update", e);
-    } finally {
-      IOUtils.closeQuietly(allFiles);
-    }
-  }
-
-  private void filePermissionsUpdated(AIP aip, File file, boolean recursive) {
-    SolrInputDocument fileDoc = SolrUtils.filePermissionsUpdateToSolrDocument(file, aip.getPermissions());
-    try {
-      index.add(RodaConstants.INDEX_FILE, fileDoc);
-
-    } catch (SolrServerException | IOException e) {
-      LOGGER.error("Cannot index file: {}", file, e);
-    }
-
-    if (recursive && file.isDirectory()) {
-      try {
-        CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true);
-        for (OptionalWithCause<File> subfile : allFiles) {
-          if (subfile.isPresent()) {
-            filePermissionsUpdated(aip, subfile.get(), false);
-          } else {
-            LOGGER.error("Cannot index file sub-resources file", subfile.getCause());
-          }
-        }
-        IOUtils.closeQuietly(allFiles);
-
-      } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
-        LOGGER.error("Cannot index file sub-resources: {}", file, e);
-      }
-    }
-  }
-
-  private void preservationEventsPermissionsUpdated(final AIP aip) {
-
-    CloseableIterable<OptionalWithCause<PreservationMetadata>> preservationMetadata = null;
-    try {
-      boolean includeRepresentations = true;
-      preservationMetadata = model.listPreservationMetadata(aip.getId(), includeRepresentations);
-      for (OptionalWithCause<PreservationMetadata> opm : preservationMetadata) {
-        if (opm.isPresent()) {
-          PreservationMetadata pm = opm.get();
-          if (PreservationMetadataType.EVENT.equals(pm.getType())) {
-            try {
-              preservationEventPermissionsUpdated(pm, aip.getPermissions(), aip.getState());
-            } catch (SolrServerException | IOException | RequestNotValidException | GenericException | NotFoundException
-              | AuthorizationDeniedException e) {
-              LOGGER.error("Cannot index premis event", e);
-            }
-          }
-        } else {
-          LOGGER.error("Cannot index premis event", opm.getCause());
-        }
-      }
-    } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
-      LOGGER.error("Cannot index preservation events", e);
-    } finally {
-      IOUtils.closeQuietly(preservationMetadata);
-    }
-
-  }
-
-  private void preservationEventPermissionsUpdated(PreservationMetadata pm, Permissions permissions, AIPState state)
-    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
-    SolrServerException, IOException {
-    SolrInputDocument premisEventDocument = SolrUtils.preservationEventPermissionsUpdateToSolrDocument(pm.getId(),
-      pm.getAipId(), permissions, state);
-
-    index.add(RodaConstants.INDEX_PRESERVATION_EVENTS, premisEventDocument);
-  }
-
   @Override
   public ReturnWithExceptions<Void> riskCreatedOrUpdated(Risk risk, int incidences, boolean commit) {
     ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
@@ -14,10 +14,12 @@ import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.client.solrj.SolrClient;
@@ -68,6 +70,7 @@ import org.roda.core.data.v2.risks.IndexedRisk;
 import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.data.v2.user.User;
+import org.roda.core.index.utils.AIPIndexingPipeline;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelService;
@@ -96,6 +99,14 @@ public class IndexService {
     model.addModelObserver(observer);
   }
 
+  /**
+   * Stops indexing model changes (e.g. when this index service was created to
+   * build a set of shadow indexes that are now live or were discarded)
+   */
+  public void stopObservingModel() {
+    model.removeModelObserver(observer);
+  }
+
   public IndexedAIP getParent(IndexedAIP aip, List<String> fieldsToReturn) throws NotFoundException, GenericException {
     return SolrUtils.retrieve(getSolrClient(), IndexedAIP.class, aip.getParentID(), fieldsToReturn);
   }
@@ -197,15 +208,12 @@ public class IndexService {
     CloseableIterable<OptionalWithCause<AIP>> aips = null;
     try {
       clearAIPs();
-      LOGGER.info("{} > Listing AIPs", new Date().getTime());
+      LOGGER.info("{} > Listing and reindexing AIPs", new Date().getTime());
       aips = model.listAIPs();
-      for (OptionalWithCause<AIP> aip : aips) {
-        if (aip.isPresent()) {
-          LOGGER.info("{} > Reindexing AIP {}", new Date().getTime(), aip.get().getId());
-          reindexAIP(aip.get());
-        } else {
-          LOGGER.error("{} > An error occurred. See log for more details.", new Date().getTime());
-        }
+      ReturnWithExceptions<Void> exceptions = reindexAIPs(aips);
+      if (!exceptions.getExceptions().isEmpty()) {
+        LOGGER.error("{} > {} errors occurred while reindexing AIPs. See log for more details.",
+          new Date().getTime(), exceptions.getExceptions().size());
       }
       LOGGER.info("{} > Optimizing indexes", new Date().getTime());
 
@@ -217,12 +225,21 @@ public class IndexService {
     }
   }
 
+  /**
+   * Indexes the AIPs (with their representations, files and preservation
+   * events) using several threads, see {@link AIPIndexingPipeline}
+   */
+  public ReturnWithExceptions<Void> reindexAIPs(Iterable<OptionalWithCause<AIP>> aips) {
+    return new AIPIndexingPipeline(getSolrClient(), model).index(aips);
+  }
+
   public void commitAIPs() throws GenericException {
     commit(IndexedAIP.class, IndexedRepresentation.class, IndexedFile.class, IndexedPreservationEvent.class,
       IndexedPreservationAgent.class);
   }
 
   public void clearAIPs() throws GenericException {
+    observer.invalidateAncestorsCache();
     clearIndex(RodaConstants.INDEX_AIP);
     clearIndex(RodaConstants.INDEX_FILE);
     clearIndex(RodaConstants.INDEX_REPRESENTATION);
@@ -492,7 +509,13 @@ public class IndexService {
 
   @SafeVarargs
   public final void commit(Class<? extends IsIndexed>... classToCommit) throws GenericException {
+    Set<String> uncommittedAIPIds = observer.getUncommittedAIPIds();
+    observer.flushPendingUpdates();
     SolrUtils.commit(getSolrClient(), classToCommit);
+    if (Arrays.asList(classToCommit)
+      .containsAll(Arrays.asList(IndexedRepresentation.class, IndexedFile.class, IndexedPreservationEvent.class))) {
+      observer.committed(uncommittedAIPIds);
+    }
   }
 
   public <T extends IsIndexed> List<String> suggest(Class<T> returnClass, String field, String query, User user,
@@ -0,0 +1,374 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.ReturnWithExceptions;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.index.IndexModelObserver;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Indexes a (possibly very large) set of AIPs using three stages joined by
+ * bounded queues, so that reading from storage, building documents and
+ * sending them to the index overlap:
+ * <ol>
+ * <li>the calling thread streams the AIPs from storage;</li>
+ * <li>a pool of workers builds the AIP, representation, file and preservation
+ * event documents (descriptive metadata crosswalks, PREMIS, full text);</li>
+ * <li>a single writer sends the documents to the index in batches.</li>
+ * </ol>
+ *
+ * AIP documents are sent by the workers themselves, so that an AIP that the
+ * index refuses is indexed again in safe mode (see {@link IndexModelObserver}).
+ * Documents that fail in the writer are reported against the AIP they belong
+ * to.
+ *
+ * A full queue blocks the stage that feeds it, so memory usage is bounded by
+ * the queue sizes. Each stage exposes metrics under the name of this class.
+ */
+public class AIPIndexingPipeline {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AIPIndexingPipeline.class);
+
+  private static final int DEFAULT_QUEUE_SIZE = 1000;
+  private static final long POLL_TIMEOUT_IN_MILLIS = 1000;
+
+  // end of stream markers
+  private static final AIP NO_MORE_AIPS = new AIP();
+  private static final QueuedDocuments NO_MORE_DOCUMENTS = new QueuedDocuments(null, null, null);
+
+  private final SolrClient index;
+  private final ModelService model;
+  private final int workers;
+  private final BlockingQueue<AIP> aipQueue;
+  private final BlockingQueue<QueuedDocuments> documentQueue;
+  private final ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
+  private final Set<String> failedAIPIds = ConcurrentHashMap.newKeySet();
+  // AIP being built by each worker, whose documents it is sending
+  private final ThreadLocal<String> currentAIPId = new ThreadLocal<>();
+
+  private final Counter listedAIPs;
+  private final Timer builtAIPs;
+  private final Counter failedAIPs;
+  private final Timer flushes;
+  private final Counter writtenDocuments;
+
+  public AIPIndexingPipeline(SolrClient index, ModelService model) {
+    this(index, model, RodaCoreFactory.getMetrics(), getConfiguredInt(Runtime.getRuntime().availableProcessors(),
+      "workers"), getConfiguredInt(DEFAULT_QUEUE_SIZE, "queue_size"));
+  }
+
+  public AIPIndexingPipeline(SolrClient index, ModelService model, MetricRegistry metrics, int workers,
+    int queueSize) {
+    this.index = index;
+    this.model = model;
+    this.workers = Math.max(1, workers);
+    this.aipQueue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    this.documentQueue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+
+    MetricRegistry registry = metrics != null ? metrics : new MetricRegistry();
+    registry.remove(MetricRegistry.name(AIPIndexingPipeline.class, "aipQueueSize"));
+    registry.register(MetricRegistry.name(AIPIndexingPipeline.class, "aipQueueSize"), (Gauge<Integer>) aipQueue::size);
+    registry.remove(MetricRegistry.name(AIPIndexingPipeline.class, "documentQueueSize"));
+    registry.register(MetricRegistry.name(AIPIndexingPipeline.class, "documentQueueSize"),
+      (Gauge<Integer>) documentQueue::size);
+    this.listedAIPs = registry.counter(MetricRegistry.name(AIPIndexingPipeline.class, "listed"));
+    this.builtAIPs = registry.timer(MetricRegistry.name(AIPIndexingPipeline.class, "built"));
+    this.failedAIPs = registry.counter(MetricRegistry.name(AIPIndexingPipeline.class, "failed"));
+    this.flushes = registry.timer(MetricRegistry.name(AIPIndexingPipeline.class, "flushes"));
+    this.writtenDocuments = registry.counter(MetricRegistry.name(AIPIndexingPipeline.class, "documents"));
+  }
+
+  private static int getConfiguredInt(int defaultValue, String key) {
+    int value = defaultValue;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      value = RodaCoreFactory.getRodaConfigurationAsInt(defaultValue, "core", "index", "pipeline", key);
+    }
+    return value;
+  }
+
+  /**
+   * Indexes all the AIPs (and waits for all their documents to be sent to the
+   * index). The iterable is not closed.
+   */
+  public ReturnWithExceptions<Void> index(Iterable<OptionalWithCause<AIP>> aips) {
+    // all workers share the same observer, which sends documents to the
+    // writer queue instead of sending them to the index
+    IndexModelObserver observer = new IndexModelObserver(new QueueingSolrClient(), model);
+
+    Thread writer = new Thread(this::write, "aip-indexing-writer");
+    writer.start();
+    List<Thread> workerThreads = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      Thread worker = new Thread(() -> build(observer), "aip-indexing-worker-" + i);
+      worker.start();
+      workerThreads.add(worker);
+    }
+
+    try {
+      for (OptionalWithCause<AIP> aip : aips) {
+        if (aip.isPresent()) {
+          aipQueue.put(aip.get());
+          listedAIPs.inc();
+        } else {
+          LOGGER.error("Cannot index AIP", aip.getCause());
+          // the AIP could not be read, so its id is not known
+          failedAIPs.inc();
+          addException(aip.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while listing AIPs to index, indexing only the ones already listed");
+    } finally {
+      finish(workerThreads, writer);
+    }
+
+    return exceptions;
+  }
+
+  private void finish(List<Thread> workerThreads, Thread writer) {
+    for (int i = 0; i < workerThreads.size(); i++) {
+      Uninterruptibles.putUninterruptibly(aipQueue, NO_MORE_AIPS);
+    }
+    for (Thread worker : workerThreads) {
+      Uninterruptibles.joinUninterruptibly(worker);
+    }
+    Uninterruptibles.putUninterruptibly(documentQueue, NO_MORE_DOCUMENTS);
+    Uninterruptibles.joinUninterruptibly(writer);
+  }
+
+  private void build(IndexModelObserver observer) {
+    while (true) {
+      // workers only stop when there are no more AIPs
+      AIP aip = Uninterruptibles.takeUninterruptibly(aipQueue);
+      if (aip == NO_MORE_AIPS) {
+        break;
+      }
+
+      currentAIPId.set(aip.getId());
+      try (Timer.Context context = builtAIPs.time()) {
+        ReturnWithExceptions<Void> ret = observer.aipCreated(aip);
+        for (Exception e : ret.getExceptions()) {
+          aipFailed(aip.getId(), e);
+        }
+      } catch (RuntimeException e) {
+        LOGGER.error("Error indexing AIP {}", aip.getId(), e);
+        aipFailed(aip.getId(), e);
+      } finally {
+        currentAIPId.remove();
+      }
+    }
+  }
+
+  private void write() {
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
+    // collection -> buffered document -> id of the AIP it belongs to
+    Map<String, Map<SolrInputDocument, String>> bufferedAIPIds = new HashMap<>();
+    buffer.setFailedDocumentHandler((document, e) -> aipFailed(bufferedAIPIds.values().stream()
+      .map(aipIds -> aipIds.get(document)).filter(Objects::nonNull).findFirst().orElse(null), e));
+
+    while (true) {
+      QueuedDocuments documents;
+      try {
+        documents = documentQueue.poll(POLL_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        // the writer only stops when there are no more documents
+        continue;
+      }
+
+      try {
+        if (documents == NO_MORE_DOCUMENTS) {
+          flush(buffer, bufferedAIPIds);
+          break;
+        } else if (documents == null) {
+          // workers are slower than the writer: send what we have so far
+          flush(buffer, bufferedAIPIds);
+        } else {
+          write(documents, buffer, bufferedAIPIds);
+        }
+      } catch (SolrServerException e) {
+        // documents that failed were already reported against their AIPs
+        LOGGER.error("Error sending documents to index", e);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.error("Error sending documents to index", e);
+        addException(e);
+      }
+    }
+  }
+
+  /**
+   * Adds the documents to the buffer one by one, so that a document that
+   * cannot be sent only fails the AIPs of the documents sent with it and the
+   * remaining documents of the batch are still written
+   */
+  private void write(QueuedDocuments documents, SolrDocumentBuffer buffer,
+    Map<String, Map<SolrInputDocument, String>> bufferedAIPIds) {
+    String collection = documents.getCollection();
+    Map<SolrInputDocument, String> aipIds = bufferedAIPIds.computeIfAbsent(collection, k -> new IdentityHashMap<>());
+    for (SolrInputDocument document : documents.getDocuments()) {
+      aipIds.put(document, documents.getAIPId());
+      try {
+        // full batches are sent by the buffer itself
+        buffer.add(collection, document);
+        writtenDocuments.inc();
+      } catch (SolrServerException e) {
+        // documents that failed were already reported against their AIPs
+        LOGGER.error("Error sending documents to index", e);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.error("Error sending documents of AIP {} to index", documents.getAIPId(), e);
+        if (buffer.size(collection) == 0) {
+          // the documents buffered with this one were not sent either
+          new HashSet<>(aipIds.values()).forEach(aipId -> aipFailed(aipId, e));
+        } else {
+          aipFailed(documents.getAIPId(), e);
+        }
+      } finally {
+        if (buffer.size(collection) == 0) {
+          aipIds.clear();
+        }
+      }
+    }
+  }
+
+  private void flush(SolrDocumentBuffer buffer, Map<String, Map<SolrInputDocument, String>> bufferedAIPIds)
+    throws SolrServerException, IOException {
+    try (Timer.Context context = flushes.time()) {
+      buffer.flush();
+    } catch (RuntimeException e) {
+      LOGGER.error("Error sending documents to index", e);
+      Set<String> aipIds = new HashSet<>();
+      bufferedAIPIds.values().forEach(documentAIPIds -> aipIds.addAll(documentAIPIds.values()));
+      aipIds.forEach(aipId -> aipFailed(aipId, e));
+    } finally {
+      bufferedAIPIds.clear();
+    }
+  }
+
+  /**
+   * Records that (some of the documents of) an AIP could not be indexed, each
+   * AIP being counted as failed only once
+   */
+  private void aipFailed(String aipId, Exception e) {
+    if (aipId == null) {
+      failedAIPs.inc();
+      addException(e);
+    } else {
+      if (failedAIPIds.add(aipId)) {
+        failedAIPs.inc();
+      }
+      addException(new GenericException("Error indexing AIP " + aipId + ": " + e.getMessage(), e));
+    }
+  }
+
+  /**
+   * @return ids of the AIPs that could not be (completely) indexed
+   */
+  public Set<String> getFailedAIPIds() {
+    return failedAIPIds;
+  }
+
+  private synchronized void addException(Exception e) {
+    exceptions.addException(e);
+  }
+
+  private static class QueuedDocuments {
+    private final String aipId;
+    private final String collection;
+    private final List<SolrInputDocument> documents;
+
+    public QueuedDocuments(String aipId, String collection, List<SolrInputDocument> documents) {
+      this.aipId = aipId;
+      this.collection = collection;
+      this.documents = documents;
+    }
+
+    public String getAIPId() {
+      return aipId;
+    }
+
+    public String getCollection() {
+      return collection;
+    }
+
+    public List<SolrInputDocument> getDocuments() {
+      return documents;
+    }
+  }
+
+  /**
+   * Sends the documents added by the workers to the writer queue (blocking
+   * while it is full), together with the id of the AIP they belong to.
+   * Everything else, including AIP documents, goes directly to the index.
+   */
+  private class QueueingSolrClient extends SolrClient {
+    private static final long serialVersionUID = -2619414916374580498L;
+
+    @Override
+    public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+      if (collection != null && !RodaConstants.INDEX_AIP.equals(collection) && isAddOnly(request)) {
+        try {
+          documentQueue.put(new QueuedDocuments(currentAIPId.get(), collection,
+            new ArrayList<>(((UpdateRequest) request).getDocuments())));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting to send documents to index", e);
+        }
+        return new NamedList<>();
+      }
+      return index.request(request, collection);
+    }
+
+    private boolean isAddOnly(SolrRequest request) {
+      boolean ret = false;
+      if (request instanceof UpdateRequest) {
+        UpdateRequest updateRequest = (UpdateRequest) request;
+        ret = updateRequest.getAction() == null && updateRequest.getDocuments() != null
+          && updateRequest.getDeleteById() == null && updateRequest.getDeleteQuery() == null;
+      }
+      return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the index client is not owned by the pipeline
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrQuery.ORDER;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.ReturnWithExceptions;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.IsIndexed;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.IndexedRepresentation;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.metadata.IndexedPreservationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Propagates the state and the permissions of an AIP to the index documents of
+ * its representations, files and preservation events.
+ *
+ * The documents to change are selected from the index by AIP id (streaming
+ * their UUIDs with a Solr cursor) instead of listing the AIP contents from
+ * storage, and are changed with atomic updates sent in batches. As documents
+ * only become searchable after a commit, the AIPs whose documents were indexed
+ * and not yet committed must be told to the propagator (see
+ * {@link #subtreeIndexed(String)}), so that their documents are committed
+ * before being selected (others do not cost a commit).
+ */
+public class AIPSubtreePropagator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AIPSubtreePropagator.class);
+
+  private static final long PROGRESS_LOG_INTERVAL = 10000;
+  private static final int DEFAULT_SOFT_COMMIT_MAX_TIME_MS = 2000;
+  private static final int MAX_UNCOMMITTED_AIPS = 10000;
+
+  private final SolrClient index;
+  private final Counter propagatedDocuments;
+  // AIPs whose documents were indexed less than the (auto) soft commit max
+  // time ago and were not committed since
+  private final Cache<String, Boolean> uncommittedAIPIds;
+
+  public AIPSubtreePropagator(SolrClient index) {
+    this.index = index;
+    this.uncommittedAIPIds = CacheBuilder.newBuilder().maximumSize(MAX_UNCOMMITTED_AIPS)
+      .expireAfterWrite(getSoftCommitMaxTime(), TimeUnit.MILLISECONDS).build();
+    MetricRegistry metrics = RodaCoreFactory.getMetrics();
+    this.propagatedDocuments = metrics != null
+      ? metrics.counter(MetricRegistry.name(AIPSubtreePropagator.class, "documents")) : new Counter();
+  }
+
+  private static int getSoftCommitMaxTime() {
+    int maxTime = DEFAULT_SOFT_COMMIT_MAX_TIME_MS;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      maxTime = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_SOFT_COMMIT_MAX_TIME_MS, "core", "index",
+        "soft_commit_max_time_ms");
+    }
+    return maxTime;
+  }
+
+  /**
+   * Registers that the representations, files or preservation events of the
+   * AIP were just sent to the index (and may not be searchable yet)
+   */
+  public void subtreeIndexed(String aipId) {
+    uncommittedAIPIds.put(aipId, Boolean.TRUE);
+  }
+
+  /**
+   * @return the AIPs registered as not committed, to be given to
+   *         {@link #committed(Set)} after a commit
+   */
+  public Set<String> getUncommittedAIPIds() {
+    return new HashSet<>(uncommittedAIPIds.asMap().keySet());
+  }
+
+  /**
+   * Registers that the documents of the AIPs (registered before the commit
+   * started) are searchable
+   */
+  public void committed(Set<String> aipIds) {
+    uncommittedAIPIds.invalidateAll(aipIds);
+  }
+
+  public ReturnWithExceptions<Void> propagateState(String aipId, AIPState state) {
+    LOGGER.debug("Propagating state {} of AIP {}", state, aipId);
+    return propagate(aipId, uuid -> SolrUtils.stateUpdateToSolrDocument(uuid, state),
+      uuid -> SolrUtils.preservationEventStateUpdateToSolrDocument(uuid, aipId, state));
+  }
+
+  public ReturnWithExceptions<Void> propagatePermissions(String aipId, Permissions permissions, AIPState state) {
+    LOGGER.debug("Propagating permissions of AIP {}", aipId);
+    return propagate(aipId, uuid -> SolrUtils.permissionsUpdateToSolrDocument(uuid, permissions),
+      uuid -> SolrUtils.preservationEventPermissionsUpdateToSolrDocument(uuid, aipId, permissions, state));
+  }
+
+  private ReturnWithExceptions<Void> propagate(String aipId, Function<String, SolrInputDocument> documentBuilder,
+    Function<String, SolrInputDocument> eventDocumentBuilder) {
+    ReturnWithExceptions<Void> exceptions = new ReturnWithExceptions<>();
+    SolrDocumentBuffer buffer = new SolrDocumentBuffer(index);
+
+    try {
+      if (uncommittedAIPIds.getIfPresent(aipId) != null) {
+        // documents of a just indexed AIP may not be searchable yet
+        Set<String> aipIds = getUncommittedAIPIds();
+        SolrUtils.commit(index, IndexedRepresentation.class, IndexedFile.class, IndexedPreservationEvent.class);
+        committed(aipIds);
+      }
+
+      long count = propagate(IndexedRepresentation.class, RodaConstants.REPRESENTATION_AIP_ID, aipId,
+        documentBuilder, buffer, 0);
+      count = propagate(IndexedFile.class, RodaConstants.FILE_AIP_ID, aipId, documentBuilder, buffer, count);
+      count = propagate(IndexedPreservationEvent.class, RodaConstants.PRESERVATION_EVENT_AIP_ID, aipId,
+        eventDocumentBuilder, buffer, count);
+      buffer.flush();
+      LOGGER.debug("Propagated changes of AIP {} to {} documents", aipId, count);
+    } catch (GenericException | RequestNotValidException | SolrServerException | SolrException | IOException e) {
+      LOGGER.debug("Cannot propagate changes of AIP {}", aipId, e);
+      exceptions.addException(e);
+    }
+
+    return exceptions;
+  }
+
+  private <T extends IsIndexed> long propagate(Class<T> classToUpdate, String aipIdField, String aipId,
+    Function<String, SolrInputDocument> documentBuilder, SolrDocumentBuffer buffer, long initialCount)
+    throws GenericException, RequestNotValidException, SolrServerException, IOException {
+    String collection = SolrUtils.getIndexName(classToUpdate).get(0);
+    SolrQuery query = new SolrQuery();
+    query.setQuery(SolrUtils.parseFilter(new Filter(new SimpleFilterParameter(aipIdField, aipId))));
+    query.setFields(RodaConstants.INDEX_UUID);
+    query.setSort(RodaConstants.INDEX_UUID, ORDER.asc);
+    query.setRows(buffer.getMaxBatchSize());
+
+    long count = initialCount;
+    String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+    boolean done;
+    do {
+      query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+      QueryResponse response = index.query(collection, query);
+      for (SolrDocument document : response.getResults()) {
+        buffer.add(collection, documentBuilder.apply(document.getFieldValue(RodaConstants.INDEX_UUID).toString()));
+        propagatedDocuments.inc();
+        count++;
+        if (count % PROGRESS_LOG_INTERVAL == 0) {
+          LOGGER.info("Propagated changes of AIP {} to {} documents", aipId, count);
+        }
+      }
+      done = response.getResults().isEmpty() || cursorMark.equals(response.getNextCursorMark());
+      cursorMark = response.getNextCursorMark();
+    } while (!done);
+
+    return count;
+  }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches, for each AIP id, its ancestor chain (the AIP id followed by the ids
+ * of all its ancestors), so that resolving the ancestors of AIPs that share
+ * the same parent does not need to retrieve every AIP up to the top of the
+ * hierarchy over and over again.
+ *
+ * Only chains that were completely resolved are cached. Entries containing a
+ * given AIP id must be invalidated (via {@link #invalidate(String)}) whenever
+ * that AIP is moved, updated or deleted, and chains resolved while an
+ * invalidation happened are not cached (as they may be the old ones).
+ *
+ * Invalidations only happen in the node that changed the AIP, so entries also
+ * expire after a (configurable) time, which bounds for how long other nodes
+ * may use an old chain. Clustered setups where that is not acceptable should
+ * disable the cache (max size 0).
+ */
+public class AncestorsCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AncestorsCache.class);
+  private static final int DEFAULT_MAX_SIZE = 10000;
+  private static final int DEFAULT_TTL_IN_SECONDS = 300;
+
+  private final ModelService model;
+  private final Cache<String, List<String>> cache;
+  // incremented by each invalidation, so that lookups that overlap one do not
+  // put back what was just invalidated
+  private long generation = 0;
+
+  public AncestorsCache(ModelService model) {
+    this(model, getConfiguredMaxSize(), getConfiguredTTL());
+  }
+
+  public AncestorsCache(ModelService model, long maxSize, long ttlInSeconds) {
+    this.model = model;
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+      .build();
+  }
+
+  private static int getConfiguredMaxSize() {
+    int maxSize = DEFAULT_MAX_SIZE;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      maxSize = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_MAX_SIZE, "core", "index", "ancestors_cache",
+        "max_size");
+    }
+    return maxSize;
+  }
+
+  private static int getConfiguredTTL() {
+    int ttl = DEFAULT_TTL_IN_SECONDS;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      ttl = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_TTL_IN_SECONDS, "core", "index", "ancestors_cache",
+        "ttl_in_seconds");
+    }
+    return ttl;
+  }
+
+  /**
+   * Same as {@link SolrUtils#getAncestors(String, ModelService)} but using
+   * (and filling) the cache
+   */
+  public List<String> getAncestors(String parentId)
+    throws RequestNotValidException, GenericException, AuthorizationDeniedException {
+    long lookupGeneration = getGeneration();
+    List<String> ancestors = new ArrayList<>();
+    boolean complete = true;
+    String nextAncestorId = parentId;
+    while (nextAncestorId != null) {
+      if (ancestors.contains(nextAncestorId)) {
+        complete = false;
+        break;
+      }
+
+      List<String> cachedAncestors = cache.getIfPresent(nextAncestorId);
+      if (cachedAncestors != null) {
+        for (String cachedAncestor : cachedAncestors) {
+          if (ancestors.contains(cachedAncestor)) {
+            complete = false;
+            break;
+          }
+          ancestors.add(cachedAncestor);
+        }
+        break;
+      }
+
+      try {
+        AIP nextAncestor = model.retrieveAIP(nextAncestorId);
+        ancestors.add(nextAncestorId);
+        nextAncestorId = nextAncestor.getParentId();
+      } catch (NotFoundException e) {
+        LOGGER.warn("Could not find one AIP ancestor. Ancestor id: {}", nextAncestorId);
+        complete = false;
+        nextAncestorId = null;
+      }
+    }
+
+    if (complete) {
+      synchronized (this) {
+        if (generation == lookupGeneration) {
+          for (int i = 0; i < ancestors.size(); i++) {
+            List<String> chain = new ArrayList<>(ancestors.subList(i, ancestors.size()));
+            cache.put(ancestors.get(i), Collections.unmodifiableList(chain));
+          }
+        }
+      }
+    }
+
+    return ancestors;
+  }
+
+  /**
+   * Removes all cached ancestor chains that contain the given AIP, i.e. the
+   * chain of the AIP itself and the ones of all its descendants
+   */
+  public synchronized void invalidate(String aipId) {
+    generation++;
+    cache.asMap().entrySet().removeIf(entry -> entry.getValue().contains(aipId));
+  }
+
+  public synchronized void invalidateAll() {
+    generation++;
+    cache.invalidateAll();
+  }
+
+  private synchronized long getGeneration() {
+    return generation;
+  }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrClient} that sends all requests to another client but targeting
+ * different collections (e.g. the shadow collections being built during a
+ * reindex instead of the live ones). Collections without a mapping are used as
+ * they are.
+ *
+ * Optionally, explicit commit/optimize requests can be ignored (so that bulk
+ * indexing is not slowed down by them), in which case the owner is responsible
+ * for committing the target collections in the end.
+ */
+public class CollectionRenamingSolrClient extends SolrClient {
+  private static final long serialVersionUID = -4153532373329436658L;
+
+  private final SolrClient client;
+  private final Map<String, String> collections;
+  private final boolean ignoreCommits;
+
+  public CollectionRenamingSolrClient(SolrClient client, Map<String, String> collections, boolean ignoreCommits) {
+    this.client = client;
+    this.collections = collections;
+    this.ignoreCommits = ignoreCommits;
+  }
+
+  public String getTargetCollection(String collection) {
+    return collections.getOrDefault(collection, collection);
+  }
+
+  @Override
+  public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+    if (ignoreCommits && isCommitOrOptimizeOnly(request)) {
+      return new NamedList<>();
+    }
+    return client.request(request, collection != null ? getTargetCollection(collection) : null);
+  }
+
+  private boolean isCommitOrOptimizeOnly(SolrRequest request) {
+    boolean ret = false;
+    if (request instanceof UpdateRequest) {
+      UpdateRequest updateRequest = (UpdateRequest) request;
+      ret = updateRequest.getAction() != null && updateRequest.getDocuments() == null
+        && updateRequest.getDeleteById() == null && updateRequest.getDeleteQuery() == null;
+    }
+    return ret;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // the wrapped client is not owned by this one, so it must not be closed
+  }
+
+}
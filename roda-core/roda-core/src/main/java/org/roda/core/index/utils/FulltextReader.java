@@ -0,0 +1,130 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the full text of a file (as extracted by Apache Tika) to be indexed,
+ * streaming it in chunks and stopping at a maximum number of characters, so
+ * that the whole text is never loaded into memory.
+ */
+public class FulltextReader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FulltextReader.class);
+
+  public static final int DEFAULT_MAX_CHARS = 10485760;
+  public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+  private final int maxChars;
+  private final int chunkSize;
+
+  public FulltextReader() {
+    this(getConfiguredInt(DEFAULT_MAX_CHARS, "max_chars"), getConfiguredInt(DEFAULT_CHUNK_SIZE, "chunk_size"));
+  }
+
+  public FulltextReader(int maxChars, int chunkSize) {
+    this.maxChars = Math.max(0, maxChars);
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  private static int getConfiguredInt(int defaultValue, String key) {
+    int value = defaultValue;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      value = RodaCoreFactory.getRodaConfigurationAsInt(defaultValue, "core", "index", "fulltext", key);
+    }
+    return value;
+  }
+
+  /**
+   * Reads at most the maximum number of characters of the stream, which is not
+   * closed, logging if the text was truncated.
+   *
+   * @param source
+   *          what the text is from (only used for logging)
+   * @return the text split in chunks of at most the chunk size, each one cut at
+   *         a whitespace when possible so that words are not split (empty if
+   *         the stream has no text)
+   */
+  public List<String> read(InputStream inputStream, Object source) throws IOException {
+    List<String> chunks = new ArrayList<>();
+    Reader reader = new InputStreamReader(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
+    char[] buffer = new char[Math.min(chunkSize, Math.max(1, maxChars))];
+    // characters of the previous chunk after its last whitespace
+    int carried = 0;
+    int remaining = maxChars;
+
+    while (true) {
+      int length = Math.min(buffer.length - carried, remaining);
+      int read = fill(reader, buffer, carried, length);
+      remaining -= read;
+      int available = carried + read;
+
+      if (read < length || remaining == 0) {
+        if (available > 0) {
+          chunks.add(new String(buffer, 0, available));
+        }
+        if (read == length && reader.read() >= 0) {
+          LOGGER.warn("Full text of {} was truncated to {} characters", source, maxChars);
+        }
+        break;
+      }
+
+      int cut = afterLastWhitespace(buffer, available);
+      chunks.add(new String(buffer, 0, cut));
+      carried = available - cut;
+      System.arraycopy(buffer, cut, buffer, 0, carried);
+    }
+
+    return chunks;
+  }
+
+  /**
+   * @return position after the last whitespace of the buffer or its length if
+   *         it has no whitespace
+   */
+  private static int afterLastWhitespace(char[] buffer, int length) {
+    for (int i = length - 1; i > 0; i--) {
+      if (Character.isWhitespace(buffer[i])) {
+        return i + 1;
+      }
+    }
+    return length;
+  }
+
+  private static int fill(Reader reader, char[] buffer, int offset, int length) throws IOException {
+    int filled = 0;
+    while (filled < length) {
+      int read = reader.read(buffer, offset + filled, length - filled);
+      if (read < 0) {
+        break;
+      }
+      filled += read;
+    }
+    return filled;
+  }
+
+  public int getMaxChars() {
+    return maxChars;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+}
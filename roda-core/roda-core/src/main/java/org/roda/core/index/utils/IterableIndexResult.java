@@ -16,9 +16,11 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.index.IndexResult;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.facet.FacetFieldResult;
@@ -33,7 +35,12 @@ import org.slf4j.LoggerFactory;
 /**
  * Does search in the index, using the Solr.find() method, and if configured
  * removes duplicate objects (via uuid comparison) thus providing iterator
- * 
+ *
+ * By default, pages are obtained using a Solr cursor (cursorMark), whose cost
+ * does not depend on how deep the page is. When the cursor is sorted only by
+ * uuid the same object can never be returned twice, so no memory is spent on
+ * duplicate detection.
+ *
  * @author Hélder Silva <hsilva@keep.pt>
  */
 
@@ -52,6 +59,9 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
   private List<String> fieldsToReturn;
 
   private boolean removeDuplicates = true;
+  private boolean useCursor = true;
+  private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+  private boolean cursorExhausted = false;
   private Set<String> uniqueUUIDs = new HashSet<>();
   private IndexResult<T> indexResult = null;
   private List<T> indexResultObjects;
@@ -67,6 +77,12 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
   public IterableIndexResult(final SolrClient solrClient, final Class<T> returnClass, final Filter filter,
     final Sorter sorter, final Facets facets, final User user, final boolean justActive, final boolean removeDuplicates,
     final List<String> fieldsToReturn) {
+    this(solrClient, returnClass, filter, sorter, facets, user, justActive, removeDuplicates, fieldsToReturn, true);
+  }
+
+  public IterableIndexResult(final SolrClient solrClient, final Class<T> returnClass, final Filter filter,
+    final Sorter sorter, final Facets facets, final User user, final boolean justActive, final boolean removeDuplicates,
+    final List<String> fieldsToReturn, final boolean useCursor) {
     this.solrClient = solrClient;
     this.returnClass = returnClass;
     this.filter = filter;
@@ -77,9 +93,15 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
     this.sublist = new Sublist(0, PAGE_SIZE);
     this.user = user;
     this.justActive = justActive;
-    this.removeDuplicates = removeDuplicates;
+    this.useCursor = useCursor;
+    // a cursor sorted by uuid (unique & immutable) never returns duplicates
+    this.removeDuplicates = removeDuplicates && !(useCursor && SolrUtils.sortsOnlyByUUID(sorter));
     this.fieldsToReturn = fieldsToReturn;
-    getResults(this.sublist);
+    if (useCursor) {
+      getResultsWithCursor();
+    } else {
+      getResults(this.sublist);
+    }
   }
 
   private void getResults(final Sublist sublist) {
@@ -89,20 +111,33 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
       if (totalObjects == -1) {
         totalObjects = indexResult.getTotalCount();
       }
+      processResults();
+    } catch (GenericException | RequestNotValidException e) {
+      // just set index result to null & let iterator return proper values
+      indexResult = null;
+      LOGGER.error("Error while retrieving partial list of results", e);
+    }
+  }
 
-      if (removeDuplicates) {
-        indexResultObjects = new ArrayList<>();
-        for (T obj : indexResult.getResults()) {
-          if (!uniqueUUIDs.contains(obj.getUUID())) {
-            indexResultObjects.add(obj);
-            uniqueUUIDs.add(obj.getUUID());
-          } else {
-            totalObjects -= 1;
-          }
+  private void getResultsWithCursor() {
+    try {
+      do {
+        // facets only need to be calculated on the first page
+        Facets pageFacets = indexResult == null ? facets : Facets.NONE;
+        Pair<IndexResult<T>, String> page = SolrUtils.findWithCursor(solrClient, returnClass, filter, sorter,
+          PAGE_SIZE, cursorMark, pageFacets, user, justActive, fieldsToReturn);
+        if (indexResult == null) {
+          indexResult = page.getFirst();
+          totalObjects = indexResult.getTotalCount();
+        } else {
+          indexResult.setResults(page.getFirst().getResults());
         }
-      } else {
-        indexResultObjects = indexResult.getResults();
-      }
+
+        cursorExhausted = page.getFirst().getResults().isEmpty() || cursorMark.equals(page.getSecond());
+        cursorMark = page.getSecond();
+        processResults();
+        // a page can be made only of duplicates, so the next one is needed
+      } while (indexResultObjects.isEmpty() && !cursorExhausted);
     } catch (GenericException | RequestNotValidException e) {
       // just set index result to null & let iterator return proper values
       indexResult = null;
@@ -110,6 +145,22 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
     }
   }
 
+  private void processResults() {
+    if (removeDuplicates) {
+      indexResultObjects = new ArrayList<>();
+      for (T obj : indexResult.getResults()) {
+        if (!uniqueUUIDs.contains(obj.getUUID())) {
+          indexResultObjects.add(obj);
+          uniqueUUIDs.add(obj.getUUID());
+        } else {
+          totalObjects -= 1;
+        }
+      }
+    } else {
+      indexResultObjects = indexResult.getResults();
+    }
+  }
+
   public List<FacetFieldResult> getFacetResults() {
     return indexResult != null ? indexResult.getFacetResults() : Collections.emptyList();
   }
@@ -120,7 +171,11 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
 
       @Override
       public boolean hasNext() {
-        return indexResult != null && currentObject < totalObjects;
+        if (useCursor) {
+          return indexResult != null && currentObjectInPartialList < indexResultObjects.size();
+        } else {
+          return indexResult != null && currentObject < totalObjects;
+        }
       }
 
       @Override
@@ -136,17 +191,22 @@ public class IterableIndexResult<T extends IsIndexed> implements Iterable<T> {
 
           // see if a new page needs to be obtained
           if (currentObjectInPartialList == indexResultObjects.size()) {
-            getResults(sublist.setFirstElementIndex(sublist.getFirstElementIndex() + PAGE_SIZE));
-            currentObjectInPartialList = 0;
+            if (!useCursor) {
+              getResults(sublist.setFirstElementIndex(sublist.getFirstElementIndex() + PAGE_SIZE));
+              currentObjectInPartialList = 0;
+            } else if (!cursorExhausted) {
+              getResultsWithCursor();
+              currentObjectInPartialList = 0;
+            }
           }
 
           return t;
         } catch (IndexOutOfBoundsException e) {
           LOGGER.error(
-            "Error while processing next element. filter='{}'; sorter='{}'; sublist='{}'; justActive='{}'; removeDuplicates='{}'; "
-              + "currentObjectInPartialList='{}'; currentObject='{}'; totalObjects='{}'",
-            filter, sorter, sublist, justActive, removeDuplicates, currentObjectInPartialList, currentObject,
-            totalObjects, e);
+            "Error while processing next element. filter='{}'; sorter='{}'; sublist='{}'; cursorMark='{}'; justActive='{}'; "
+              + "removeDuplicates='{}'; currentObjectInPartialList='{}'; currentObject='{}'; totalObjects='{}'",
+            filter, sorter, sublist, cursorMark, justActive, removeDuplicates, currentObjectInPartialList,
+            currentObject, totalObjects, e);
           throw new NoSuchElementException("Error while processing next element");
         }
       }
@@ -0,0 +1,436 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.regex.Matcher;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.response.CollectionAdminResponse;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.formats.Format;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.DIP;
+import org.roda.core.data.v2.ip.metadata.IndexedPreservationAgent;
+import org.roda.core.data.v2.ip.metadata.IndexedPreservationEvent;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.log.LogEntry;
+import org.roda.core.data.v2.notifications.Notification;
+import org.roda.core.data.v2.risks.Risk;
+import org.roda.core.data.v2.risks.RiskIncidence;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds indexes from storage without touching the live collections: fresh
+ * (shadow) collections are created next to the live ones, filled in bulk
+ * (without intermediate commits) and, if their document counts look right,
+ * they replace the live collections in one step, so searches keep working
+ * during the whole rebuild.
+ *
+ * The switch is done via a core swap when using embedded Solr and via
+ * collection aliases when using SolrCloud. While the shadow collections are
+ * being built, every change done to the model is indexed in both the live and
+ * the shadow collections.
+ */
+public class ShadowIndexBuilder {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShadowIndexBuilder.class);
+
+  private static final String DATA_FOLDERS_FILE = "data-folders.properties";
+  private static final double DEFAULT_MIN_COUNT_RATIO = 0.9;
+
+  // classes that must be rebuilt together -> collections they are indexed in
+  private static final Map<List<Class<? extends IsRODAObject>>, List<String>> GROUPS = new LinkedHashMap<>();
+  static {
+    GROUPS.put(Arrays.asList(AIP.class, IndexedPreservationEvent.class),
+      Arrays.asList(RodaConstants.INDEX_AIP, RodaConstants.INDEX_REPRESENTATION, RodaConstants.INDEX_FILE,
+        RodaConstants.INDEX_PRESERVATION_EVENTS));
+    GROUPS.put(Arrays.asList(IndexedPreservationAgent.class),
+      Arrays.asList(RodaConstants.INDEX_PRESERVATION_AGENTS));
+    GROUPS.put(Arrays.asList(Format.class), Arrays.asList(RodaConstants.INDEX_FORMAT));
+    GROUPS.put(Arrays.asList(Notification.class), Arrays.asList(RodaConstants.INDEX_NOTIFICATION));
+    GROUPS.put(Arrays.asList(Risk.class), Arrays.asList(RodaConstants.INDEX_RISK));
+    GROUPS.put(Arrays.asList(RiskIncidence.class), Arrays.asList(RodaConstants.INDEX_RISK_INCIDENCE));
+    GROUPS.put(Arrays.asList(LogEntry.class), Arrays.asList(RodaConstants.INDEX_ACTION_LOG));
+    GROUPS.put(Arrays.asList(Job.class), Arrays.asList(RodaConstants.INDEX_JOB, RodaConstants.INDEX_JOB_REPORT));
+    GROUPS.put(Arrays.asList(DIP.class), Arrays.asList(RodaConstants.INDEX_DIP, RodaConstants.INDEX_DIP_FILE));
+  }
+
+  private final SolrClient solrClient;
+  private final ModelService model;
+  private final String suffix;
+  // live collection -> shadow collection
+  private final Map<String, String> shadowCollections = new LinkedHashMap<>();
+
+  public ShadowIndexBuilder(SolrClient solrClient, ModelService model) {
+    this.solrClient = solrClient;
+    this.model = model;
+    this.suffix = Long.toString(System.currentTimeMillis());
+  }
+
+  /**
+   * @return true if indexes of the given Solr client can be rebuilt in shadow
+   *         collections (i.e. embedded Solr or SolrCloud)
+   */
+  public static boolean isSupported(SolrClient solrClient) {
+    return solrClient instanceof EmbeddedSolrServer || solrClient instanceof CloudSolrClient;
+  }
+
+  /**
+   * @return the classes, from the given ones, that can be rebuilt in shadow
+   *         collections (all other ones must be reindexed in place)
+   */
+  public static List<Class<? extends IsRODAObject>> getSupportedClasses(List<Class<? extends IsRODAObject>> classes) {
+    List<Class<? extends IsRODAObject>> supported = new ArrayList<>();
+    for (List<Class<? extends IsRODAObject>> group : GROUPS.keySet()) {
+      if (classes.containsAll(group)) {
+        supported.addAll(group);
+      }
+    }
+    return supported;
+  }
+
+  /**
+   * Rebuilds the indexes of the given classes (which must be the ones returned
+   * by {@link #getSupportedClasses(List)}) and switches to them. If anything
+   * goes wrong, the shadow collections are discarded and the live ones are
+   * kept as they were.
+   */
+  public void rebuild(List<Class<? extends IsRODAObject>> classes) throws GenericException {
+    for (Entry<List<Class<? extends IsRODAObject>>, List<String>> group : GROUPS.entrySet()) {
+      if (classes.containsAll(group.getKey())) {
+        for (String collection : group.getValue()) {
+          shadowCollections.put(collection, collection + "_" + suffix);
+        }
+      }
+    }
+
+    IndexService shadowIndex = null;
+    try {
+      for (Entry<String, String> entry : shadowCollections.entrySet()) {
+        createShadowCollection(entry.getKey(), entry.getValue());
+      }
+
+      SolrClient shadowClient = new CollectionRenamingSolrClient(solrClient, new LinkedHashMap<>(shadowCollections),
+        true);
+      shadowIndex = new IndexService(shadowClient, model);
+      for (Class<? extends IsRODAObject> objectClass : classes) {
+        LOGGER.info("Rebuilding index of {} in shadow collections", objectClass.getSimpleName());
+        reindex(shadowIndex, objectClass);
+      }
+
+      for (Entry<String, String> entry : shadowCollections.entrySet()) {
+        solrClient.commit(entry.getValue());
+        verify(entry.getKey(), entry.getValue());
+      }
+
+      switchCollections(shadowIndex);
+    } catch (RODAException | SolrServerException | IOException | RuntimeException e) {
+      if (shadowIndex != null) {
+        shadowIndex.stopObservingModel();
+      }
+      discardShadowCollections();
+      throw new GenericException("Error rebuilding indexes in shadow collections", e);
+    }
+  }
+
+  private void reindex(IndexService shadowIndex, Class<? extends IsRODAObject> objectClass) throws RODAException {
+    if (AIP.class.equals(objectClass)) {
+      CloseableIterable<OptionalWithCause<AIP>> aips = model.listAIPs();
+      try {
+        shadowIndex.reindexAIPs(aips);
+      } finally {
+        IOUtils.closeQuietly(aips);
+      }
+    } else if (IndexedPreservationEvent.class.equals(objectClass)) {
+      // AIP events are indexed together with the AIPs
+      shadowIndex.reindexPreservationMetadata(model.listPreservationRepositoryEvents());
+    } else if (IndexedPreservationAgent.class.equals(objectClass)) {
+      shadowIndex.reindexPreservationAgents();
+    } else if (LogEntry.class.equals(objectClass)) {
+      CloseableIterable<OptionalWithCause<LogEntry>> entries = model.listLogEntries();
+      try {
+        for (OptionalWithCause<LogEntry> entry : entries) {
+          if (entry.isPresent()) {
+            shadowIndex.reindexActionLog(entry.get());
+          }
+        }
+      } finally {
+        IOUtils.closeQuietly(entries);
+      }
+    } else {
+      CloseableIterable<? extends OptionalWithCause<? extends IsRODAObject>> objects = model.list(objectClass);
+      try {
+        for (OptionalWithCause<? extends IsRODAObject> object : objects) {
+          if (object.isPresent()) {
+            shadowIndex.reindex(object.get());
+          } else {
+            LOGGER.error("Could not rebuild index of a {}", objectClass.getSimpleName(), object.getCause());
+          }
+        }
+      } finally {
+        IOUtils.closeQuietly(objects);
+      }
+    }
+  }
+
+  private void verify(String collection, String shadowCollection)
+    throws GenericException, SolrServerException, IOException {
+    double minRatio = DEFAULT_MIN_COUNT_RATIO;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      minRatio = RodaCoreFactory.getRodaConfiguration().getDouble("core.index.shadow.min_count_ratio",
+        DEFAULT_MIN_COUNT_RATIO);
+    }
+
+    long liveCount = count(collection);
+    long shadowCount = count(shadowCollection);
+    LOGGER.info("Index {} has {} documents, rebuilt index has {}", collection, liveCount, shadowCount);
+    if (shadowCount < liveCount * minRatio) {
+      throw new GenericException("Rebuilt index " + collection + " has too few documents (" + shadowCount
+        + ") when compared to the live one (" + liveCount + ")");
+    }
+  }
+
+  private long count(String collection) throws SolrServerException, IOException {
+    return solrClient.query(collection, new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+  }
+
+  private void createShadowCollection(String collection, String shadowCollection)
+    throws GenericException, AlreadyExistsException, SolrServerException, IOException {
+    LOGGER.info("Creating shadow collection {} for {}", shadowCollection, collection);
+    if (solrClient instanceof EmbeddedSolrServer) {
+      createShadowCore(((EmbeddedSolrServer) solrClient).getCoreContainer(), collection, shadowCollection);
+    } else {
+      createShadowCloudCollection((CloudSolrClient) solrClient, collection, shadowCollection);
+    }
+  }
+
+  private void switchCollections(IndexService shadowIndex) throws GenericException, SolrServerException, IOException {
+    if (solrClient instanceof EmbeddedSolrServer) {
+      CoreContainer coreContainer = ((EmbeddedSolrServer) solrClient).getCoreContainer();
+      for (Entry<String, String> entry : shadowCollections.entrySet()) {
+        Map<String, String> dataFolderChange = getDataFolderChange(coreContainer, entry.getKey(), entry.getValue());
+        coreContainer.swap(entry.getKey(), entry.getValue());
+        saveDataFolders(dataFolderChange);
+      }
+      shadowIndex.stopObservingModel();
+
+      // after the swap, the shadow names point to the old cores
+      for (String oldCore : shadowCollections.values()) {
+        coreContainer.unload(oldCore, true, true, true);
+      }
+    } else {
+      CloudSolrClient cloudClient = (CloudSolrClient) solrClient;
+      List<String> oldCollections = new ArrayList<>();
+      Iterator<Entry<String, String>> iterator = shadowCollections.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<String, String> entry = iterator.next();
+        String collection = entry.getKey();
+        String oldCollection = getPhysicalCollection(cloudClient, collection);
+        if (collection.equals(oldCollection)) {
+          // an alias cannot have the name of an existing collection
+          LOGGER.warn("Collection {} is not an alias yet, so it will be unavailable while it is replaced", collection);
+          deleteCloudCollection(cloudClient, collection);
+        } else {
+          oldCollections.add(oldCollection);
+        }
+
+        CollectionAdminRequest.CreateAlias createAlias = new CollectionAdminRequest.CreateAlias();
+        createAlias.setAliasName(collection);
+        createAlias.setAliasedCollections(entry.getValue());
+        checkResponse(createAlias.process(cloudClient), "Error creating alias " + collection);
+        // now live, so it must not be discarded if a later switch fails
+        iterator.remove();
+      }
+      shadowIndex.stopObservingModel();
+
+      for (String oldCollection : oldCollections) {
+        deleteCloudCollection(cloudClient, oldCollection);
+      }
+    }
+    shadowCollections.clear();
+  }
+
+  private void discardShadowCollections() {
+    for (String shadowCollection : shadowCollections.values()) {
+      try {
+        if (solrClient instanceof EmbeddedSolrServer) {
+          CoreContainer coreContainer = ((EmbeddedSolrServer) solrClient).getCoreContainer();
+          if (coreContainer.getCoreNames().contains(shadowCollection)) {
+            coreContainer.unload(shadowCollection, true, true, true);
+          }
+        } else {
+          deleteCloudCollection((CloudSolrClient) solrClient, shadowCollection);
+        }
+      } catch (GenericException | SolrServerException | IOException | RuntimeException e) {
+        LOGGER.error("Error discarding shadow collection {}", shadowCollection, e);
+      }
+    }
+    shadowCollections.clear();
+  }
+
+  // embedded Solr
+
+  private void createShadowCore(CoreContainer coreContainer, String collection, String shadowCollection)
+    throws GenericException, AlreadyExistsException, IOException {
+    Path instanceDir;
+    Path dataDir;
+    try (SolrCore core = coreContainer.getCore(collection)) {
+      if (core == null) {
+        throw new GenericException("Could not find index core " + collection);
+      }
+      instanceDir = Paths.get(core.getCoreDescriptor().getInstanceDir());
+      dataDir = Paths.get(core.getDataDir());
+    }
+
+    // the shadow core uses a copy of the live core configuration, pointing to
+    // a new data folder
+    Path shadowInstanceDir = instanceDir.resolveSibling(shadowCollection);
+    Path shadowDataDir = dataDir.resolveSibling(getDefaultDataFolder(dataDir) + "_" + suffix);
+    Path shadowConfDir = shadowInstanceDir.resolve("conf");
+    FSUtils.copy(instanceDir.resolve("conf"), shadowConfDir, false);
+
+    Path solrConfig = shadowConfDir.resolve("solrconfig.xml");
+    String content = new String(Files.readAllBytes(solrConfig), StandardCharsets.UTF_8);
+    content = content.replaceFirst("<dataDir>[^<]*</dataDir>",
+      Matcher.quoteReplacement("<dataDir>" + shadowDataDir.toString() + "</dataDir>"));
+    Files.write(solrConfig, content.getBytes(StandardCharsets.UTF_8));
+
+    coreContainer.create(shadowCollection, shadowInstanceDir, Collections.emptyMap());
+  }
+
+  private Map<String, String> getDataFolderChange(CoreContainer coreContainer, String collection,
+    String shadowCollection) {
+    Map<String, String> change = new LinkedHashMap<>();
+    try (SolrCore core = coreContainer.getCore(collection);
+      SolrCore shadowCore = coreContainer.getCore(shadowCollection)) {
+      Path dataDir = Paths.get(core.getDataDir());
+      Path shadowDataDir = Paths.get(shadowCore.getDataDir());
+      change.put(getDefaultDataFolder(dataDir), shadowDataDir.getFileName().toString());
+    }
+    return change;
+  }
+
+  private static String getDefaultDataFolder(Path dataDir) {
+    return dataDir.getFileName().toString().replaceFirst("_\\d+$", "");
+  }
+
+  private void saveDataFolders(Map<String, String> dataFolders) throws IOException {
+    Path indexDataPath = RodaCoreFactory.getIndexDataPath();
+    if (indexDataPath == null || dataFolders.isEmpty()) {
+      return;
+    }
+
+    Properties properties = loadDataFolders(indexDataPath);
+    properties.putAll(dataFolders);
+    try (OutputStream outputStream = Files.newOutputStream(indexDataPath.resolve(DATA_FOLDERS_FILE))) {
+      properties.store(outputStream, "Index data folders in use, replaced when indexes are rebuilt");
+    }
+  }
+
+  private static Properties loadDataFolders(Path indexDataPath) throws IOException {
+    Properties properties = new Properties();
+    Path file = indexDataPath.resolve(DATA_FOLDERS_FILE);
+    if (Files.exists(file)) {
+      try (InputStream inputStream = Files.newInputStream(file)) {
+        properties.load(inputStream);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * @return the folder, under the index data path, currently holding the data
+   *         of the embedded Solr core whose data is by default in
+   *         defaultFolder (they differ after the index is rebuilt in a shadow
+   *         core)
+   */
+  public static String getDataFolder(Path indexDataPath, String defaultFolder) {
+    String folder = defaultFolder;
+    try {
+      folder = loadDataFolders(indexDataPath).getProperty(defaultFolder, defaultFolder);
+    } catch (IOException e) {
+      LOGGER.error("Error reading index data folders, using default folder {}", defaultFolder, e);
+    }
+    return folder;
+  }
+
+  // SolrCloud
+
+  private void createShadowCloudCollection(CloudSolrClient cloudClient, String collection, String shadowCollection)
+    throws GenericException, SolrServerException, IOException {
+    String physicalCollection = getPhysicalCollection(cloudClient, collection);
+    ZkStateReader zkStateReader = cloudClient.getZkStateReader();
+    DocCollection docCollection = zkStateReader.getClusterState().getCollection(physicalCollection);
+
+    CollectionAdminRequest.Create create = new CollectionAdminRequest.Create();
+    create.setCollectionName(shadowCollection);
+    create.setConfigName(zkStateReader.readConfigName(physicalCollection));
+    create.setNumShards(docCollection.getSlices().size());
+    if (docCollection.getReplicationFactor() != null) {
+      create.setReplicationFactor(docCollection.getReplicationFactor());
+    }
+    create.setMaxShardsPerNode(docCollection.getMaxShardsPerNode());
+    checkResponse(create.process(cloudClient), "Error creating collection " + shadowCollection);
+  }
+
+  private String getPhysicalCollection(CloudSolrClient cloudClient, String collection) {
+    cloudClient.connect();
+    String alias = cloudClient.getZkStateReader().getAliases().getCollectionAlias(collection);
+    return alias != null ? alias : collection;
+  }
+
+  private void deleteCloudCollection(CloudSolrClient cloudClient, String collection)
+    throws GenericException, SolrServerException, IOException {
+    CollectionAdminRequest.Delete delete = new CollectionAdminRequest.Delete();
+    delete.setCollectionName(collection);
+    checkResponse(delete.process(cloudClient), "Error deleting collection " + collection);
+  }
+
+  private void checkResponse(CollectionAdminResponse response, String message) throws GenericException {
+    if (!response.isSuccess()) {
+      throw new GenericException(message + ": " + response.getErrorMessages());
+    }
+  }
+
+}
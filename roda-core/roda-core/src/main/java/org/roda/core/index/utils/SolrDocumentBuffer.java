@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects {@link SolrInputDocument}s per collection and sends them to the
+ * index in batches, instead of doing one round-trip per document. Documents
+ * are sent when a collection buffer reaches the maximum batch size and when
+ * {@link #flush()} is invoked, which must be done when the operation that
+ * produced the documents completes. If a batch fails, its documents are sent
+ * again one at a time, so one bad document does not take the others with it.
+ *
+ * Instances are not thread-safe and are meant to live during a single
+ * indexing operation (e.g. indexing an AIP).
+ */
+public class SolrDocumentBuffer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SolrDocumentBuffer.class);
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+  private final SolrClient index;
+  private final int maxBatchSize;
+  private final Map<String, List<SolrInputDocument>> buffers = new LinkedHashMap<>();
+  private BiConsumer<SolrInputDocument, Exception> failedDocumentHandler = null;
+
+  public SolrDocumentBuffer(SolrClient index) {
+    this(index, getConfiguredMaxBatchSize());
+  }
+
+  public SolrDocumentBuffer(SolrClient index, int maxBatchSize) {
+    this.index = index;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+  }
+
+  /**
+   * Sets who is told about each document the index refuses. As the documents of
+   * a batch that fails are sent again one at a time, only the ones that
+   * actually fail are reported.
+   */
+  public void setFailedDocumentHandler(BiConsumer<SolrInputDocument, Exception> failedDocumentHandler) {
+    this.failedDocumentHandler = failedDocumentHandler;
+  }
+
+  public static int getConfiguredMaxBatchSize() {
+    int batchSize = DEFAULT_MAX_BATCH_SIZE;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      batchSize = RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_MAX_BATCH_SIZE, "core", "index", "batch_size");
+    }
+    return batchSize;
+  }
+
+  /**
+   * Adds a document to the buffer of the given collection, sending the
+   * collection buffer to the index if it reached the maximum batch size
+   */
+  public void add(String collection, SolrInputDocument document) throws SolrServerException, IOException {
+    List<SolrInputDocument> buffer = buffers.computeIfAbsent(collection, k -> new ArrayList<>(maxBatchSize));
+    buffer.add(document);
+    if (buffer.size() >= maxBatchSize) {
+      flush(collection);
+    }
+  }
+
+  /**
+   * Sends all buffered documents of the given collection to the index
+   */
+  public void flush(String collection) throws SolrServerException, IOException {
+    List<SolrInputDocument> buffer = buffers.get(collection);
+    if (buffer != null && !buffer.isEmpty()) {
+      // documents leave the buffer even on error to avoid sending them again
+      List<SolrInputDocument> documents = new ArrayList<>(buffer);
+      buffer.clear();
+      try {
+        LOGGER.trace("Sending {} documents to collection {}", documents.size(), collection);
+        index.add(collection, documents);
+      } catch (SolrServerException | SolrException | IOException e) {
+        // a single bad document fails the whole batch
+        LOGGER.warn("Error sending {} documents to collection {}, sending them one at a time", documents.size(),
+          collection, e);
+        addOneAtATime(collection, documents);
+      }
+    }
+  }
+
+  private void addOneAtATime(String collection, List<SolrInputDocument> documents)
+    throws SolrServerException, IOException {
+    Exception firstError = null;
+    int failed = 0;
+    for (SolrInputDocument document : documents) {
+      try {
+        index.add(collection, document);
+      } catch (SolrServerException | SolrException | IOException e) {
+        LOGGER.error("Error sending document {} to collection {}", document.getFieldValue(RodaConstants.INDEX_UUID),
+          collection, e);
+        failed++;
+        if (firstError == null) {
+          firstError = e;
+        }
+        if (failedDocumentHandler != null) {
+          failedDocumentHandler.accept(document, e);
+        }
+      }
+    }
+
+    if (firstError != null) {
+      throw new SolrServerException(
+        "Could not send " + failed + " of " + documents.size() + " documents to collection " + collection, firstError);
+    }
+  }
+
+  /**
+   * Sends all buffered documents, of all collections, to the index. Every
+   * collection is flushed even if a previous one failed; the first error is
+   * re-thrown at the end.
+   */
+  public void flush() throws SolrServerException, IOException {
+    SolrServerException solrException = null;
+    IOException ioException = null;
+    for (String collection : buffers.keySet()) {
+      try {
+        flush(collection);
+      } catch (SolrServerException e) {
+        LOGGER.error("Error sending buffered documents to collection {}", collection, e);
+        if (solrException == null) {
+          solrException = e;
+        }
+      } catch (IOException e) {
+        LOGGER.error("Error sending buffered documents to collection {}", collection, e);
+        if (ioException == null) {
+          ioException = e;
+        }
+      }
+    }
+
+    if (solrException != null) {
+      throw solrException;
+    } else if (ioException != null) {
+      throw ioException;
+    }
+  }
+
+  public int size(String collection) {
+    List<SolrInputDocument> buffer = buffers.get(collection);
+    return buffer != null ? buffer.size() : 0;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Builds a {@link SolrInputDocument} from the SAX events of a document in the
+ * Solr XML update format (i.e. <code>&lt;doc&gt;&lt;field
+ * name="..."&gt;...&lt;/field&gt;&lt;/doc&gt;</code>), which is the output of
+ * the ingest crosswalks, so that their result does not need to be serialized
+ * and parsed again.
+ */
+public class SolrInputDocumentHandler extends DefaultHandler {
+  private static final String DOC = "doc";
+  private static final String FIELD = "field";
+  private static final String NAME = "name";
+  private static final String BOOST = "boost";
+
+  private SolrInputDocument document = null;
+  private String fieldName = null;
+  private float fieldBoost = 1.0f;
+  private final StringBuilder fieldValue = new StringBuilder();
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) {
+    String name = getName(localName, qName);
+    if (DOC.equals(name)) {
+      document = new SolrInputDocument();
+    } else if (FIELD.equals(name) && document != null) {
+      fieldName = attributes.getValue(NAME);
+      String boost = attributes.getValue(BOOST);
+      fieldBoost = boost != null ? Float.parseFloat(boost) : 1.0f;
+      fieldValue.setLength(0);
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    if (fieldName != null) {
+      fieldValue.append(ch, start, length);
+    }
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    if (FIELD.equals(getName(localName, qName)) && fieldName != null) {
+      document.addField(fieldName, fieldValue.toString(), fieldBoost);
+      fieldName = null;
+    }
+  }
+
+  private static String getName(String localName, String qName) {
+    return localName != null && !localName.isEmpty() ? localName : qName;
+  }
+
+  /**
+   * @return the (last) document found or null if there was none
+   */
+  public SolrInputDocument getDocument() {
+    return document;
+  }
+
+}
@@ -8,7 +8,6 @@
 package org.roda.core.index.utils;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -24,14 +23,8 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathExpressionException;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -46,9 +39,10 @@ import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.FacetParams;
 import org.apache.solr.common.util.DateUtil;
-import org.apache.solr.handler.loader.XMLLoader;
+import org.roda.core.common.CrosswalkRegistry;
 import org.roda.core.common.MetadataFileUtils;
 import org.roda.core.common.PremisV3Utils;
 import org.roda.core.common.RodaUtils;
@@ -63,6 +57,7 @@ import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.LiteRODAObject;
 import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.formats.Format;
 import org.roda.core.data.v2.index.IndexResult;
 import org.roda.core.data.v2.index.IndexRunnable;
@@ -143,6 +138,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import net.sf.saxon.s9api.SAXDestination;
+
 /**
  * Utilities class related to Apache Solr
  * 
@@ -299,6 +296,67 @@ public class SolrUtils {
     return ret;
   }
 
+  /**
+   * Obtains a page of results using a Solr cursor (cursorMark) instead of
+   * start/rows, so that the cost of obtaining a page does not depend on how
+   * deep the page is. The provided sorter is complemented with the unique key
+   * (as required by Solr cursors).
+   * 
+   * @return a pair with the results and the cursor mark to be used to obtain
+   *         the next page (which is equal to the provided one when there are no
+   *         more results)
+   */
+  public static <T extends IsIndexed> Pair<IndexResult<T>, String> findWithCursor(SolrClient index,
+    Class<T> classToRetrieve, Filter filter, Sorter sorter, int pageSize, String cursorMark, Facets facets, User user,
+    boolean justActive, List<String> fieldsToReturn) throws GenericException, RequestNotValidException {
+    Pair<IndexResult<T>, String> ret;
+    SolrQuery query = new SolrQuery();
+    query.setParam("q.op", DEFAULT_QUERY_PARSER_OPERATOR);
+    query.setQuery(parseFilter(filter));
+    query.setSorts(parseSorterForCursor(sorter));
+    query.setStart(0);
+    query.setRows(pageSize);
+    query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+    if (!fieldsToReturn.isEmpty()) {
+      query.setFields(fieldsToReturn.toArray(new String[fieldsToReturn.size()]));
+    }
+    parseAndConfigureFacets(facets, query);
+    if (hasPermissionFilters(classToRetrieve)) {
+      query.addFilterQuery(getFilterQueries(user, justActive, classToRetrieve));
+    }
+
+    try {
+      QueryResponse response = index.query(getIndexName(classToRetrieve).get(0), query);
+      IndexResult<T> result = queryResponseToIndexResult(response, classToRetrieve, facets, fieldsToReturn);
+      ret = Pair.of(result, response.getNextCursorMark());
+    } catch (SolrServerException | IOException e) {
+      throw new GenericException("Could not query index", e);
+    } catch (SolrException e) {
+      throw new RequestNotValidException(e.getMessage());
+    } catch (RuntimeException e) {
+      throw new GenericException("Unexpected exception while querying index", e);
+    }
+
+    return ret;
+  }
+
+  /**
+   * @return true if the sorter is empty or only sorts by the unique key, i.e.
+   *         the order of a document never changes while iterating with a cursor
+   */
+  public static boolean sortsOnlyByUUID(Sorter sorter) {
+    boolean ret = true;
+    if (sorter != null) {
+      for (SortParameter sortParameter : sorter.getParameters()) {
+        if (!RodaConstants.INDEX_UUID.equals(sortParameter.getName())) {
+          ret = false;
+          break;
+        }
+      }
+    }
+    return ret;
+  }
+
   /*
    * "Internal" helper methods
    * ____________________________________________________________________________________________________________________
@@ -656,38 +714,14 @@ public class SolrUtils {
 
   public static SolrInputDocument getDescriptiveMetadataFields(Binary binary, String metadataType,
     String metadataVersion) throws GenericException {
-    SolrInputDocument doc;
-
     Map<String, String> parameters = new HashMap<>();
     parameters.put("prefix", RodaConstants.INDEX_OTHER_DESCRIPTIVE_DATA_PREFIX);
-    Reader transformationResult = RodaUtils.applyMetadataStylesheet(binary, RodaConstants.CORE_CROSSWALKS_INGEST,
-      metadataType, metadataVersion, parameters);
-
-    try {
-      XMLLoader loader = new XMLLoader();
-      XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(transformationResult);
-
-      boolean parsing = true;
-      doc = null;
-      while (parsing) {
-        int event = parser.next();
-
-        if (event == XMLStreamConstants.END_DOCUMENT) {
-          parser.close();
-          parsing = false;
-        } else if (event == XMLStreamConstants.START_ELEMENT) {
-          String currTag = parser.getLocalName();
-          if ("doc".equals(currTag)) {
-            doc = loader.readDoc(parser);
-          }
-        }
-      }
 
-    } catch (XMLStreamException | FactoryConfigurationError e) {
-      throw new GenericException("Could not process descriptive metadata binary " + binary.getStoragePath(), e);
-    } finally {
-      IOUtils.closeQuietly(transformationResult);
-    }
+    // the crosswalk result is directly converted into a document
+    SolrInputDocumentHandler handler = new SolrInputDocumentHandler();
+    CrosswalkRegistry.transform(binary, RodaConstants.CORE_CROSSWALKS_INGEST, metadataType, metadataVersion,
+      parameters, new SAXDestination(handler));
+    SolrInputDocument doc = handler.getDocument();
 
     return doc == null ? new SolrInputDocument() : validateDescriptiveMetadataFields(doc);
   }
@@ -1012,6 +1046,21 @@ public class SolrUtils {
     return ret;
   }
 
+  private static List<SortClause> parseSorterForCursor(Sorter sorter) {
+    List<SortClause> ret = parseSorter(sorter);
+    boolean hasUniqueKey = false;
+    for (SortClause sortClause : ret) {
+      if (RodaConstants.INDEX_UUID.equals(sortClause.getItem())) {
+        hasUniqueKey = true;
+        break;
+      }
+    }
+    if (!hasUniqueKey) {
+      ret.add(new SortClause(RodaConstants.INDEX_UUID, ORDER.asc));
+    }
+    return ret;
+  }
+
   /*
    * Roda Facets > Apache Solr Facets
    * ____________________________________________________________________________________________________________________
@@ -1443,22 +1492,26 @@ public class SolrUtils {
       dateCreatedByApplication, hash, storagePath, ancestors, otherProperties);
   }
 
-  public static SolrInputDocument addOtherPropertiesToIndexedFile(String prefix, OtherMetadata otherMetadataBinary,
-    ModelService model, SolrClient index)
+  /**
+   * @return an atomic update of the file document that sets the properties
+   *         parsed from the other metadata binary, to be sent to the file
+   *         collection
+   */
+  public static SolrInputDocument otherPropertiesUpdateToSolrDocument(String prefix,
+    OtherMetadata otherMetadataBinary, ModelService model)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
-    ParserConfigurationException, SAXException, IOException, XPathExpressionException, SolrServerException {
-    SolrDocument solrDocument = index.getById(RodaConstants.INDEX_FILE,
-      IdUtils.getFileId(otherMetadataBinary.getAipId(), otherMetadataBinary.getRepresentationId(),
-        otherMetadataBinary.getFileDirectoryPath(), otherMetadataBinary.getFileId()));
-
+    ParserConfigurationException, SAXException, IOException, XPathExpressionException {
     Binary binary = model.retrieveOtherMetadataBinary(otherMetadataBinary);
     Map<String, List<String>> otherProperties = MetadataFileUtils.parseBinary(binary);
 
+    SolrInputDocument document = new SolrInputDocument();
+    document.addField(RodaConstants.INDEX_UUID, IdUtils.getFileId(otherMetadataBinary.getAipId(),
+      otherMetadataBinary.getRepresentationId(), otherMetadataBinary.getFileDirectoryPath(),
+      otherMetadataBinary.getFileId()));
     for (Map.Entry<String, List<String>> entry : otherProperties.entrySet()) {
-      solrDocument.setField(prefix + entry.getKey(), entry.getValue());
+      document.addField(prefix + entry.getKey(), set(entry.getValue()));
     }
-    return solrDocumentToSolrInputDocument(solrDocument);
-
+    return document;
   }
 
   private static LogEntry solrDocumentToLogEntry(SolrDocument doc, List<String> fieldsToReturn) {
@@ -2373,15 +2426,6 @@ public class SolrUtils {
     return stateUpdateToSolrDocument(aip.getId(), aip.getState());
   }
 
-  public static SolrInputDocument representationStateUpdateToSolrDocument(Representation representation,
-    AIPState state) {
-    return stateUpdateToSolrDocument(IdUtils.getRepresentationId(representation), state);
-  }
-
-  public static SolrInputDocument fileStateUpdateToSolrDocument(File file, AIPState state) {
-    return stateUpdateToSolrDocument(IdUtils.getFileId(file), state);
-  }
-
   public static SolrInputDocument preservationEventStateUpdateToSolrDocument(String preservationEventID,
     String preservationEventAipId, AIPState state) {
     SolrInputDocument document = stateUpdateToSolrDocument(preservationEventID, state);
@@ -2390,7 +2434,7 @@ public class SolrUtils {
 
   }
 
-  private static SolrInputDocument stateUpdateToSolrDocument(String uuid, AIPState state) {
+  public static SolrInputDocument stateUpdateToSolrDocument(String uuid, AIPState state) {
     SolrInputDocument doc = new SolrInputDocument();
     doc.addField(RodaConstants.INDEX_UUID, uuid);
     doc.addField(RodaConstants.STATE, set(state.toString()));
@@ -2409,16 +2453,9 @@ public class SolrUtils {
     return permissionsUpdateToSolrDocument(document, dip.getPermissions());
   }
 
-  public static SolrInputDocument representationPermissionsUpdateToSolrDocument(Representation representation,
-    Permissions permissions) {
-    SolrInputDocument document = new SolrInputDocument();
-    document.addField(RodaConstants.INDEX_UUID, IdUtils.getRepresentationId(representation));
-    return permissionsUpdateToSolrDocument(document, permissions);
-  }
-
-  public static SolrInputDocument filePermissionsUpdateToSolrDocument(File file, Permissions permissions) {
+  public static SolrInputDocument permissionsUpdateToSolrDocument(String uuid, Permissions permissions) {
     SolrInputDocument document = new SolrInputDocument();
-    document.addField(RodaConstants.INDEX_UUID, IdUtils.getFileId(file));
+    document.addField(RodaConstants.INDEX_UUID, uuid);
     return permissionsUpdateToSolrDocument(document, permissions);
   }
 
@@ -2602,34 +2639,11 @@ public class SolrUtils {
       }
     }
 
-    Reader reader = null;
-
-    try {
-      reader = RodaUtils.applyMetadataStylesheet(binary, RodaConstants.CORE_CROSSWALKS_INGEST_OTHER,
-        RodaConstants.PREMIS_METADATA_TYPE, RodaConstants.PREMIS_METADATA_VERSION, stylesheetOpt);
-
-      XMLLoader loader = new XMLLoader();
-      XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(reader);
-
-      boolean parsing = true;
-      doc = null;
-      while (parsing) {
-        int event = parser.next();
-
-        if (event == XMLStreamConstants.END_DOCUMENT) {
-          parser.close();
-          parsing = false;
-        } else if (event == XMLStreamConstants.START_ELEMENT && "doc".equals(parser.getLocalName())) {
-          doc = loader.readDoc(parser);
-        }
-
-      }
-
-    } catch (XMLStreamException | FactoryConfigurationError e) {
-      throw new GenericException("Could not process PREMIS " + binary.getStoragePath(), e);
-    } finally {
-      IOUtils.closeQuietly(reader);
-    }
+    SolrInputDocumentHandler handler = new SolrInputDocumentHandler();
+    CrosswalkRegistry.transform(binary, RodaConstants.CORE_CROSSWALKS_INGEST_OTHER,
+      RodaConstants.PREMIS_METADATA_TYPE, RodaConstants.PREMIS_METADATA_VERSION, stylesheetOpt,
+      new SAXDestination(handler));
+    doc = handler.getDocument();
 
     if (preservationMetadataType == PreservationMetadataType.EVENT && doc != null) {
       try {
@@ -2707,29 +2721,21 @@ public class SolrUtils {
     throws GenericException, RequestNotValidException, AuthorizationDeniedException {
 
     Sorter sorter = null;
-    int offset = 0;
     int pagesize = RodaConstants.DEFAULT_PAGINATION_VALUE;
+    String cursorMark = CursorMarkParams.CURSOR_MARK_START;
     boolean done;
 
     do {
-      Sublist sublist = new Sublist(offset, pagesize);
-      IndexResult<T> find = SolrUtils.find(index, classToRetrieve, filter, sorter, sublist, fieldsToReturn);
-      for (T target : find.getResults()) {
+      Pair<IndexResult<T>, String> find = SolrUtils.findWithCursor(index, classToRetrieve, filter, sorter, pagesize,
+        cursorMark, Facets.NONE, null, false, fieldsToReturn);
+      for (T target : find.getFirst().getResults()) {
         indexRunnable.run(target);
       }
-      done = find.getResults().isEmpty();
-      offset += pagesize;
+      done = find.getFirst().getResults().isEmpty() || cursorMark.equals(find.getSecond());
+      cursorMark = find.getSecond();
     } while (!done);
   }
 
-  private static SolrInputDocument solrDocumentToSolrInputDocument(SolrDocument d) {
-    SolrInputDocument doc = new SolrInputDocument();
-    for (String name : d.getFieldNames()) {
-      doc.addField(name, d.getFieldValue(name));
-    }
-    return doc;
-  }
-
   public static <T extends IsIndexed> void delete(SolrClient index, Class<T> classToDelete, List<String> ids)
     throws GenericException {
     try {
@@ -463,6 +463,20 @@ public final class LiteRODAObjectFactory {
     }
   }
 
+  /**
+   * @return the class name (first element) followed by the (decoded) ids of
+   *         the object
+   */
+  public static List<String> getClassNameAndIds(LiteRODAObject liteRODAObject) throws GenericException {
+    List<String> ret = new ArrayList<>();
+    String[] split = liteRODAObject.getInfo().split(SEPARATOR_REGEX);
+    ret.add(split[0]);
+    for (int i = 1; i < split.length; i++) {
+      ret.add(decodeId(split[i]));
+    }
+    return ret;
+  }
+
   public static <T extends IsRODAObject> List<LiteRODAObject> transformIntoLite(ModelService model,
     List<T> modelObjects) {
     return modelObjects.stream().map(o -> model.retrieveLiteFromObject(o)).filter(o -> o.isPresent()).map(o -> o.get())
@@ -7,8 +7,8 @@
  */
 package org.roda.core.model;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.roda.core.data.v2.formats.Format;
 import org.roda.core.data.v2.ip.AIP;
@@ -29,11 +29,13 @@ import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.User;
 
 public abstract class ModelObservable {
+  // observers can be added or removed (e.g. when rebuilding the indexes) while
+  // other threads are notifying them
   private final List<ModelObserver> observers;
 
   public ModelObservable() {
     super();
-    this.observers = new ArrayList<>();
+    this.observers = new CopyOnWriteArrayList<>();
   }
 
   public void addModelObserver(ModelObserver observer) {
@@ -56,6 +58,12 @@ public abstract class ModelObservable {
     }
   }
 
+  public void notifyAipMetadataUpdated(AIP aip) {
+    for (ModelObserver observer : observers) {
+      observer.aipMetadataUpdated(aip);
+    }
+  }
+
   public void notifyAipMoved(AIP aip, String oldParentId, String newParentId) {
     for (ModelObserver observer : observers) {
       observer.aipMoved(aip, oldParentId, newParentId);
@@ -135,6 +143,12 @@ public abstract class ModelObservable {
     }
   }
 
+  public void notifyLogEntriesCreated(List<LogEntry> entries) {
+    for (ModelObserver observer : observers) {
+      observer.logEntriesCreated(entries);
+    }
+  }
+
   public void notifyUserCreated(User user) {
     for (ModelObserver observer : observers) {
       observer.userCreated(user);
@@ -34,6 +34,12 @@ public interface ModelObserver {
 
   public void aipUpdated(AIP aip);
 
+  /**
+   * Only the AIP metadata (e.g. permissions, state, parent, list of
+   * representations) may have changed, not the content of its representations
+   */
+  public void aipMetadataUpdated(AIP aip);
+
   public void aipStateUpdated(AIP aip);
 
   public void aipMoved(AIP aip, String oldParentId, String newParentId);
@@ -61,6 +67,8 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void> logEntryCreated(LogEntry entry);
 
+  public ReturnWithExceptions<Void> logEntriesCreated(List<LogEntry> entries);
+
   public void userCreated(User user);
 
   public void userUpdated(User user);
@@ -9,11 +9,15 @@ package org.roda.core.model;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -437,11 +441,18 @@ public class ModelService extends ModelObservable {
   }
 
   public AIP updateAIP(AIP aip, String updatedBy)
+    throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
+    return updateAIP(aip, updatedBy, true);
+  }
+
+  public AIP updateAIP(AIP aip, String updatedBy, boolean notify)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
     aip.setUpdatedBy(updatedBy);
     aip.setUpdatedOn(new Date());
     updateAIPMetadata(aip);
-    notifyAipUpdated(aip);
+    if (notify) {
+      notifyAipMetadataUpdated(aip);
+    }
     return aip;
   }
 
@@ -1606,27 +1617,15 @@ public class ModelService extends ModelObservable {
     String datePlusExtension = sdf.format(new Date()) + ".log";
     Path logFile = logDirectory.resolve(datePlusExtension);
     synchronized (logFileLock) {
-
-      // verify if file exists and if not, if older files exist (in that case,
-      // move them to storage)
-      if (!FSUtils.exists(logFile)) {
-        findOldLogsAndMoveThemToStorage(logDirectory, logFile);
-        try {
-          Files.createFile(logFile);
-        } catch (FileAlreadyExistsException e) {
-          // do nothing (just caused due to concurrency)
-        } catch (IOException e) {
-          throw new GenericException("Error creating file to write log into", e);
-        }
-      }
+      createLogFileIfNeeded(logDirectory, logFile);
 
       // write to log file
       JsonUtils.appendObjectToFile(logEntry, logFile);
+    }
 
-      // emit event
-      if (notify) {
-        notifyLogEntryCreated(logEntry);
-      }
+    // emit event
+    if (notify) {
+      notifyLogEntryCreated(logEntry);
     }
   }
 
@@ -1635,6 +1634,69 @@ public class ModelService extends ModelObservable {
     addLogEntry(logEntry, logDirectory, true);
   }
 
+  /**
+   * Appends several log entries to the current log file with a single write
+   * (optionally forcing it to disk) and, if asked to, notifies observers of all
+   * of them at once
+   */
+  public void addLogEntries(List<LogEntry> logEntries, Path logDirectory, boolean notify, boolean sync)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    if (logEntries.isEmpty()) {
+      return;
+    }
+
+    StringBuilder lines = new StringBuilder();
+    for (LogEntry logEntry : logEntries) {
+      String json = JsonUtils.getJsonFromObject(logEntry);
+      if (json != null) {
+        lines.append(json).append("\n");
+      } else {
+        LOGGER.error("Log entry {} could not be written to file", logEntry.getId());
+      }
+    }
+    ByteBuffer content = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    String datePlusExtension = sdf.format(new Date()) + ".log";
+    Path logFile = logDirectory.resolve(datePlusExtension);
+    synchronized (logFileLock) {
+      createLogFileIfNeeded(logDirectory, logFile);
+
+      // write to log file
+      try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.APPEND)) {
+        while (content.hasRemaining()) {
+          channel.write(content);
+        }
+        if (sync) {
+          channel.force(false);
+        }
+      } catch (IOException e) {
+        throw new GenericException("Error writing log entries to file", e);
+      }
+    }
+
+    // emit event
+    if (notify) {
+      notifyLogEntriesCreated(logEntries);
+    }
+  }
+
+  private void createLogFileIfNeeded(Path logDirectory, Path logFile)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    // verify if file exists and if not, if older files exist (in that case,
+    // move them to storage)
+    if (!FSUtils.exists(logFile)) {
+      findOldLogsAndMoveThemToStorage(logDirectory, logFile);
+      try {
+        Files.createFile(logFile);
+      } catch (FileAlreadyExistsException e) {
+        // do nothing (just caused due to concurrency)
+      } catch (IOException e) {
+        throw new GenericException("Error creating file to write log into", e);
+      }
+    }
+  }
+
   public synchronized void findOldLogsAndMoveThemToStorage(Path logDirectory, Path currentLogFile)
     throws RequestNotValidException, AuthorizationDeniedException, NotFoundException {
     try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDirectory)) {
@@ -12,7 +12,6 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -365,13 +364,12 @@ public class ResourceParseUtils {
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     Binary binary = storage.getBinary(metadataStoragePath);
 
-    String json;
     AIP aip;
     InputStream inputStream = null;
     try {
       inputStream = binary.getContent().createInputStream();
-      json = IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
-      aip = JsonUtils.getObjectFromJson(json, AIP.class);
+      // parse directly from the stream, avoiding an intermediate string
+      aip = JsonUtils.getObjectFromJson(inputStream, AIP.class);
     } catch (IOException | GenericException e) {
       throw new GenericException("Could not parse AIP metadata of " + aipId + " at " + metadataStoragePath, e);
     } finally {
@@ -395,13 +393,12 @@ public class ResourceParseUtils {
       RodaConstants.STORAGE_DIP_METADATA_FILENAME);
     Binary binary = storage.getBinary(metadataStoragePath);
 
-    String json;
     DIP dip;
     InputStream inputStream = null;
     try {
       inputStream = binary.getContent().createInputStream();
-      json = IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
-      dip = JsonUtils.getObjectFromJson(json, DIP.class);
+      // parse directly from the stream, avoiding an intermediate string
+      dip = JsonUtils.getObjectFromJson(inputStream, DIP.class);
     } catch (IOException | GenericException e) {
       throw new GenericException("Could not parse DIP metadata of " + dipId + " at " + metadataStoragePath, e);
     } finally {
@@ -47,6 +47,13 @@ public interface PluginOrchestrator {
   /** 201607 hsilva: this method is sync */
   public void cleanUnfinishedJobs();
 
+  /**
+   * Executes again the jobs, found by {@link #cleanUnfinishedJobs()}, that were
+   * interrupted by the last stop and can be resumed from their checkpoint (this
+   * method is async)
+   */
+  public void resumeInterruptedJobs();
+
   /** 201607 hsilva: this method is sync */
   public void setJobContextInformation(String jobId, Object object);
 
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps, per plugin class, the (exponentially weighted) average time that the
+ * plugin takes to process one object, measured from the blocks already
+ * processed, and suggests the block size that makes a block take about a
+ * target duration: slow plugins get small blocks (so that all workers get
+ * work) and fast plugins get big blocks (so that per block overhead is
+ * negligible).
+ *
+ * The averages are kept for as long as RODA runs, so later jobs of the same
+ * plugin start with an already adapted block size.
+ */
+public final class AdaptiveBlockSizer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBlockSizer.class);
+
+  // weight of the latest block in the average
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  // plugin class name -> average time to process one object (in millis)
+  private static final Map<String, Double> MILLIS_PER_OBJECT = new ConcurrentHashMap<>();
+
+  /** Private empty constructor */
+  private AdaptiveBlockSizer() {
+    // do nothing
+  }
+
+  /**
+   * Records how long a block of objects took to be processed by the plugin
+   */
+  public static void record(String pluginClassName, int objectsCount, long durationInMillis) {
+    if (objectsCount > 0) {
+      double millisPerObject = Math.max(0, durationInMillis) / (double) objectsCount;
+      MILLIS_PER_OBJECT.merge(pluginClassName, millisPerObject,
+        (average, latest) -> average + SMOOTHING_FACTOR * (latest - average));
+    }
+  }
+
+  /**
+   * @return the block size that makes the plugin take about the target
+   *         duration processing a block, within the given bounds, or the
+   *         default block size if there are no measurements for the plugin yet
+   */
+  public static int getBlockSize(String pluginClassName, int defaultBlockSize, long targetDurationInMillis,
+    int minBlockSize, int maxBlockSize) {
+    int blockSize = defaultBlockSize;
+    Double millisPerObject = MILLIS_PER_OBJECT.get(pluginClassName);
+    if (millisPerObject != null) {
+      blockSize = millisPerObject > 0 ? (int) Math.min(Integer.MAX_VALUE, targetDurationInMillis / millisPerObject)
+        : maxBlockSize;
+    }
+    int ret = Math.max(minBlockSize, Math.min(maxBlockSize, blockSize));
+    LOGGER.trace("Block size for plugin {} is {} ({} millis per object)", pluginClassName, ret, millisPerObject);
+    return ret;
+  }
+
+  /**
+   * Discards all measurements
+   */
+  public static void reset() {
+    MILLIS_PER_OBJECT.clear();
+  }
+
+}
@@ -163,6 +163,11 @@ public class AkkaDistributedPluginOrchestrator extends AkkaDistributedPlugin imp
     // do nothing
   }
 
+  @Override
+  public void resumeInterruptedJobs() {
+    // do nothing
+  }
+
   @Override
   public void setJobContextInformation(String jobId, Object object) {
     // do nothing
@@ -10,11 +10,15 @@ package org.roda.core.plugins.orchestrate;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
 import org.roda.core.RodaCoreFactory;
@@ -29,6 +33,7 @@ import org.roda.core.data.exceptions.JobException;
 import org.roda.core.data.exceptions.JobInErrorException;
 import org.roda.core.data.exceptions.JobIsStoppingException;
 import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
@@ -42,6 +47,8 @@ import org.roda.core.data.v2.index.sort.Sorter;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.data.v2.jobs.Report.PluginState;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.index.utils.SolrUtils;
@@ -85,6 +92,7 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
 
   private final IndexService index;
   private final ModelService model;
+  private final BlockCostEstimator blockCostEstimator;
 
   private ActorSystem jobsSystem;
   private ActorRef jobsManager;
@@ -96,16 +104,20 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
   private List<String> stoppingJobs;
   // List<jobId>
   private List<String> inErrorJobs;
+  // jobs interrupted by the last RODA stop, waiting to be resumed
+  private List<Job> interruptedJobs;
 
   public AkkaEmbeddedPluginOrchestrator() {
     maxNumberOfJobsInParallel = JobsHelper.getMaxNumberOfJobsInParallel();
 
     index = RodaCoreFactory.getIndexService();
     model = RodaCoreFactory.getModelService();
+    blockCostEstimator = new BlockCostEstimator();
 
     runningJobs = new HashMap<>();
     stoppingJobs = new ArrayList<>();
     inErrorJobs = new ArrayList<>();
+    interruptedJobs = new ArrayList<>();
 
     Config akkaConfig = getAkkaConfiguration();
     jobsSystem = ActorSystem.create("JobsSystem", akkaConfig);
@@ -162,9 +174,12 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
-      Plugin<T> innerPlugin;
       Class<T> modelClassToActOn = (Class<T>) ModelUtils.giveRespectiveModelClass(classToActOn);
+      JobCheckpoint checkpoint = JobCheckpoint.get(PluginHelper.getJobId(plugin));
+      if (checkpoint != null) {
+        checkpoint.prepareToResume(index);
+      }
+      String lastUUID = checkpoint != null ? checkpoint.getLastUUID() : null;
 
       jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
 
@@ -173,28 +188,30 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
         .findAll(classToActOn, filter, new Sorter(new SortParameter(RodaConstants.INDEX_UUID, true)), liteFields)
         .iterator();
 
-      List<T1> indexObjects = new ArrayList<>();
-      while (findAllIterator.hasNext()) {
-        if (indexObjects.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn, blockSize, jobActor);
-          jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-            LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects)), jobActor);
-          indexObjects = new ArrayList<>();
+      setBlockSource(plugin, new JobBlockSource(plugin, jobStateInfoActor, jobActor) {
+        @Override
+        protected boolean doSendNextBlock() throws RODAException {
+          while (findAllIterator.hasNext()) {
+            int blockSize = JobsHelper.getBlockSize(plugin);
+            List<T1> indexObjects = new ArrayList<>();
+            while (findAllIterator.hasNext() && indexObjects.size() < blockSize) {
+              T1 indexObject = findAllIterator.next();
+              // objects are sorted by UUID, so the ones up to the last UUID of
+              // the checkpoint were already processed
+              if (lastUUID == null || indexObject.getUUID().compareTo(lastUUID) > 0) {
+                indexObjects.add(indexObject);
+              }
+            }
+
+            if (!indexObjects.isEmpty()
+              && sendIndexBlock(jobStateInfoActor, jobActor, plugin, modelClassToActOn, indexObjects, checkpoint)) {
+              return true;
+            }
+          }
+          return false;
         }
-        indexObjects.add(findAllIterator.next());
-      }
-
-      if (!indexObjects.isEmpty()) {
-        innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn, indexObjects.size(),
-          jobActor);
-        jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-          LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects)), jobActor);
-      }
+      });
 
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
-
-    } catch (JobIsStoppingException | JobInErrorException e) {
-      // do nothing
     } catch (Exception e) {
       LOGGER.error("Error running plugin from index", e);
       JobsHelper.updateJobState(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
@@ -209,34 +226,63 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
-      List<T> objects = JobsHelper.getObjectsFromUUID(model, index, objectClass, uuids);
-      Iterator<T> iter = objects.iterator();
-      Plugin<T> innerPlugin;
-
-      jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
-
-      List<T> block = new ArrayList<>();
-      while (iter.hasNext()) {
-        if (block.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, blockSize, jobActor);
-          jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-            LiteRODAObjectFactory.transformIntoLiteWithCause(model, block)), jobActor);
-          block = new ArrayList<>();
+      JobCheckpoint checkpoint = JobCheckpoint.get(PluginHelper.getJobId(plugin));
+      List<String> uuidsToProcess = uuids;
+      // position (in the list of UUIDs) of each UUID to process
+      List<Integer> positions = new ArrayList<>();
+      if (checkpoint != null) {
+        checkpoint.prepareToResume(index);
+        Set<String> processed = checkpoint.getSuccessfullyProcessed(index, uuids);
+        uuidsToProcess = new ArrayList<>();
+        for (int i = 0; i < uuids.size(); i++) {
+          if (!checkpoint.isProcessed(i) && !processed.contains(uuids.get(i))) {
+            uuidsToProcess.add(uuids.get(i));
+            positions.add(i);
+          }
         }
-        block.add(iter.next());
       }
 
-      if (!block.isEmpty()) {
-        innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(), jobActor);
-        jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-          LiteRODAObjectFactory.transformIntoLiteWithCause(model, block)), jobActor);
+      // objects are retrieved block by block, as blocks are sent to be
+      // processed, instead of all at once
+      JobsHelper.UUIDBlocksIterator<T> blocks = JobsHelper.getObjectsFromUUIDInBlocks(model, index, objectClass,
+        uuidsToProcess, () -> JobsHelper.getBlockSize(plugin));
+      boolean allProcessed = checkpoint != null && checkpoint.isResumed() && uuidsToProcess.isEmpty();
+      if (!allProcessed && !blocks.hasNext()) {
+        throw new NotFoundException("Could not retrieve the " + objectClass.getSimpleName());
       }
 
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
+      jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
+
+      setBlockSource(plugin, new JobBlockSource(plugin, jobStateInfoActor, jobActor) {
+        @Override
+        protected boolean doSendNextBlock() throws RODAException {
+          while (blocks.hasNext()) {
+            List<T> block = blocks.next();
+            if (!blocks.getUnresolved().isEmpty()) {
+              reportUnresolvedObjects(plugin, objectClass, blocks.getUnresolved(), jobStateInfoActor, jobActor);
+            }
+            if (block.isEmpty()) {
+              // none of the objects of the block could be retrieved
+              continue;
+            }
+
+            Plugin<T> innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(),
+              jobActor);
+            if (checkpoint != null) {
+              BitSet blockPositions = new BitSet();
+              for (int i = blocks.getBlockStart(); i < blocks.getBlockEnd(); i++) {
+                blockPositions.set(positions.get(i));
+              }
+              checkpoint.blockSent(innerPlugin, blockPositions);
+            }
+            sendBlock(jobStateInfoActor, jobActor, innerPlugin,
+              LiteRODAObjectFactory.transformIntoLiteWithCause(model, block));
+            return true;
+          }
+          return false;
+        }
+      });
 
-    } catch (JobIsStoppingException | JobInErrorException e) {
-      // do nothing
     } catch (Exception e) {
       LOGGER.error("Error running plugin on RODA Objects ({})", objectClass.getSimpleName(), e);
       JobsHelper.updateJobState(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
@@ -250,39 +296,41 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
       CloseableIterable<OptionalWithCause<LiteRODAObject>> objects = model.listLite(objectClass);
       Iterator<OptionalWithCause<LiteRODAObject>> iter = objects.iterator();
-      Plugin<T> innerPlugin;
 
       jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
 
-      List<LiteOptionalWithCause> block = new ArrayList<>();
-      while (iter.hasNext()) {
-        if (block.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, blockSize, jobActor);
-          jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin, block), jobActor);
-          block = new ArrayList<>();
+      setBlockSource(plugin, new JobBlockSource(plugin, jobStateInfoActor, jobActor) {
+        @Override
+        protected boolean doSendNextBlock() throws RODAException {
+          int blockSize = JobsHelper.getBlockSize(plugin);
+          List<LiteOptionalWithCause> block = new ArrayList<>();
+          while (iter.hasNext() && block.size() < blockSize) {
+            OptionalWithCause<LiteRODAObject> nextObject = iter.next();
+            if (nextObject.isPresent()) {
+              block.add(LiteOptionalWithCause.of(nextObject.get()));
+            } else {
+              LOGGER.error("Cannot process object", nextObject.getCause());
+            }
+          }
+
+          if (block.isEmpty()) {
+            return false;
+          }
+
+          Plugin<T> innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(),
+            jobActor);
+          sendBlock(jobStateInfoActor, jobActor, innerPlugin, block);
+          return true;
         }
 
-        OptionalWithCause<LiteRODAObject> nextObject = iter.next();
-        if (nextObject.isPresent()) {
-          block.add(LiteOptionalWithCause.of(nextObject.get()));
-        } else {
-          LOGGER.error("Cannot process object", nextObject.getCause());
+        @Override
+        public void close() throws IOException {
+          objects.close();
         }
-      }
+      });
 
-      if (!block.isEmpty()) {
-        innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(), jobActor);
-        jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin, block), jobActor);
-      }
-
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
-      IOUtils.closeQuietly(objects);
-
-    } catch (JobIsStoppingException | JobInErrorException e) {
-      // do nothing
     } catch (Exception e) {
       LOGGER.error("Error running plugin on all objects", e);
       JobsHelper.updateJobState(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
@@ -310,6 +358,67 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
     }
   }
 
+  /**
+   * Lets the job actor send the blocks of the job as it is granted credits to
+   * do so (see {@link JobFlowControl}) or sends them all right away if the
+   * blocks of the job are not being controlled
+   */
+  private <T extends IsRODAObject> void setBlockSource(Plugin<T> plugin, JobBlockSource blockSource) {
+    JobFlowControl flowControl = JobFlowControl.get(PluginHelper.getJobId(plugin));
+    if (flowControl != null) {
+      flowControl.setBlockSource(blockSource);
+    } else {
+      boolean sent;
+      do {
+        sent = blockSource.sendNextBlock();
+      } while (sent);
+    }
+  }
+
+  /**
+   * Sends a block to be processed, together with its estimated cost (see
+   * {@link BlockCostEstimator})
+   */
+  private <T extends IsRODAObject> void sendBlock(ActorRef jobStateInfoActor, ActorRef jobActor,
+    Plugin<T> innerPlugin, List<LiteOptionalWithCause> block) {
+    jobStateInfoActor.tell(
+      new Messages.PluginExecuteIsReady<>(innerPlugin, block, blockCostEstimator.estimate(index, block)), jobActor);
+  }
+
+  /**
+   * Sends a block of objects found in the index, registering it in the job
+   * checkpoint (if any) and leaving out the objects that a resumed job already
+   * processed successfully
+   *
+   * @return true if the block was sent; false if all its objects were already
+   *         processed
+   */
+  private <T extends IsRODAObject, T1 extends IsIndexed> boolean sendIndexBlock(ActorRef jobStateInfoActor,
+    ActorRef jobActor, Plugin<T> plugin, Class<T> modelClassToActOn, List<T1> indexObjects, JobCheckpoint checkpoint)
+    throws InvalidParameterException, PluginException, JobIsStoppingException, JobInErrorException {
+    List<T1> objectsToProcess = indexObjects;
+    String blockLastUUID = indexObjects.get(indexObjects.size() - 1).getUUID();
+    if (checkpoint != null && checkpoint.isResumed()) {
+      Set<String> processed = checkpoint.getSuccessfullyProcessed(index,
+        indexObjects.stream().map(IsIndexed::getUUID).collect(Collectors.toList()));
+      objectsToProcess = indexObjects.stream().filter(o -> !processed.contains(o.getUUID()))
+        .collect(Collectors.toList());
+      if (objectsToProcess.isEmpty()) {
+        checkpoint.blockSkipped(blockLastUUID);
+        return false;
+      }
+    }
+
+    Plugin<T> innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn,
+      objectsToProcess.size(), jobActor);
+    if (checkpoint != null) {
+      checkpoint.blockSent(innerPlugin, blockLastUUID);
+    }
+    sendBlock(jobStateInfoActor, jobActor, innerPlugin,
+      LiteRODAObjectFactory.transformIntoLiteWithCause(model, objectsToProcess));
+    return true;
+  }
+
   private <T extends IsRODAObject> void initJobPluginInfo(Plugin<T> plugin, int objectsCount, ActorRef jobActor)
     throws InvalidParameterException, PluginException, JobIsStoppingException, JobInErrorException {
 
@@ -377,6 +486,30 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
 
   }
 
+  /**
+   * Writes a failed job report for each object of the job that could not be
+   * retrieved (and thus will not be processed) and counts them as processed
+   * with failure
+   */
+  private <T extends IsRODAObject> void reportUnresolvedObjects(Plugin<T> plugin, Class<T> objectClass,
+    Map<String, String> unresolved, ActorRef jobStateInfoActor, ActorRef jobActor)
+    throws InvalidParameterException, PluginException, JobIsStoppingException, JobInErrorException {
+    Plugin<T> innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, unresolved.size(),
+      jobActor);
+    for (Entry<String, String> entry : unresolved.entrySet()) {
+      Report reportItem = PluginHelper.initPluginReportItem(innerPlugin, entry.getKey(), objectClass);
+      reportItem.setPluginState(PluginState.FAILURE).setPluginDetails(entry.getValue());
+      PluginHelper.createJobReport(innerPlugin, model, reportItem);
+    }
+
+    JobPluginInfo jobPluginInfo = innerPlugin.getJobPluginInfo(JobPluginInfo.class);
+    if (jobPluginInfo != null) {
+      jobPluginInfo.setSourceObjectsProcessedWithFailure(unresolved.size());
+      jobPluginInfo.finalizeInfo();
+      jobStateInfoActor.tell(new Messages.JobInfoUpdated(innerPlugin, jobPluginInfo), jobActor);
+    }
+  }
+
   private <T extends IsRODAObject> void initJobPluginInfo(Plugin<T> innerPlugin, ActorRef jobActor,
     ActorRef jobStateInfoActor, JobPluginInfo jobPluginInfo, int objectsCount) {
     jobPluginInfo.setSourceObjectsCount(objectsCount);
@@ -421,6 +554,8 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
 
   @Override
   public void cleanUnfinishedJobs() {
+    // job reports not yet written when RODA stopped must be written first
+    JobReportAccumulator.recoverJournals(model);
     cleanUnfinishedJobs(findUnfinishedJobs());
   }
 
@@ -438,12 +573,20 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       try {
         Job jobToBeCleaned = model.retrieveJob(job.getId());
 
-        // cleanup job related objects (aips, sips, etc.)
-        JobsHelper.doJobObjectsCleanup(job, model, index);
+        if (JobsHelper.isResumable(jobToBeCleaned) && JobCheckpoint.exists(jobToBeCleaned.getId())) {
+          // resumed from its checkpoint once plugins are loaded
+          LOGGER.info("Job '{}' ({}) was interrupted and will be resumed", jobToBeCleaned.getName(),
+            jobToBeCleaned.getId());
+          interruptedJobs.add(jobToBeCleaned);
+        } else {
+          // cleanup job related objects (aips, sips, etc.)
+          JobsHelper.doJobObjectsCleanup(job, model, index);
 
-        // only after deleting all the objects, delete the job
-        JobsHelper.updateJobInTheStateStartedOrCreated(jobToBeCleaned);
-        model.createOrUpdateJob(jobToBeCleaned);
+          // only after deleting all the objects, delete the job
+          JobsHelper.updateJobInTheStateStartedOrCreated(jobToBeCleaned);
+          model.createOrUpdateJob(jobToBeCleaned);
+          JobCheckpoint.unregister(jobToBeCleaned.getId(), true);
+        }
       } catch (NotFoundException e) {
         jobsToBeDeletedFromIndex.add(job.getId());
       } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
@@ -455,6 +598,18 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
     }
   }
 
+  @Override
+  public void resumeInterruptedJobs() {
+    for (Job job : interruptedJobs) {
+      try {
+        executeJob(job, true);
+      } catch (JobAlreadyStartedException e) {
+        LOGGER.debug("Interrupted job '{}' ({}) was already resumed", job.getName(), job.getId());
+      }
+    }
+    interruptedJobs.clear();
+  }
+
   @Override
   public <T extends IsRODAObject> void updateJob(Plugin<T> plugin, JobPartialUpdate partialUpdate) {
     String jobId = PluginHelper.getJobId(plugin);
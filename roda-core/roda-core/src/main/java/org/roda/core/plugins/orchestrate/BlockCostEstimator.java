@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FieldStatsInfo;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrException;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.LiteOptionalWithCause;
+import org.roda.core.data.v2.LiteRODAObject;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.IndexedRepresentation;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.model.LiteRODAObjectFactory;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates how costly it is to process a block of objects, using the number
+ * and size of the files (found in the index) of the AIPs, representations or
+ * files in the block, so that the most costly blocks are the first to be
+ * handed to the workers.
+ *
+ * The cost is the number of objects, plus the number of files, plus one unit
+ * per configurable amount of bytes. Objects without files (or an index error)
+ * cost one unit each.
+ */
+public class BlockCostEstimator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BlockCostEstimator.class);
+
+  public static final int DEFAULT_BYTES_PER_COST_UNIT = 10485760;
+
+  private final int bytesPerCostUnit;
+  private final boolean enabled;
+
+  public BlockCostEstimator() {
+    this(getConfiguredInt(DEFAULT_BYTES_PER_COST_UNIT, "bytes_per_unit"), getConfiguredEnabled());
+  }
+
+  public BlockCostEstimator(int bytesPerCostUnit, boolean enabled) {
+    this.bytesPerCostUnit = Math.max(1, bytesPerCostUnit);
+    this.enabled = enabled;
+  }
+
+  private static int getConfiguredInt(int defaultValue, String key) {
+    int value = defaultValue;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      value = RodaCoreFactory.getRodaConfigurationAsInt(defaultValue, "core", "orchestrator", "block_cost", key);
+    }
+    return value;
+  }
+
+  private static boolean getConfiguredEnabled() {
+    boolean value = true;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      value = RodaCoreFactory.getRodaConfiguration().getBoolean("core.orchestrator.block_cost.enabled", true);
+    }
+    return value;
+  }
+
+  /**
+   * @return the estimated cost of the block (at least the number of objects in
+   *         it)
+   */
+  public long estimate(IndexService index, List<LiteOptionalWithCause> block) {
+    long cost = block.size();
+    if (!enabled || block.isEmpty()) {
+      return cost;
+    }
+
+    List<String> aipIds = new ArrayList<>();
+    List<String> representationUUIDs = new ArrayList<>();
+    List<String> fileUUIDs = new ArrayList<>();
+    try {
+      for (LiteOptionalWithCause lite : block) {
+        if (lite.getLite().isPresent()) {
+          addIds(lite.getLite().get(), aipIds, representationUUIDs, fileUUIDs);
+        }
+      }
+
+      cost += estimate(index, RodaConstants.FILE_AIP_ID, aipIds);
+      cost += estimate(index, RodaConstants.FILE_REPRESENTATION_UUID, representationUUIDs);
+      cost += estimate(index, RodaConstants.INDEX_UUID, fileUUIDs);
+    } catch (GenericException | RequestNotValidException | SolrServerException | SolrException | IOException e) {
+      LOGGER.debug("Could not estimate the cost of a block of {} objects", block.size(), e);
+    }
+
+    return cost;
+  }
+
+  private static void addIds(LiteRODAObject lite, List<String> aipIds, List<String> representationUUIDs,
+    List<String> fileUUIDs) throws GenericException {
+    List<String> classNameAndIds = LiteRODAObjectFactory.getClassNameAndIds(lite);
+    String className = classNameAndIds.get(0);
+    List<String> ids = classNameAndIds.subList(1, classNameAndIds.size());
+
+    if ((AIP.class.getName().equals(className) || IndexedAIP.class.getName().equals(className)) && !ids.isEmpty()) {
+      aipIds.add(ids.get(0));
+    } else if ((Representation.class.getName().equals(className)
+      || IndexedRepresentation.class.getName().equals(className)) && ids.size() == 2) {
+      representationUUIDs.add(IdUtils.getRepresentationId(ids.get(0), ids.get(1)));
+    } else if ((File.class.getName().equals(className) || IndexedFile.class.getName().equals(className))
+      && ids.size() >= 3) {
+      fileUUIDs.add(IdUtils.getFileId(ids.get(0), ids.get(1), ids.subList(2, ids.size() - 1), ids.get(ids.size() - 1)));
+    }
+  }
+
+  private long estimate(IndexService index, String field, List<String> values)
+    throws GenericException, RequestNotValidException, SolrServerException, IOException {
+    long cost = 0;
+    if (!values.isEmpty()) {
+      SolrQuery query = new SolrQuery();
+      query.setQuery(SolrUtils.parseFilter(new Filter(new OneOfManyFilterParameter(field, values))));
+      query.setRows(0);
+      query.setGetFieldStatistics(RodaConstants.FILE_SIZE);
+
+      QueryResponse response = index.getSolrClient().query(SolrUtils.getIndexName(IndexedFile.class).get(0), query);
+      cost += response.getResults().getNumFound();
+
+      FieldStatsInfo sizeStats = response.getFieldStatsInfo() != null
+        ? response.getFieldStatsInfo().get(RodaConstants.FILE_SIZE) : null;
+      if (sizeStats != null && sizeStats.getSum() instanceof Number) {
+        cost += (long) (((Number) sizeStats.getSum()).doubleValue() / bytesPerCostUnit);
+      }
+    }
+    return cost;
+  }
+
+}
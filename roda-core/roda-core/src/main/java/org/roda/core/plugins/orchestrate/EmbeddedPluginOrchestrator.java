@@ -158,6 +158,11 @@ public class EmbeddedPluginOrchestrator implements PluginOrchestrator {
     // do nothing
   }
 
+  @Override
+  public void resumeInterruptedJobs() {
+    // do nothing
+  }
+
   @Override
   public <T extends IsRODAObject> void updateJob(Plugin<T> plugin, JobPartialUpdate partialUpdate) {
     // do nothing
@@ -26,6 +26,7 @@ import org.roda.core.data.v2.jobs.Report.PluginState;
 import org.roda.core.index.IndexService;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.plugins.PluginHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -225,7 +226,7 @@ public class IngestJobPluginInfo extends JobPluginInfo {
 
         try {
           Job job = model.retrieveJob(report.getJobId());
-          model.createOrUpdateJobReport(report, job);
+          PluginHelper.createOrUpdateJobReport(model, report, job);
         } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
           LOGGER.error("Error updating last job report indicating other AIP failure.");
         }
@@ -0,0 +1,84 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.data.exceptions.JobInErrorException;
+import org.roda.core.data.exceptions.JobIsStoppingException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.jobs.Job.JOB_STATE;
+import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.orchestrate.akka.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.actor.ActorRef;
+
+/**
+ * Reads the objects of a running job (from index/storage) and sends them to be
+ * processed one block at a time, when the job actor is granted a credit to do
+ * so (see {@link JobFlowControl}). Once there are no more objects, tells the
+ * job state actor that all blocks were sent.
+ */
+abstract class JobBlockSource implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobBlockSource.class);
+
+  private final Plugin<? extends IsRODAObject> plugin;
+  private final ActorRef jobStateInfoActor;
+  private final ActorRef jobActor;
+  private boolean ended = false;
+
+  protected JobBlockSource(Plugin<? extends IsRODAObject> plugin, ActorRef jobStateInfoActor, ActorRef jobActor) {
+    this.plugin = plugin;
+    this.jobStateInfoActor = jobStateInfoActor;
+    this.jobActor = jobActor;
+  }
+
+  /**
+   * Sends the next block of objects to be processed
+   *
+   * @return true if a block was sent; false if there are no more blocks (or if
+   *         the job was stopped or failed while reading them)
+   */
+  public boolean sendNextBlock() {
+    if (ended) {
+      return false;
+    }
+
+    try {
+      if (doSendNextBlock()) {
+        return true;
+      }
+      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
+    } catch (JobIsStoppingException | JobInErrorException e) {
+      // do nothing
+    } catch (RODAException | RuntimeException e) {
+      LOGGER.error("Error sending the objects of {} to be processed", plugin.getName(), e);
+      JobsHelper.updateJobState(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
+    }
+
+    ended = true;
+    IOUtils.closeQuietly(this);
+    return false;
+  }
+
+  /**
+   * @return true if a block was sent; false if there are no more objects
+   */
+  protected abstract boolean doSendNextBlock() throws RODAException;
+
+  @Override
+  public void close() throws IOException {
+    // do nothing
+  }
+
+}
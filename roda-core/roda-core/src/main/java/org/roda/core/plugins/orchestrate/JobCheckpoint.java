@@ -0,0 +1,314 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.jobs.IndexedReport;
+import org.roda.core.data.v2.jobs.Report.PluginState;
+import org.roda.core.index.IndexService;
+import org.roda.core.plugins.Plugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Keeps the progress of a running job (i.e. which of its objects were already
+ * processed), which is periodically written to a checkpoint file (see
+ * {@link #save()}), so that a job interrupted by a RODA restart can be resumed
+ * instead of being executed again from the beginning.
+ *
+ * For jobs over objects found in the index (which are sent ordered by UUID)
+ * the progress is the UUID of the last object before which all objects were
+ * processed; for jobs over a list of UUIDs it is the set of positions (in the
+ * list) that were processed. Blocks that failed as a whole are never
+ * considered as processed.
+ */
+public class JobCheckpoint {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobCheckpoint.class);
+
+  private static final String CHECKPOINT_FOLDER = "job-checkpoints";
+  private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+  private static final String LAST_UUID_PROPERTY = "lastUUID";
+  private static final String PROCESSED_POSITIONS_PROPERTY = "processedPositions";
+  private static final int REPORTS_QUERY_SIZE = 1000;
+
+  private static final Map<String, JobCheckpoint> CHECKPOINTS = new ConcurrentHashMap<>();
+
+  private final String jobId;
+  private final Path checkpointFile;
+  private final boolean resumed;
+  private String lastUUID = null;
+  private BitSet processedPositions = new BitSet();
+  private boolean dirty = false;
+
+  // blocks sent and not yet processed
+  private long blocksSent = 0;
+  private final Map<Plugin<?>, Block> blocksInFlight = new IdentityHashMap<>();
+  // blocks (of objects from the index) after the last UUID, by order
+  private final TreeMap<Long, Block> blocksAfterLastUUID = new TreeMap<>();
+
+  private JobCheckpoint(String jobId, Path checkpointFile, boolean resumed) {
+    this.jobId = jobId;
+    this.checkpointFile = checkpointFile;
+    this.resumed = resumed;
+  }
+
+  /**
+   * Creates the checkpoint of the job (loading the checkpoint file left by a
+   * previous execution of the job, if any), to be used by all blocks of the job
+   * sent in this node until {@link #unregister(String, boolean)} is invoked
+   */
+  public static JobCheckpoint register(String jobId) {
+    Path checkpointFile = getCheckpointFile(jobId);
+    JobCheckpoint checkpoint = new JobCheckpoint(jobId, checkpointFile, Files.exists(checkpointFile));
+    if (checkpoint.resumed) {
+      checkpoint.load();
+    } else {
+      // the job can be resumed from the very beginning
+      checkpoint.dirty = true;
+      checkpoint.save();
+    }
+    CHECKPOINTS.put(jobId, checkpoint);
+    return checkpoint;
+  }
+
+  /**
+   * @return the checkpoint of the job or null if the job is not checkpointed
+   *         (in this node)
+   */
+  public static JobCheckpoint get(String jobId) {
+    return jobId != null ? CHECKPOINTS.get(jobId) : null;
+  }
+
+  /**
+   * Removes the checkpoint of the job, deleting its checkpoint file (e.g. the
+   * job ended) or writing it a last time (e.g. RODA is stopping)
+   */
+  public static void unregister(String jobId, boolean delete) {
+    JobCheckpoint checkpoint = CHECKPOINTS.remove(jobId);
+    if (delete) {
+      try {
+        Files.deleteIfExists(getCheckpointFile(jobId));
+      } catch (IOException e) {
+        LOGGER.error("Error deleting checkpoint of job {}", jobId, e);
+      }
+    } else if (checkpoint != null) {
+      checkpoint.save();
+    }
+  }
+
+  /**
+   * @return true if there is a checkpoint file of the job (i.e. it was
+   *         interrupted and can be resumed)
+   */
+  public static boolean exists(String jobId) {
+    return Files.exists(getCheckpointFile(jobId));
+  }
+
+  private static Path getCheckpointFile(String jobId) {
+    return RodaCoreFactory.getDataPath().resolve(CHECKPOINT_FOLDER).resolve(jobId + CHECKPOINT_EXTENSION);
+  }
+
+  /**
+   * @return true if the job is being resumed from a previous checkpoint
+   */
+  public boolean isResumed() {
+    return resumed;
+  }
+
+  /**
+   * @return the UUID of the last object (of the index) before which all
+   *         objects were processed or null if none
+   */
+  public synchronized String getLastUUID() {
+    return lastUUID;
+  }
+
+  /**
+   * @return true if the object in the given position (of the list of UUIDs)
+   *         was processed
+   */
+  public synchronized boolean isProcessed(int position) {
+    return processedPositions.get(position);
+  }
+
+  /**
+   * Registers a block of objects (of the index, ending in the given UUID) that
+   * was sent to be processed by the given plugin instance
+   */
+  public synchronized void blockSent(Plugin<?> plugin, String blockLastUUID) {
+    Block block = new Block(blocksSent++, blockLastUUID, null);
+    blocksAfterLastUUID.put(block.order, block);
+    blocksInFlight.put(plugin, block);
+  }
+
+  /**
+   * Registers a block of objects (in the given positions of the list of UUIDs)
+   * that was sent to be processed by the given plugin instance
+   */
+  public synchronized void blockSent(Plugin<?> plugin, BitSet positions) {
+    blocksInFlight.put(plugin, new Block(blocksSent++, null, positions));
+  }
+
+  /**
+   * Registers a block of objects (of the index, ending in the given UUID) that
+   * did not need to be sent as all its objects were already processed
+   */
+  public synchronized void blockSkipped(String blockLastUUID) {
+    Block block = new Block(blocksSent++, blockLastUUID, null);
+    blocksAfterLastUUID.put(block.order, block);
+    blockProcessed(block);
+  }
+
+  /**
+   * Registers that the block sent to the given plugin instance was processed
+   */
+  public synchronized void blockDone(Plugin<?> plugin, boolean withError) {
+    Block block = blocksInFlight.remove(plugin);
+    if (block != null && !withError) {
+      blockProcessed(block);
+    }
+  }
+
+  private void blockProcessed(Block block) {
+    block.processed = true;
+    if (block.positions != null) {
+      processedPositions.or(block.positions);
+      dirty = true;
+    }
+    // the last UUID only moves past blocks whose predecessors were processed
+    while (!blocksAfterLastUUID.isEmpty() && blocksAfterLastUUID.firstEntry().getValue().processed) {
+      lastUUID = blocksAfterLastUUID.pollFirstEntry().getValue().lastUUID;
+      dirty = true;
+    }
+  }
+
+  /**
+   * Writes the checkpoint file (if there was progress since it was last
+   * written). Job reports must be written before, as they are used to skip
+   * objects already processed.
+   */
+  public synchronized void save() {
+    if (!dirty) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    if (lastUUID != null) {
+      properties.setProperty(LAST_UUID_PROPERTY, lastUUID);
+    }
+    properties.setProperty(PROCESSED_POSITIONS_PROPERTY,
+      Base64.getEncoder().encodeToString(processedPositions.toByteArray()));
+
+    try {
+      Files.createDirectories(checkpointFile.getParent());
+      Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+      try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+        properties.store(outputStream, "Checkpoint of job " + jobId);
+      }
+      Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      dirty = false;
+    } catch (IOException e) {
+      LOGGER.error("Error writing checkpoint of job {}", jobId, e);
+    }
+  }
+
+  private void load() {
+    Properties properties = new Properties();
+    try (InputStream inputStream = Files.newInputStream(checkpointFile)) {
+      properties.load(inputStream);
+      lastUUID = properties.getProperty(LAST_UUID_PROPERTY);
+      String positions = properties.getProperty(PROCESSED_POSITIONS_PROPERTY);
+      if (positions != null) {
+        processedPositions = BitSet.valueOf(Base64.getDecoder().decode(positions));
+      }
+      LOGGER.info("Resuming job {} from checkpoint (last UUID: {}, processed positions: {})", jobId, lastUUID,
+        processedPositions.cardinality());
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.error("Error reading checkpoint of job {}, it will be executed from the beginning", jobId, e);
+    }
+  }
+
+  /**
+   * @return the UUIDs (of the given ones) of the objects with a successful job
+   *         report of the job (i.e. already processed by a previous execution
+   *         of the job)
+   */
+  public Set<String> getSuccessfullyProcessed(IndexService index, Collection<String> uuids) {
+    Set<String> ret = new HashSet<>();
+    if (!resumed || uuids.isEmpty()) {
+      return ret;
+    }
+
+    List<String> fieldsToReturn = new ArrayList<>();
+    fieldsToReturn.add(RodaConstants.INDEX_UUID);
+    fieldsToReturn.add(RodaConstants.JOB_REPORT_SOURCE_OBJECT_ID);
+    for (List<String> partition : Iterables.partition(uuids, REPORTS_QUERY_SIZE)) {
+      Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.JOB_REPORT_JOB_ID, jobId));
+      filter.add(new SimpleFilterParameter(RodaConstants.JOB_REPORT_PLUGIN_STATE, PluginState.SUCCESS.toString()));
+      filter.add(new OneOfManyFilterParameter(RodaConstants.JOB_REPORT_SOURCE_OBJECT_ID, partition));
+      for (IndexedReport report : index.findAll(IndexedReport.class, filter, fieldsToReturn)) {
+        ret.add(report.getSourceObjectId());
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Makes sure the job reports written by the previous execution of the job
+   * can be found in the index
+   */
+  public void prepareToResume(IndexService index) {
+    if (resumed) {
+      try {
+        index.commit(IndexedReport.class);
+      } catch (GenericException e) {
+        LOGGER.error("Error committing job reports of job {}", jobId, e);
+      }
+    }
+  }
+
+  private static class Block {
+    private final long order;
+    private final String lastUUID;
+    private final BitSet positions;
+    private boolean processed = false;
+
+    public Block(long order, String lastUUID, BitSet positions) {
+      this.order = order;
+      this.lastUUID = lastUUID;
+      this.positions = positions;
+    }
+  }
+
+}
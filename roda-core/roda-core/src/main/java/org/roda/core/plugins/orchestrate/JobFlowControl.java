@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Credit based flow control between the one that sends the blocks of objects
+ * of a running job to be processed (i.e. the job actor) and the one that hands
+ * them to the workers (i.e. the job state actor), so that at most a
+ * configurable number of blocks of a job are waiting or being processed at any
+ * time.
+ *
+ * The job state actor grants as many credits as the max number of blocks in
+ * flight when the job starts and one more credit each time a block has been
+ * processed (or discarded). The job actor sends one block (read from the
+ * {@link JobBlockSource} of the job) per credit it is granted and goes on
+ * processing other messages, so no thread ever waits for a credit, reading the
+ * objects from index/storage goes as fast as the workers process them and the
+ * workers mailbox does not grow without limit. While a job is paused, its state
+ * actor holds the credits of the blocks done, so no more blocks are sent until
+ * it is resumed.
+ *
+ * The flow control of a job is only used by the job actor (and by the
+ * orchestrator methods it invokes), so it is not thread safe.
+ */
+public class JobFlowControl {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobFlowControl.class);
+
+  private static final Map<String, JobFlowControl> FLOW_CONTROLS = new ConcurrentHashMap<>();
+
+  private final String jobId;
+  private JobBlockSource blockSource = null;
+  private int credits = 0;
+  private int inFlightBlocks = 0;
+
+  // metrics (shared by all jobs)
+  private final Counter inFlightBlocksCounter;
+
+  private JobFlowControl(String jobId) {
+    this.jobId = jobId;
+
+    MetricRegistry metrics = RodaCoreFactory.getMetrics();
+    if (metrics != null) {
+      inFlightBlocksCounter = metrics.counter(MetricRegistry.name(JobFlowControl.class, "inFlightBlocks"));
+    } else {
+      inFlightBlocksCounter = new Counter();
+    }
+  }
+
+  /**
+   * Creates the flow control of the job, to be used by all blocks sent in this
+   * node until {@link #unregister(String)} is invoked
+   */
+  public static JobFlowControl register(String jobId) {
+    JobFlowControl flowControl = new JobFlowControl(jobId);
+    JobFlowControl previous = FLOW_CONTROLS.put(jobId, flowControl);
+    if (previous != null) {
+      previous.close();
+    }
+    return flowControl;
+  }
+
+  /**
+   * @return the flow control of the job or null if the blocks of the job are
+   *         not being controlled (in this node)
+   */
+  public static JobFlowControl get(String jobId) {
+    return jobId != null ? FLOW_CONTROLS.get(jobId) : null;
+  }
+
+  /**
+   * Removes the flow control of the job, closing its block source (no more
+   * blocks are sent)
+   */
+  public static void unregister(String jobId) {
+    JobFlowControl flowControl = FLOW_CONTROLS.remove(jobId);
+    if (flowControl != null) {
+      flowControl.close();
+    }
+  }
+
+  /**
+   * Sets where the blocks of the job come from, which are sent as credits are
+   * granted
+   */
+  void setBlockSource(JobBlockSource blockSource) {
+    this.blockSource = blockSource;
+    sendBlocks();
+  }
+
+  /**
+   * Takes the credits granted by the job state actor (each one of them given
+   * back by a block that was processed or discarded, except the ones granted
+   * when the job starts) and sends as many blocks as the available credits
+   */
+  public void grant(int newCredits) {
+    int returned = Math.min(newCredits, inFlightBlocks);
+    inFlightBlocks -= returned;
+    inFlightBlocksCounter.dec(returned);
+    credits += newCredits;
+    sendBlocks();
+  }
+
+  private void sendBlocks() {
+    while (credits > 0 && blockSource != null) {
+      if (blockSource.sendNextBlock()) {
+        credits--;
+        inFlightBlocks++;
+        inFlightBlocksCounter.inc();
+      } else {
+        // all blocks were sent (the block source closed itself)
+        blockSource = null;
+      }
+    }
+    if (blockSource != null) {
+      LOGGER.trace("Job {} is waiting for a credit ({} blocks in flight)", jobId, inFlightBlocks);
+    }
+  }
+
+  /**
+   * @return number of blocks sent and not yet processed
+   */
+  public int getInFlightBlocks() {
+    return inFlightBlocks;
+  }
+
+  private void close() {
+    if (blockSource != null) {
+      IOUtils.closeQuietly(blockSource);
+      blockSource = null;
+    }
+    inFlightBlocksCounter.dec(inFlightBlocks);
+    inFlightBlocks = 0;
+  }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.List;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+
+/**
+ * Priority of a job when waiting to be executed (and when competing for the
+ * workers), from the highest to the lowest.
+ */
+public enum JobPriority {
+  /** e.g. ingest */
+  HIGH,
+  /** e.g. maintenance */
+  MEDIUM,
+  /** e.g. reindex */
+  LOW;
+
+  private static final String REINDEX_PLUGINS_PACKAGE = "org.roda.core.plugins.plugins.reindex.";
+
+  /**
+   * @return the priority of the job, which is the one configured for its
+   *         plugin (in core.orchestrator.priority.high or
+   *         core.orchestrator.priority.low) or, if none, HIGH for ingest, LOW
+   *         for reindex and MEDIUM for everything else
+   */
+  public static JobPriority of(Job job) {
+    String pluginClassName = job.getPlugin();
+    if (isConfigured(pluginClassName, "high")) {
+      return HIGH;
+    } else if (isConfigured(pluginClassName, "low")) {
+      return LOW;
+    } else if (PluginType.INGEST == job.getPluginType()) {
+      return HIGH;
+    } else if (pluginClassName != null && pluginClassName.startsWith(REINDEX_PLUGINS_PACKAGE)) {
+      return LOW;
+    } else {
+      return MEDIUM;
+    }
+  }
+
+  private static boolean isConfigured(String pluginClassName, String priority) {
+    if (pluginClassName == null || RodaCoreFactory.getRodaConfiguration() == null) {
+      return false;
+    }
+    List<String> pluginClassNames = RodaCoreFactory.getRodaConfigurationAsList("core", "orchestrator", "priority",
+      priority);
+    return pluginClassNames.contains(pluginClassName);
+  }
+
+  /**
+   * @return true if this priority is higher than the other one
+   */
+  public boolean isHigherThan(JobPriority other) {
+    return compareTo(other) < 0;
+  }
+
+}
@@ -0,0 +1,306 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps, in memory, the job reports of a running job that were changed since
+ * they were last written, so that the several steps done over the same object
+ * result in a single write to storage & index (done when {@link #flush()} is
+ * invoked, periodically and when the job ends) instead of one full report
+ * rewrite per step.
+ *
+ * Every change is also appended to a journal file (one json report per line)
+ * which, after each flush, is rewritten with the reports that are still
+ * pending (e.g. because writing them failed) only; if RODA stops before a
+ * flush, the journals found during startup are replayed via
+ * {@link #recoverJournals(ModelService)}.
+ *
+ * Reports are written to storage & index without holding the lock that
+ * {@link #update(Report, Job)} needs, so the job is not held back by a flush.
+ */
+public class JobReportAccumulator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobReportAccumulator.class);
+
+  private static final String JOURNAL_FOLDER = "job-reports-journal";
+  private static final String JOURNAL_EXTENSION = ".journal";
+  private static final String TEMP_JOURNAL_EXTENSION = ".tmp";
+
+  private static final Map<String, JobReportAccumulator> ACCUMULATORS = new ConcurrentHashMap<>();
+
+  private final String jobId;
+  private final ModelService model;
+  private final Path journalFile;
+  private BufferedWriter journal;
+  // report id -> latest version of the report (as json)
+  private final Map<String, String> dirtyReports = new LinkedHashMap<>();
+  private volatile Job cachedJob = null;
+  // only one flush at a time
+  private final Object flushLock = new Object();
+
+  private JobReportAccumulator(String jobId, ModelService model, Path journalFile) {
+    this.jobId = jobId;
+    this.model = model;
+    this.journalFile = journalFile;
+  }
+
+  /**
+   * Creates the accumulator of the job, to be used by all job report updates
+   * done in this node until {@link #unregister(String)} is invoked
+   */
+  public static JobReportAccumulator register(String jobId, ModelService model) {
+    JobReportAccumulator accumulator = new JobReportAccumulator(jobId, model,
+      getJournalDirectory().resolve(jobId + JOURNAL_EXTENSION));
+    try {
+      accumulator.openJournal(StandardOpenOption.APPEND);
+      ACCUMULATORS.put(jobId, accumulator);
+    } catch (IOException e) {
+      // without journal, job reports are written directly
+      LOGGER.error("Unable to create job reports journal for job {}. Job reports will not be accumulated", jobId, e);
+      accumulator = null;
+    }
+    return accumulator;
+  }
+
+  /**
+   * @return the accumulator of the job or null if job reports of the job are
+   *         not being accumulated (in this node)
+   */
+  public static JobReportAccumulator get(String jobId) {
+    return jobId != null ? ACCUMULATORS.get(jobId) : null;
+  }
+
+  /**
+   * Flushes all pending job reports of the job and removes its accumulator
+   * (and journal)
+   */
+  public static void unregister(String jobId) {
+    JobReportAccumulator accumulator = ACCUMULATORS.remove(jobId);
+    if (accumulator != null) {
+      accumulator.close();
+    }
+  }
+
+  private static Path getJournalDirectory() {
+    return RodaCoreFactory.getDataPath().resolve(JOURNAL_FOLDER);
+  }
+
+  private void openJournal(StandardOpenOption option) throws IOException {
+    Files.createDirectories(journalFile.getParent());
+    journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, option);
+  }
+
+  /**
+   * @return a copy of the pending version of the report or null if there are
+   *         no pending changes to it (i.e. storage is up to date)
+   */
+  public synchronized Report retrieve(String reportId) {
+    Report ret = null;
+    String json = dirtyReports.get(reportId);
+    if (json != null) {
+      try {
+        ret = JsonUtils.getObjectFromJson(json, Report.class);
+      } catch (GenericException e) {
+        LOGGER.error("Error parsing accumulated job report {}", reportId, e);
+      }
+    }
+    return ret;
+  }
+
+  public synchronized void update(Report report, Job job) throws GenericException {
+    String json = JsonUtils.getJsonFromObject(report);
+    if (json == null) {
+      throw new GenericException("Unable to serialize job report " + report.getId());
+    }
+
+    try {
+      journal.write(json);
+      journal.newLine();
+      journal.flush();
+    } catch (IOException e) {
+      throw new GenericException("Error writing job report to journal", e);
+    }
+
+    dirtyReports.put(report.getId(), json);
+    if (job != null) {
+      cachedJob = job;
+    }
+  }
+
+  /**
+   * Writes all pending job reports to storage & index. Reports that could not
+   * be written (or that changed meanwhile) are kept pending, and in the
+   * journal, to be written by the next flush.
+   */
+  public void flush() {
+    synchronized (flushLock) {
+      Map<String, String> reportsToWrite;
+      synchronized (this) {
+        if (dirtyReports.isEmpty()) {
+          return;
+        }
+        reportsToWrite = new LinkedHashMap<>(dirtyReports);
+      }
+
+      LOGGER.debug("Flushing {} job reports of job {}", reportsToWrite.size(), jobId);
+      Job job = getJob();
+      Map<String, String> writtenReports = new HashMap<>();
+      for (Entry<String, String> entry : reportsToWrite.entrySet()) {
+        try {
+          model.createOrUpdateJobReport(JsonUtils.getObjectFromJson(entry.getValue(), Report.class), job);
+          writtenReports.put(entry.getKey(), entry.getValue());
+        } catch (GenericException e) {
+          LOGGER.error("Error flushing job report {}", entry.getKey(), e);
+        }
+      }
+
+      synchronized (this) {
+        // a report updated during the flush is still pending
+        writtenReports.forEach(dirtyReports::remove);
+        rewriteJournal();
+      }
+    }
+  }
+
+  /**
+   * Replaces the journal by one with the pending job reports only (empty if
+   * there are none)
+   */
+  private synchronized void rewriteJournal() {
+    Path tempJournalFile = journalFile.resolveSibling(journalFile.getFileName() + TEMP_JOURNAL_EXTENSION);
+    try {
+      journal.close();
+      try (BufferedWriter writer = Files.newBufferedWriter(tempJournalFile, StandardCharsets.UTF_8)) {
+        for (String json : dirtyReports.values()) {
+          writer.write(json);
+          writer.newLine();
+        }
+      }
+      Files.move(tempJournalFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the old journal, which has all pending reports, is kept
+      LOGGER.error("Error rewriting job reports journal {}", journalFile, e);
+    } finally {
+      try {
+        openJournal(StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        LOGGER.error("Error reopening job reports journal {}", journalFile, e);
+      }
+    }
+  }
+
+  private Job getJob() {
+    if (cachedJob == null) {
+      try {
+        cachedJob = model.retrieveJob(jobId);
+      } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException e) {
+        LOGGER.error("Unable to retrieve job {} to flush its job reports", jobId, e);
+      }
+    }
+    return cachedJob;
+  }
+
+  private void close() {
+    flush();
+    synchronized (this) {
+      try {
+        journal.close();
+        if (dirtyReports.isEmpty()) {
+          Files.deleteIfExists(journalFile);
+        } else {
+          // recovered the next time RODA starts
+          LOGGER.warn("Keeping job reports journal {} with {} job reports that could not be written", journalFile,
+            dirtyReports.size());
+        }
+      } catch (IOException e) {
+        LOGGER.error("Error deleting job reports journal {}", journalFile, e);
+      }
+    }
+  }
+
+  /**
+   * Writes to storage & index the job reports found in journals left by jobs
+   * that were running when RODA stopped (the last version of each report wins)
+   * and deletes those journals
+   */
+  public static void recoverJournals(ModelService model) {
+    Path journalDirectory = getJournalDirectory();
+    if (!Files.isDirectory(journalDirectory)) {
+      return;
+    }
+
+    List<Path> journals = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDirectory, "*" + JOURNAL_EXTENSION)) {
+      stream.forEach(journals::add);
+    } catch (IOException e) {
+      LOGGER.error("Error listing job reports journals", e);
+    }
+
+    for (Path journalFile : journals) {
+      String fileName = journalFile.getFileName().toString();
+      String jobId = fileName.substring(0, fileName.length() - JOURNAL_EXTENSION.length());
+      if (ACCUMULATORS.containsKey(jobId)) {
+        continue;
+      }
+
+      JobReportAccumulator accumulator = new JobReportAccumulator(jobId, model, journalFile);
+      try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          try {
+            Report report = JsonUtils.getObjectFromJson(line, Report.class);
+            accumulator.dirtyReports.put(report.getId(), line);
+          } catch (GenericException e) {
+            // most likely the last line, partially written during a crash
+            LOGGER.warn("Ignoring invalid line in job reports journal {}", journalFile);
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.error("Error reading job reports journal {}", journalFile, e);
+      }
+
+      LOGGER.info("Recovering {} job reports of job {} from journal", accumulator.dirtyReports.size(), jobId);
+      try {
+        accumulator.openJournal(StandardOpenOption.APPEND);
+        accumulator.close();
+      } catch (IOException e) {
+        LOGGER.error("Error recovering job reports journal {}", journalFile, e);
+      }
+    }
+  }
+
+}
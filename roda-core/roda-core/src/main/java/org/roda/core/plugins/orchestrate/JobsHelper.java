@@ -12,13 +12,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
 
+import org.apache.commons.configuration.Configuration;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.NodeType;
@@ -33,6 +39,8 @@ import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsFilter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.File;
@@ -44,6 +52,7 @@ import org.roda.core.data.v2.ip.TransferredResource;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.data.v2.jobs.JobStats;
+import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.ModelService;
@@ -62,6 +71,19 @@ public final class JobsHelper {
   private static final int DEFAULT_BLOCK_SIZE = 100;
   private static final String SYNC_TIMEOUT_PROPERTY = "core.orchestrator.sync_timeout";
   private static final int DEFAULT_SYNC_TIMEOUT = 600;
+  private static final String JOB_REPORTS_FLUSH_INTERVAL_PROPERTY = "core.orchestrator.job_reports_flush_interval";
+  private static final int DEFAULT_JOB_REPORTS_FLUSH_INTERVAL = 5;
+  private static final String MAX_IN_FLIGHT_BLOCKS_PROPERTY = "core.orchestrator.max_in_flight_blocks";
+  private static final String ADAPTIVE_BLOCK_SIZE_PROPERTY = "core.orchestrator.adaptive_block_size.enabled";
+  private static final String ADAPTIVE_BLOCK_SIZE_TARGET_DURATION_PROPERTY = "core.orchestrator.adaptive_block_size"
+    + ".target_duration";
+  private static final int DEFAULT_ADAPTIVE_BLOCK_SIZE_TARGET_DURATION = 60;
+  private static final String ADAPTIVE_BLOCK_SIZE_MIN_PROPERTY = "core.orchestrator.adaptive_block_size.min";
+  private static final int DEFAULT_ADAPTIVE_BLOCK_SIZE_MIN = 1;
+  private static final String ADAPTIVE_BLOCK_SIZE_MAX_PROPERTY = "core.orchestrator.adaptive_block_size.max";
+  private static final int DEFAULT_ADAPTIVE_BLOCK_SIZE_MAX = 1000;
+  private static final String CHECKPOINT_INTERVAL_PROPERTY = "core.orchestrator.checkpoint_interval";
+  private static final int DEFAULT_CHECKPOINT_INTERVAL = 60;
 
   private JobsHelper() {
     // do nothing
@@ -87,6 +109,24 @@ public final class JobsHelper {
     return RodaCoreFactory.getRodaConfiguration().getInt(BLOCK_SIZE_PROPERTY, DEFAULT_BLOCK_SIZE);
   }
 
+  /**
+   * @return the size of the next block of objects to be processed by the
+   *         plugin, which is the configured block size unless adaptive block
+   *         size is enabled (see {@link AdaptiveBlockSizer})
+   */
+  public static int getBlockSize(Plugin<?> plugin) {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    if (!configuration.getBoolean(ADAPTIVE_BLOCK_SIZE_PROPERTY, false)) {
+      return getBlockSize();
+    }
+
+    int min = Math.max(1, configuration.getInt(ADAPTIVE_BLOCK_SIZE_MIN_PROPERTY, DEFAULT_ADAPTIVE_BLOCK_SIZE_MIN));
+    int max = Math.max(min, configuration.getInt(ADAPTIVE_BLOCK_SIZE_MAX_PROPERTY, DEFAULT_ADAPTIVE_BLOCK_SIZE_MAX));
+    long targetDuration = configuration.getInt(ADAPTIVE_BLOCK_SIZE_TARGET_DURATION_PROPERTY,
+      DEFAULT_ADAPTIVE_BLOCK_SIZE_TARGET_DURATION) * 1000L;
+    return AdaptiveBlockSizer.getBlockSize(plugin.getClass().getName(), getBlockSize(), targetDuration, min, max);
+  }
+
   public static void setBlockSize(int blockSize) {
     RodaCoreFactory.getRodaConfiguration().setProperty(BLOCK_SIZE_PROPERTY, blockSize);
   }
@@ -99,6 +139,43 @@ public final class JobsHelper {
     RodaCoreFactory.getRodaConfiguration().setProperty(SYNC_TIMEOUT_PROPERTY, syncTimeout);
   }
 
+  /**
+   * @return number of seconds between writes of the accumulated job reports
+   *         of a running job (0 or less disables accumulation)
+   */
+  public static int getJobReportsFlushInterval() {
+    return RodaCoreFactory.getRodaConfiguration().getInt(JOB_REPORTS_FLUSH_INTERVAL_PROPERTY,
+      DEFAULT_JOB_REPORTS_FLUSH_INTERVAL);
+  }
+
+  /**
+   * @return max number of blocks of a job that can be waiting or being
+   *         processed at the same time, defaulting to twice the number of jobs
+   *         workers
+   */
+  public static int getMaxInFlightBlocks() {
+    return RodaCoreFactory.getRodaConfiguration().getInt(MAX_IN_FLIGHT_BLOCKS_PROPERTY, getNumberOfJobsWorkers() * 2);
+  }
+
+  /**
+   * @return number of seconds between writes of the checkpoint of a running
+   *         job (0 or less disables checkpoints, and therefore resuming jobs)
+   */
+  public static int getCheckpointInterval() {
+    return RodaCoreFactory.getRodaConfiguration().getInt(CHECKPOINT_INTERVAL_PROPERTY, DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * @return true if the job, if interrupted, can be resumed from its
+   *         checkpoint (i.e. it runs over a filter or a list of objects and it
+   *         is not an ingest)
+   */
+  public static boolean isResumable(Job job) {
+    return getCheckpointInterval() > 0 && job.getPluginType() != PluginType.INGEST
+      && (job.getSourceObjects() instanceof SelectedItemsFilter
+        || job.getSourceObjects() instanceof SelectedItemsList);
+  }
+
   public static <T extends IsRODAObject> void updateJobState(Plugin<T> plugin, ModelService model, JOB_STATE state,
     Optional<String> stateDetails) {
     try {
@@ -315,6 +392,135 @@ public final class JobsHelper {
     }
   }
 
+  /**
+   * Retrieves the objects in blocks, each one only when the previous was
+   * consumed, so that at most one block of objects is kept in memory. UUIDs
+   * that could not be retrieved only leave their own object out of the block
+   * (see {@link UUIDBlocksIterator#getUnresolved()}), so blocks may be smaller
+   * than the block size or even empty.
+   */
+  public static <T extends IsRODAObject> Iterator<List<T>> getObjectsFromUUIDInBlocks(ModelService model,
+    IndexService index, Class<T> objectClass, List<String> uuids, int blockSize) {
+    return getObjectsFromUUIDInBlocks(model, index, objectClass, uuids, () -> blockSize);
+  }
+
+  /**
+   * Same as
+   * {@link #getObjectsFromUUIDInBlocks(ModelService, IndexService, Class, List, int)}
+   * but the size of each block is only obtained when the block is retrieved
+   * (e.g. to use an adaptive block size).
+   */
+  public static <T extends IsRODAObject> UUIDBlocksIterator<T> getObjectsFromUUIDInBlocks(ModelService model,
+    IndexService index, Class<T> objectClass, List<String> uuids, IntSupplier blockSize) {
+    return new UUIDBlocksIterator<>(model, index, objectClass, uuids, blockSize);
+  }
+
+  /**
+   * Iterator over the blocks of objects of a list of UUIDs, which also tells
+   * from which positions of the list the last block returned came from and
+   * which of its UUIDs could not be retrieved
+   */
+  public static class UUIDBlocksIterator<T extends IsRODAObject> implements Iterator<List<T>> {
+    private final ModelService model;
+    private final IndexService index;
+    private final Class<T> objectClass;
+    private final List<String> uuids;
+    private final IntSupplier blockSize;
+    private int position = 0;
+    private List<T> next = null;
+    private int nextStart = 0;
+    private int nextEnd = 0;
+    private int blockStart = 0;
+    private int blockEnd = 0;
+    private Map<String, String> nextUnresolved = new LinkedHashMap<>();
+    private Map<String, String> unresolved = new LinkedHashMap<>();
+
+    public UUIDBlocksIterator(ModelService model, IndexService index, Class<T> objectClass, List<String> uuids,
+      IntSupplier blockSize) {
+      this.model = model;
+      this.index = index;
+      this.objectClass = objectClass;
+      this.uuids = uuids;
+      this.blockSize = blockSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && position < uuids.size()) {
+        int end = Math.min(uuids.size(), position + Math.max(1, blockSize.getAsInt()));
+        List<String> uuidBlock = uuids.subList(position, end);
+        nextStart = position;
+        nextEnd = end;
+        position = end;
+        nextUnresolved = new LinkedHashMap<>();
+        next = retrieve(uuidBlock);
+      }
+      return next != null;
+    }
+
+    private List<T> retrieve(List<String> uuidBlock) {
+      try {
+        List<T> objects = getObjectsFromUUID(model, index, objectClass, uuidBlock);
+        if (objects.size() == uuidBlock.size()) {
+          return objects;
+        }
+      } catch (NotFoundException | GenericException | RuntimeException e) {
+        LOGGER.debug("Could not retrieve a block of {} objects, retrieving them one by one",
+          objectClass.getSimpleName(), e);
+      }
+
+      // some objects are missing: find out which ones
+      List<T> objects = new ArrayList<>();
+      for (String uuid : uuidBlock) {
+        try {
+          objects.addAll(getObjectsFromUUID(model, index, objectClass, Collections.singletonList(uuid)));
+        } catch (NotFoundException | GenericException | RuntimeException e) {
+          LOGGER.error("Could not retrieve {} {}", objectClass.getSimpleName(), uuid, e);
+          nextUnresolved.put(uuid, "Could not retrieve " + objectClass.getSimpleName() + " " + uuid + ": ["
+            + e.getClass().getName() + "] " + e.getMessage());
+        }
+      }
+      return objects;
+    }
+
+    @Override
+    public List<T> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      List<T> ret = next;
+      next = null;
+      blockStart = nextStart;
+      blockEnd = nextEnd;
+      unresolved = nextUnresolved;
+      return ret;
+    }
+
+    /**
+     * @return UUIDs of the last block returned that could not be retrieved,
+     *         with the reason why
+     */
+    public Map<String, String> getUnresolved() {
+      return unresolved;
+    }
+
+    /**
+     * @return position (inclusive) of the list of UUIDs where the last block
+     *         returned starts
+     */
+    public int getBlockStart() {
+      return blockStart;
+    }
+
+    /**
+     * @return position (exclusive) of the list of UUIDs where the last block
+     *         returned ends
+     */
+    public int getBlockEnd() {
+      return blockEnd;
+    }
+  }
+
   public static <T extends IsRODAObject, T1 extends IsIndexed> List<T> getObjectsFromIndexObjects(ModelService model,
     Class<T> objectClass, List<T1> indexObjects)
     throws NotFoundException, GenericException, RequestNotValidException, AuthorizationDeniedException {
@@ -21,6 +21,8 @@ import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.orchestrate.JobCheckpoint;
+import org.roda.core.plugins.orchestrate.JobFlowControl;
 import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +31,7 @@ import akka.actor.ActorRef;
 import akka.actor.OneForOneStrategy;
 import akka.actor.Props;
 import akka.actor.SupervisorStrategy;
+import akka.actor.Terminated;
 import akka.japi.pf.DeciderBuilder;
 
 public class AkkaJobActor extends AkkaBaseActor {
@@ -66,8 +69,14 @@ public class AkkaJobActor extends AkkaBaseActor {
       JobsHelper.setPluginParameters(plugin, job);
 
       String jobId = job.getId();
+      // the blocks of the job are sent as the job state actor grants credits
+      JobFlowControl.register(jobId);
+      if (JobsHelper.isResumable(job)) {
+        JobCheckpoint.register(jobId);
+      }
       ActorRef jobStateInfoActor = getContext().actorOf(Props.create(AkkaJobStateInfoActor.class, plugin, getSender(),
         jobsManager, jobId, JobsHelper.getNumberOfJobsWorkers()), jobId);
+      getContext().watch(jobStateInfoActor);
       super.getPluginOrchestrator().setJobContextInformation(jobId, jobStateInfoActor);
 
       jobStateInfoActor.tell(new Messages.JobStateUpdated(plugin, JOB_STATE.STARTED), getSelf());
@@ -88,6 +97,16 @@ public class AkkaJobActor extends AkkaBaseActor {
         getSender().tell("Failed to complete", getSelf());
       }
 
+    } else if (msg instanceof Messages.JobBlockCredits) {
+      Messages.JobBlockCredits message = (Messages.JobBlockCredits) msg;
+      JobFlowControl flowControl = JobFlowControl.get(message.getJobId());
+      if (flowControl != null) {
+        flowControl.grant(message.getCredits());
+      }
+    } else if (msg instanceof Terminated) {
+      // the job state actor is named after the job, which ended (or was
+      // stopped), so no more blocks are sent
+      JobFlowControl.unregister(((Terminated) msg).getActor().path().name());
     } else {
       LOGGER.error("Received a message that don't know how to process ({})...", msg.getClass().getName());
       unhandled(msg);
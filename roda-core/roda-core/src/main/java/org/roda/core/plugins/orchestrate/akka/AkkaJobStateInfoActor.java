@@ -7,8 +7,16 @@
  */
 package org.roda.core.plugins.orchestrate.akka;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
@@ -22,21 +30,27 @@ import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.index.IndexService;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginException;
+import org.roda.core.plugins.orchestrate.JobCheckpoint;
+import org.roda.core.plugins.orchestrate.JobFlowControl;
 import org.roda.core.plugins.orchestrate.JobInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobReportAccumulator;
 import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Iterables;
 
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.actor.Terminated;
-import akka.routing.RoundRobinPool;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
 
 public class AkkaJobStateInfoActor extends AkkaBaseActor {
   private static final Logger LOGGER = LoggerFactory.getLogger(AkkaJobStateInfoActor.class);
@@ -45,14 +59,31 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
   private Plugin<?> plugin;
   private ActorRef jobCreator;
   private ActorRef jobsManager;
-  private ActorRef workersRouter;
+  private List<ActorRef> workers;
+  private Deque<ActorRef> idleWorkers;
+  // blocks waiting for an idle worker, the most costly first
+  private PriorityQueue<PendingBlock> pendingBlocks;
+  private long pendingBlocksCount = 0;
+  // worker -> when it started processing its current block (in millis)
+  private Map<ActorRef, Long> busyWorkersSince;
+  // worker -> time spent processing blocks (in millis)
+  private Map<ActorRef, Long> workersBusyTime;
+  private long workersStartTime;
   boolean stopping = false;
+  // a paused job hands no blocks to its workers & holds the credits of the
+  // blocks done (so no more blocks are sent) until resumed
+  private boolean paused = false;
+  private int heldCredits = 0;
   boolean errorDuringBeforeAll = false;
   private String jobId;
+  private Cancellable jobReportsFlushTask = null;
+  private Cancellable jobCheckpointSaveTask = null;
 
   // metrics
   // private Map<String, Histogram> stateMessagesMetrics;
   private Histogram stateMessagesMetricsHistogram;
+  private Histogram workersUtilizationHistogram;
+  private Counter busyWorkersCounter;
 
   public AkkaJobStateInfoActor(Plugin<?> plugin, ActorRef jobCreator, ActorRef jobsManager, String jobId,
     int numberOfJobsWorkers) {
@@ -63,18 +94,67 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     this.jobsManager = jobsManager;
     this.jobId = jobId;
 
-    LOGGER.debug("Starting AkkaJobStateInfoActor router with {} actors", numberOfJobsWorkers);
-    Props workersProps = new RoundRobinPool(numberOfJobsWorkers).props(Props.create(AkkaWorkerActor.class));
-    workersRouter = getContext().actorOf(workersProps, "WorkersRouter");
-    // 20160914 hsilva: watch child events, so when they stop we can react
-    getContext().watch(workersRouter);
+    // blocks are handed to idle workers only (instead of round robin), so
+    // that a worker is never waiting while another one has blocks queued
+    LOGGER.debug("Starting AkkaJobStateInfoActor with {} workers", numberOfJobsWorkers);
+    workers = new ArrayList<>();
+    idleWorkers = new ArrayDeque<>();
+    pendingBlocks = new PriorityQueue<>(PendingBlock.MOST_COSTLY_FIRST);
+    busyWorkersSince = new HashMap<>();
+    workersBusyTime = new HashMap<>();
+    for (int i = 0; i < Math.max(1, numberOfJobsWorkers); i++) {
+      ActorRef worker = getContext().actorOf(Props.create(AkkaWorkerActor.class), "Worker" + i);
+      // 20160914 hsilva: watch child events, so when they stop we can react
+      getContext().watch(worker);
+      workers.add(worker);
+      idleWorkers.add(worker);
+    }
+    workersStartTime = System.currentTimeMillis();
 
     JobsHelper.createJobWorkingDirectory(jobId);
 
+    // job reports are accumulated & written periodically (and at job end)
+    int jobReportsFlushInterval = JobsHelper.getJobReportsFlushInterval();
+    if (jobReportsFlushInterval > 0 && JobReportAccumulator.register(jobId, getModel()) != null) {
+      FiniteDuration interval = Duration.create(jobReportsFlushInterval, TimeUnit.SECONDS);
+      jobReportsFlushTask = getContext().system().scheduler().schedule(interval, interval, getSelf(),
+        new Messages.JobReportsFlush(), getContext().dispatcher(), getSelf());
+    }
+
+    // the progress of the job is written periodically, so it can be resumed
+    int checkpointInterval = JobsHelper.getCheckpointInterval();
+    if (checkpointInterval > 0 && JobCheckpoint.get(jobId) != null) {
+      FiniteDuration interval = Duration.create(checkpointInterval, TimeUnit.SECONDS);
+      jobCheckpointSaveTask = getContext().system().scheduler().schedule(interval, interval, getSelf(),
+        new Messages.JobCheckpointSave(), getContext().dispatcher(), getSelf());
+    }
+
     String className = AkkaJobStateInfoActor.class.getSimpleName();
     // stateMessagesMetrics = new HashMap<>();
     stateMessagesMetricsHistogram = getMetricRegistry()
       .histogram(MetricRegistry.name(className, "msgCreationToProcessingStartedInMilis"));
+    workersUtilizationHistogram = getMetricRegistry()
+      .histogram(MetricRegistry.name(className, "workersUtilizationInPercent"));
+    busyWorkersCounter = getMetricRegistry().counter(MetricRegistry.name(className, "busyWorkers"));
+
+    // the job actor (i.e. the parent) may start sending blocks
+    int maxInFlightBlocks = Math.max(1, JobsHelper.getMaxInFlightBlocks());
+    getContext().parent().tell(new Messages.JobBlockCredits(jobId, maxInFlightBlocks), getSelf());
+    jobsManager.tell(new Messages.JobsManagerJobStarted(jobId), getSelf());
+  }
+
+  @Override
+  public void postStop() {
+    if (jobReportsFlushTask != null) {
+      jobReportsFlushTask.cancel();
+    }
+    if (jobCheckpointSaveTask != null) {
+      jobCheckpointSaveTask.cancel();
+    }
+    JobReportAccumulator.unregister(jobId);
+    // the job did not end (e.g. RODA is stopping), so it will be resumed
+    JobCheckpoint.unregister(jobId, false);
+    busyWorkersCounter.dec(busyWorkersSince.size());
   }
 
   @Override
@@ -88,6 +168,10 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
       handleJobInfoUpdated(msg);
     } else if (msg instanceof Messages.JobStop) {
       handleJobStop(msg);
+    } else if (msg instanceof Messages.JobPause) {
+      handleJobPause(msg);
+    } else if (msg instanceof Messages.JobResume) {
+      handleJobResume(msg);
     } else if (msg instanceof Terminated) {
       handleTerminated(msg);
     } else if (msg instanceof Messages.PluginExecuteIsReady) {
@@ -102,6 +186,10 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
       handleAfterAllExecuteIsDone(msg);
     } else if (msg instanceof Messages.JobCleanup) {
       handleJobCleanup(msg);
+    } else if (msg instanceof Messages.JobReportsFlush) {
+      handleJobReportsFlush(msg);
+    } else if (msg instanceof Messages.JobCheckpointSave) {
+      handleJobCheckpointSave(msg);
     } else {
       LOGGER.error("Received a message that don't know how to process ({})...", msg.getClass().getName());
       unhandled(msg);
@@ -119,6 +207,11 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     } catch (NotFoundException | GenericException e) {
       LOGGER.warn("Unable to get Job from index to log its state change. Reason: {}", e.getMessage());
     }
+    if (Job.isFinalState(message.getState())) {
+      // all job reports must be written before the job is marked as finished
+      JobReportAccumulator.unregister(jobId);
+      JobCheckpoint.unregister(jobId, true);
+    }
     JobsHelper.updateJobState(p, getModel(), message.getState(), message.getStateDatails());
     if (Job.isFinalState(message.getState())) {
       // 20160817 hsilva: the following instruction is needed for the "sync"
@@ -172,12 +265,38 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     markMessageProcessingAsStarted(message);
     getSelf().tell(new Messages.JobStateUpdated(plugin, JOB_STATE.STOPPING), getSelf());
     stopping = true;
+    // no more blocks will be processed (nor credits granted for them)
+    pendingBlocks.clear();
     getContext().getChildren().forEach(e -> getContext().stop(e));
     markMessageProcessingAsEnded(message);
   }
 
+  private void handleJobPause(Object msg) {
+    Messages.JobPause message = (Messages.JobPause) msg;
+    markMessageProcessingAsStarted(message);
+    paused = true;
+    markMessageProcessingAsEnded(message);
+  }
+
+  private void handleJobResume(Object msg) {
+    Messages.JobResume message = (Messages.JobResume) msg;
+    markMessageProcessingAsStarted(message);
+    paused = false;
+    if (heldCredits > 0) {
+      getContext().parent().tell(new Messages.JobBlockCredits(jobId, heldCredits), getSelf());
+      heldCredits = 0;
+    }
+    dispatchPendingBlocks();
+    markMessageProcessingAsEnded(message);
+  }
+
   private void handleTerminated(Object msg) {
     LOGGER.trace("{} Started processing message {}", "NO_UUID", Terminated.class.getSimpleName());
+    ActorRef worker = ((Terminated) msg).getActor();
+    idleWorkers.remove(worker);
+    if (busyWorkersSince.remove(worker) != null) {
+      busyWorkersCounter.dec();
+    }
     boolean allChildrenAreDead = true;
     if (stopping) {
       allChildrenAreDead = Iterables.isEmpty(getContext().getChildren());
@@ -194,10 +313,12 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
       Messages.PluginExecuteIsReady message = (Messages.PluginExecuteIsReady) msg;
       markMessageProcessingAsStarted(message);
       jobInfo.setStarted(message.getPlugin());
-      // 20160819 hsilva: the following it's just for debugging purposes
-      message.setHasBeenForwarded();
-      workersRouter.tell(message, getSelf());
+      pendingBlocks.add(new PendingBlock(message, pendingBlocksCount++));
+      dispatchPendingBlocks();
       markMessageProcessingAsEnded(message);
+    } else {
+      // the block is discarded, so its credit is given back
+      releaseFlowControlCredit();
     }
   }
 
@@ -208,7 +329,7 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     // INFO 20160630 hsilva: the following test is needed because messages can
     // be out of order and a plugin might already arrived to the end
     if (jobInfo.isDone()) {
-      workersRouter.tell(new Messages.PluginAfterAllExecuteIsReady(plugin), getSelf());
+      sendAfterAllExecuteIsReady();
     }
     markMessageProcessingAsEnded(message);
   }
@@ -237,16 +358,78 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
   private void handleExecuteIsDone(Object msg) {
     Messages.PluginExecuteIsDone message = (Messages.PluginExecuteIsDone) msg;
     markMessageProcessingAsStarted(message);
+    markWorkerAsIdle(getSender());
+    releaseFlowControlCredit();
+    JobCheckpoint checkpoint = JobCheckpoint.get(jobId);
+    if (checkpoint != null) {
+      checkpoint.blockDone(message.getPlugin(), message.isWithError());
+    }
+    dispatchPendingBlocks();
     jobInfo.setDone(message.getPlugin());
     if (jobInfo.isDone() && jobInfo.isInitEnded()) {
-      workersRouter.tell(new Messages.PluginAfterAllExecuteIsReady(plugin), getSelf());
+      sendAfterAllExecuteIsReady();
     }
     markMessageProcessingAsEnded(message);
   }
 
+  private void dispatchPendingBlocks() {
+    while (!paused && !idleWorkers.isEmpty() && !pendingBlocks.isEmpty()) {
+      ActorRef worker = idleWorkers.poll();
+      Messages.PluginExecuteIsReady<?> message = pendingBlocks.poll().getMessage();
+      busyWorkersSince.put(worker, System.currentTimeMillis());
+      busyWorkersCounter.inc();
+      // 20160819 hsilva: the following it's just for debugging purposes
+      message.setHasBeenForwarded();
+      worker.tell(message, getSelf());
+    }
+  }
+
+  private void markWorkerAsIdle(ActorRef worker) {
+    Long busySince = busyWorkersSince.remove(worker);
+    if (busySince != null) {
+      workersBusyTime.merge(worker, System.currentTimeMillis() - busySince, Long::sum);
+      busyWorkersCounter.dec();
+      idleWorkers.add(worker);
+    }
+  }
+
+  private void reportWorkersUtilization() {
+    long elapsed = Math.max(1, System.currentTimeMillis() - workersStartTime);
+    List<Long> utilization = new ArrayList<>();
+    for (ActorRef worker : workers) {
+      long percent = workersBusyTime.getOrDefault(worker, 0L) * 100 / elapsed;
+      workersUtilizationHistogram.update(percent);
+      utilization.add(percent);
+    }
+    LOGGER.info("Utilization (in percent) of the workers of job {}: {}", jobId, utilization);
+  }
+
+  /**
+   * Gives back to the job actor (which sends the blocks) the credit of a block
+   * that was processed or discarded (see {@link JobFlowControl})
+   */
+  private void releaseFlowControlCredit() {
+    if (paused) {
+      heldCredits++;
+    } else if (!stopping) {
+      getContext().parent().tell(new Messages.JobBlockCredits(jobId, 1), getSelf());
+    }
+  }
+
+  private void sendAfterAllExecuteIsReady() {
+    // afterAllExecute may look for the job reports in the index
+    JobReportAccumulator accumulator = JobReportAccumulator.get(jobId);
+    if (accumulator != null) {
+      accumulator.flush();
+    }
+    ActorRef worker = idleWorkers.isEmpty() ? workers.get(0) : idleWorkers.peek();
+    worker.tell(new Messages.PluginAfterAllExecuteIsReady(plugin), getSelf());
+  }
+
   private void handleAfterAllExecuteIsDone(Object msg) {
     Messages.PluginAfterAllExecuteIsDone message = (Messages.PluginAfterAllExecuteIsDone) msg;
     markMessageProcessingAsStarted(message);
+    reportWorkersUtilization();
     getSelf().tell(new Messages.JobCleanup(), getSelf());
     getSelf().tell(
       new Messages.JobStateUpdated(plugin, message.isWithError() ? JOB_STATE.FAILED_TO_COMPLETE : JOB_STATE.COMPLETED),
@@ -269,6 +452,31 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     markMessageProcessingAsEnded(message);
   }
 
+  private void handleJobReportsFlush(Object msg) {
+    Messages.JobReportsFlush message = (Messages.JobReportsFlush) msg;
+    markMessageProcessingAsStarted(message);
+    JobReportAccumulator accumulator = JobReportAccumulator.get(jobId);
+    if (accumulator != null) {
+      accumulator.flush();
+    }
+    markMessageProcessingAsEnded(message);
+  }
+
+  private void handleJobCheckpointSave(Object msg) {
+    Messages.JobCheckpointSave message = (Messages.JobCheckpointSave) msg;
+    markMessageProcessingAsStarted(message);
+    JobCheckpoint checkpoint = JobCheckpoint.get(jobId);
+    if (checkpoint != null) {
+      // objects are skipped on resume based on their job reports
+      JobReportAccumulator accumulator = JobReportAccumulator.get(jobId);
+      if (accumulator != null) {
+        accumulator.flush();
+      }
+      checkpoint.save();
+    }
+    markMessageProcessingAsEnded(message);
+  }
+
   private void markMessageProcessingAsStarted(Messages.AbstractMessage message) {
     message.logProcessingStarted();
     stateMessagesMetricsHistogram.update(message.getTimeSinceCreation());
@@ -278,4 +486,26 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     message.logProcessingEnded();
   }
 
+  private static class PendingBlock {
+    static final Comparator<PendingBlock> MOST_COSTLY_FIRST = Comparator
+      .comparingLong((PendingBlock block) -> block.getMessage().getEstimatedCost()).reversed()
+      .thenComparingLong(PendingBlock::getOrder);
+
+    private final Messages.PluginExecuteIsReady<?> message;
+    private final long order;
+
+    PendingBlock(Messages.PluginExecuteIsReady<?> message, long order) {
+      this.message = message;
+      this.order = order;
+    }
+
+    Messages.PluginExecuteIsReady<?> getMessage() {
+      return message;
+    }
+
+    long getOrder() {
+      return order;
+    }
+  }
+
 }
\ No newline at end of file
@@ -7,14 +7,17 @@
  */
 package org.roda.core.plugins.orchestrate.akka;
 
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
+import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
 
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.plugins.orchestrate.JobPriority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,21 +27,38 @@ import com.codahale.metrics.MetricRegistry;
 
 import akka.actor.ActorRef;
 import akka.actor.Props;
-import akka.routing.RoundRobinPool;
+import akka.routing.SmallestMailboxPool;
 import scala.concurrent.duration.Duration;
 
+/**
+ * Decides when each job is executed: waiting jobs are executed by priority
+ * (see {@link JobPriority}) and, within the same priority, by arrival, as long
+ * as there are less than the max number of jobs in parallel being executed and
+ * the job does not exceed the max number of jobs in parallel of its user or of
+ * its plugin type (if configured).
+ *
+ * If all jobs in parallel are being executed and a job waits for a job with
+ * lower priority, the latter is paused (its state actor stops handing blocks to
+ * its workers and letting more blocks be sent) to give way to the former, and
+ * is resumed when there is room again.
+ */
 public class AkkaJobsManager extends AkkaBaseActor {
   private static final Logger LOGGER = LoggerFactory.getLogger(AkkaJobsManager.class);
 
   // state
   private int maxNumberOfJobsInParallel;
-  private Queue<JobWaiting> jobsWaiting;
+  private int maxNumberOfJobsInParallelPerUser;
+  private boolean preemptionEnabled;
+  private PriorityQueue<JobWaiting> jobsWaiting;
   private Map<String, ActorRef> jobsWaitingCreators;
+  private Map<String, JobRunning> jobsRunning;
   private ActorRef jobsRouter;
+  private long jobsArrived = 0;
 
   // metrics
   private Counter jobsBeingExecuted;
   private Counter jobsWaitingToBeExecuted;
+  private Counter jobsPaused;
   private Counter ticksWaitingToBeProcessed;
   private Histogram jobsBeingExecutedHisto;
   private Histogram jobsWaitingToBeExecutedHisto;
@@ -47,42 +67,63 @@ public class AkkaJobsManager extends AkkaBaseActor {
   public AkkaJobsManager(int maxNumberOfJobsInParallel) {
     super();
     this.maxNumberOfJobsInParallel = maxNumberOfJobsInParallel;
-    this.jobsWaiting = new LinkedList<>();
+    this.maxNumberOfJobsInParallelPerUser = getConfiguredInt(0, "max_jobs_in_parallel_per_user");
+    this.preemptionEnabled = RodaCoreFactory.getRodaConfiguration() == null
+      || RodaCoreFactory.getRodaConfiguration().getBoolean("core.orchestrator.preemption", true);
+    this.jobsWaiting = new PriorityQueue<>(JobWaiting.BY_PRIORITY_AND_ARRIVAL);
     this.jobsWaitingCreators = new HashMap<>();
+    this.jobsRunning = new HashMap<>();
 
-    Props jobsProps = new RoundRobinPool(maxNumberOfJobsInParallel).props(Props.create(AkkaJobActor.class, getSelf()));
+    Props jobsProps = new SmallestMailboxPool(maxNumberOfJobsInParallel)
+      .props(Props.create(AkkaJobActor.class, getSelf()));
     jobsRouter = getContext().actorOf(jobsProps, "JobsRouter");
 
     initMetrics(maxNumberOfJobsInParallel);
 
     getContext().system().scheduler().schedule(Duration.create(0, TimeUnit.MILLISECONDS),
       Duration.create(2, TimeUnit.SECONDS), () -> {
-        if (jobsWaitingToBeExecuted.getCount() > 0) {
+        if (jobsWaitingToBeExecuted.getCount() > 0 || jobsPaused.getCount() > 0) {
           sendTick();
         }
       }, getContext().system().dispatcher());
   }
 
+  private static int getConfiguredInt(int defaultValue, String... keyParts) {
+    int value = defaultValue;
+    if (RodaCoreFactory.getRodaConfiguration() != null) {
+      String[] key = new String[keyParts.length + 2];
+      key[0] = "core";
+      key[1] = "orchestrator";
+      System.arraycopy(keyParts, 0, key, 2, keyParts.length);
+      value = RodaCoreFactory.getRodaConfigurationAsInt(defaultValue, key);
+    }
+    return value;
+  }
+
   @Override
   public void onReceive(Object msg) throws Throwable {
     if (msg instanceof Job) {
-      Job job = (Job) msg;
-      if (jobsWaitingToBeExecuted.getCount() == 0 && jobsBeingExecuted.getCount() < maxNumberOfJobsInParallel) {
-        sendJobForExecution(msg, job);
-      } else {
-        queueJob(job, getSender());
-      }
+      queueJob((Job) msg, getSender());
+      scheduleJobs();
     } else if (msg instanceof Messages.JobsManagerTick) {
-      if (jobsWaitingToBeExecuted.getCount() > 0 && jobsBeingExecuted.getCount() < maxNumberOfJobsInParallel) {
-        while (jobsWaitingToBeExecuted.getCount() > 0 && jobsBeingExecuted.getCount() < maxNumberOfJobsInParallel) {
-          dequeueJob();
-        }
-      }
+      scheduleJobs();
       ticksWaitingToBeProcessed.dec();
+    } else if (msg instanceof Messages.JobsManagerJobStarted) {
+      // the state actor of the job is the one that pauses & resumes it
+      JobRunning jobRunning = jobsRunning.get(((Messages.JobsManagerJobStarted) msg).getJobId());
+      if (jobRunning != null) {
+        jobRunning.stateActor = getSender();
+      }
+      scheduleJobs();
     } else if (msg instanceof Messages.JobsManagerJobEnded) {
+      String jobId = ((Messages.JobsManagerJobEnded) msg).getJobId();
+      JobRunning jobRunning = jobsRunning.remove(jobId);
+      if (jobRunning != null && jobRunning.paused) {
+        jobsPaused.dec();
+      }
       updateJobsBeingExecuted(false);
       sendTick();
-      log("The end for job", ((Messages.JobsManagerJobEnded) msg).getJobId());
+      log("The end for job", jobId);
     } else {
       LOGGER.error("Received a message that don't know how to process ({})...", msg.getClass().getName());
       unhandled(msg);
@@ -96,13 +137,6 @@ public class AkkaJobsManager extends AkkaBaseActor {
     }
   }
 
-  private void sendJobForExecution(Object msg, Job job) {
-    updateJobsBeingExecuted(true);
-    jobsTimeInTheQueueInMilis.update(0);
-    jobsRouter.tell(msg, getSender());
-    log("Will execute job", job.getId());
-  }
-
   private void updateJobsBeingExecuted(boolean increment) {
     if (increment) {
       jobsBeingExecuted.inc();
@@ -122,27 +156,147 @@ public class AkkaJobsManager extends AkkaBaseActor {
   }
 
   private void queueJob(Job job, ActorRef sender) {
-    jobsWaiting.offer(new JobWaiting(job));
+    jobsWaiting.offer(new JobWaiting(job, jobsArrived++));
     jobsWaitingCreators.put(job.getId(), sender);
     updateJobsWaitingToBeExecuted(true);
     log("Queued job", job.getId());
   }
 
-  private Job dequeueJob() {
-    JobWaiting jobWaiting = jobsWaiting.remove();
+  private void scheduleJobs() {
+    boolean changed;
+    do {
+      changed = resumePausedJob() || dequeueJob() || pauseRunningJob();
+    } while (changed);
+  }
+
+  /**
+   * @return number of jobs being executed that are not paused
+   */
+  private long getNumberOfActiveJobs() {
+    return jobsBeingExecuted.getCount() - jobsPaused.getCount();
+  }
+
+  /**
+   * @return the first waiting job (by priority & arrival) that does not exceed
+   *         the quotas of its user and of its plugin type, or null if none
+   */
+  private JobWaiting getNextJobWaiting() {
+    JobWaiting ret = null;
+    for (JobWaiting jobWaiting : jobsWaiting) {
+      if (isWithinQuotas(jobWaiting.job)
+        && (ret == null || JobWaiting.BY_PRIORITY_AND_ARRIVAL.compare(jobWaiting, ret) < 0)) {
+        ret = jobWaiting;
+      }
+    }
+    return ret;
+  }
+
+  private boolean isWithinQuotas(Job job) {
+    int maxPerPluginType = job.getPluginType() != null
+      ? getConfiguredInt(0, "max_jobs_in_parallel_per_plugin_type", job.getPluginType().name()) : 0;
+    int sameUser = 0;
+    int samePluginType = 0;
+    for (JobRunning jobRunning : jobsRunning.values()) {
+      if (jobRunning.username != null && jobRunning.username.equals(job.getUsername())) {
+        sameUser++;
+      }
+      if (jobRunning.pluginType != null && jobRunning.pluginType == job.getPluginType()) {
+        samePluginType++;
+      }
+    }
+    return (maxNumberOfJobsInParallelPerUser <= 0 || sameUser < maxNumberOfJobsInParallelPerUser)
+      && (maxPerPluginType <= 0 || samePluginType < maxPerPluginType);
+  }
+
+  /**
+   * Resumes the paused job with the highest priority, if there is room for it
+   * and no waiting job has higher priority
+   */
+  private boolean resumePausedJob() {
+    if (getNumberOfActiveJobs() >= maxNumberOfJobsInParallel) {
+      return false;
+    }
+
+    JobRunning toResume = null;
+    for (JobRunning jobRunning : jobsRunning.values()) {
+      if (jobRunning.paused && (toResume == null || jobRunning.priority.isHigherThan(toResume.priority))) {
+        toResume = jobRunning;
+      }
+    }
+
+    JobWaiting next = getNextJobWaiting();
+    if (toResume == null || (next != null && next.priority.isHigherThan(toResume.priority))) {
+      return false;
+    }
+
+    toResume.stateActor.tell(new Messages.JobResume(), getSelf());
+    toResume.paused = false;
+    jobsPaused.dec();
+    log("Resumed job", toResume.jobId);
+    return true;
+  }
+
+  private boolean dequeueJob() {
+    if (getNumberOfActiveJobs() >= maxNumberOfJobsInParallel) {
+      return false;
+    }
+
+    JobWaiting jobWaiting = getNextJobWaiting();
+    if (jobWaiting == null) {
+      return false;
+    }
+
+    jobsWaiting.remove(jobWaiting);
     jobsTimeInTheQueueInMilis.update(jobWaiting.timeInQueue());
     Job job = jobWaiting.job;
     ActorRef jobCreator = jobsWaitingCreators.remove(job.getId());
+    jobsRunning.put(job.getId(), new JobRunning(job, jobWaiting.priority));
     jobsRouter.tell(job, jobCreator);
     updateJobsBeingExecuted(true);
     updateJobsWaitingToBeExecuted(false);
     log("Dequeued job", job.getId());
-    return job;
+    return true;
+  }
+
+  /**
+   * Pauses the running job with the lowest priority (the most recent one, if
+   * several) if there is no room for a waiting job with higher priority
+   */
+  private boolean pauseRunningJob() {
+    if (!preemptionEnabled || getNumberOfActiveJobs() < maxNumberOfJobsInParallel
+      || jobsPaused.getCount() >= maxNumberOfJobsInParallel) {
+      return false;
+    }
+
+    JobWaiting next = getNextJobWaiting();
+    if (next == null) {
+      return false;
+    }
+
+    JobRunning toPause = null;
+    for (JobRunning jobRunning : jobsRunning.values()) {
+      if (!jobRunning.paused && next.priority.isHigherThan(jobRunning.priority)
+        && jobRunning.stateActor != null && (toPause == null
+          || toPause.priority.isHigherThan(jobRunning.priority)
+          || (toPause.priority == jobRunning.priority && jobRunning.startedIn > toPause.startedIn))) {
+        toPause = jobRunning;
+      }
+    }
+
+    if (toPause == null) {
+      return false;
+    }
+
+    toPause.stateActor.tell(new Messages.JobPause(), getSelf());
+    toPause.paused = true;
+    jobsPaused.inc();
+    log("Paused job", toPause.jobId);
+    return true;
   }
 
   private void log(String msg, String jobId) {
-    LOGGER.info("{} '{}' (max: {}| exec: {}| wait: {})", msg, jobId, maxNumberOfJobsInParallel,
-      jobsBeingExecuted.getCount(), jobsWaitingToBeExecuted.getCount());
+    LOGGER.info("{} '{}' (max: {}| exec: {}| paused: {}| wait: {})", msg, jobId, maxNumberOfJobsInParallel,
+      jobsBeingExecuted.getCount(), jobsPaused.getCount(), jobsWaitingToBeExecuted.getCount());
   }
 
   private void initMetrics(int maxNumberOfJobsInParallel) {
@@ -153,6 +307,7 @@ public class AkkaJobsManager extends AkkaBaseActor {
     maxNumberOfJobsInParallelCounter.inc(maxNumberOfJobsInParallel);
     jobsBeingExecuted = metrics.counter(MetricRegistry.name(className, "jobsBeingExecuted"));
     jobsWaitingToBeExecuted = metrics.counter(MetricRegistry.name(className, "jobsWaitingToBeExecuted"));
+    jobsPaused = metrics.counter(MetricRegistry.name(className, "jobsPaused"));
     ticksWaitingToBeProcessed = metrics.counter(MetricRegistry.name(className, "ticksWaitingToBeProcessed"));
     jobsBeingExecutedHisto = metrics.histogram(MetricRegistry.name(className, "jobsBeingExecutedHistogram"));
     jobsWaitingToBeExecutedHisto = metrics
@@ -160,12 +315,20 @@ public class AkkaJobsManager extends AkkaBaseActor {
     jobsTimeInTheQueueInMilis = metrics.histogram(MetricRegistry.name(className, "jobsTimeInTheQueueInMilis"));
   }
 
-  private class JobWaiting {
+  /** Package visible to be tested */
+  static class JobWaiting {
+    static final Comparator<JobWaiting> BY_PRIORITY_AND_ARRIVAL = Comparator
+      .comparing((JobWaiting jobWaiting) -> jobWaiting.priority).thenComparingLong(jobWaiting -> jobWaiting.order);
+
     public Job job;
+    private JobPriority priority;
+    private long order;
     private long queuedIn;
 
-    public JobWaiting(Job job) {
+    public JobWaiting(Job job, long order) {
       this.job = job;
+      this.priority = JobPriority.of(job);
+      this.order = order;
       this.queuedIn = new Date().getTime();
     }
 
@@ -175,4 +338,22 @@ public class AkkaJobsManager extends AkkaBaseActor {
     }
   }
 
+  private static class JobRunning {
+    private String jobId;
+    private String username;
+    private PluginType pluginType;
+    private JobPriority priority;
+    private long startedIn;
+    private boolean paused = false;
+    private ActorRef stateActor = null;
+
+    public JobRunning(Job job, JobPriority priority) {
+      this.jobId = job.getId();
+      this.username = job.getUsername();
+      this.pluginType = job.getPluginType();
+      this.priority = priority;
+      this.startedIn = new Date().getTime();
+    }
+  }
+
 }
@@ -14,6 +14,7 @@ import org.roda.core.data.v2.LiteOptionalWithCause;
 import org.roda.core.index.IndexService;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.orchestrate.AdaptiveBlockSizer;
 import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +52,11 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     message.logProcessingStarted();
     Plugin<IsRODAObject> messagePlugin = message.getPlugin();
     try {
+      long start = System.currentTimeMillis();
       messagePlugin.execute(index, model, storage, objectsToBeProcessed);
+      // the time taken is used to adapt the size of the next blocks
+      AdaptiveBlockSizer.record(messagePlugin.getClass().getName(), objectsToBeProcessed.size(),
+        System.currentTimeMillis() - start);
       getSender().tell(new Messages.PluginExecuteIsDone(messagePlugin, false), getSelf());
     } catch (Throwable e) {
       // 20170120 hsilva: it is required to catch Throwable as there are some
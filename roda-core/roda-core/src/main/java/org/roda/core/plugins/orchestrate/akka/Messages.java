@@ -94,6 +94,26 @@ public class Messages {
     }
   }
 
+  public static final class JobsManagerJobStarted extends AbstractMessage {
+    private static final long serialVersionUID = 4725260313592838402L;
+
+    private String jobId;
+
+    public JobsManagerJobStarted(String jobId) {
+      super();
+      this.jobId = jobId;
+    }
+
+    public String getJobId() {
+      return jobId;
+    }
+
+    @Override
+    public String toString() {
+      return "JobsManagerJobStarted [jobId=" + jobId + "]";
+    }
+  }
+
   /*-------------------- JOB STATE RELATED STATIC CLASSES --------------------*/
   public static final class JobInfoUpdated extends AbstractMessage {
     private static final long serialVersionUID = -6918015956027259760L;
@@ -216,6 +236,32 @@ public class Messages {
     }
   }
 
+  public static class JobReportsFlush extends AbstractMessage {
+    private static final long serialVersionUID = 2687392581262843011L;
+
+    public JobReportsFlush() {
+      super();
+    }
+
+    @Override
+    public String toString() {
+      return "JobReportsFlush []";
+    }
+  }
+
+  public static class JobCheckpointSave extends AbstractMessage {
+    private static final long serialVersionUID = -3172648203551840979L;
+
+    public JobCheckpointSave() {
+      super();
+    }
+
+    @Override
+    public String toString() {
+      return "JobCheckpointSave []";
+    }
+  }
+
   public static class JobStop extends AbstractMessage {
     private static final long serialVersionUID = -8806029242967727412L;
 
@@ -229,6 +275,58 @@ public class Messages {
     }
   }
 
+  public static class JobPause extends AbstractMessage {
+    private static final long serialVersionUID = 2187355062290470214L;
+
+    public JobPause() {
+      super();
+    }
+
+    @Override
+    public String toString() {
+      return "JobPause []";
+    }
+  }
+
+  public static class JobResume extends AbstractMessage {
+    private static final long serialVersionUID = -1473993286384416437L;
+
+    public JobResume() {
+      super();
+    }
+
+    @Override
+    public String toString() {
+      return "JobResume []";
+    }
+  }
+
+  public static class JobBlockCredits extends AbstractMessage {
+    private static final long serialVersionUID = 6317459271540824113L;
+
+    private String jobId;
+    private int credits;
+
+    public JobBlockCredits(String jobId, int credits) {
+      super();
+      this.jobId = jobId;
+      this.credits = credits;
+    }
+
+    public String getJobId() {
+      return jobId;
+    }
+
+    public int getCredits() {
+      return credits;
+    }
+
+    @Override
+    public String toString() {
+      return "JobBlockCredits [jobId=" + jobId + ", credits=" + credits + "]";
+    }
+  }
+
   /*-------------------- PLUGIN STATE TRANSITIONS RELATED STATIC CLASSES --------------------*/
 
   private static class PluginMethodIsReady<T extends IsRODAObject> extends AbstractMessage {
@@ -307,25 +405,35 @@ public class Messages {
     private static final long serialVersionUID = 1821489252490235130L;
 
     private List<LiteOptionalWithCause> list;
+    private long estimatedCost;
     private boolean hasBeenForwarded = false;
 
     public PluginExecuteIsReady(Plugin<T> plugin, List<LiteOptionalWithCause> list) {
+      this(plugin, list, list.size());
+    }
+
+    public PluginExecuteIsReady(Plugin<T> plugin, List<LiteOptionalWithCause> list, long estimatedCost) {
       super(plugin);
       this.list = list;
+      this.estimatedCost = estimatedCost;
     }
 
     public List<LiteOptionalWithCause> getList() {
       return list;
     }
 
+    public long getEstimatedCost() {
+      return estimatedCost;
+    }
+
     public void setHasBeenForwarded() {
       this.hasBeenForwarded = true;
     }
 
     @Override
     public String toString() {
-      return "PluginExecuteIsReady [list=" + list + ", hasBeenForwarded=" + hasBeenForwarded + ", getPlugin()="
-        + getPlugin() + "]";
+      return "PluginExecuteIsReady [list=" + list + ", estimatedCost=" + estimatedCost + ", hasBeenForwarded="
+        + hasBeenForwarded + ", getPlugin()=" + getPlugin() + "]";
     }
   }
 
@@ -86,6 +86,7 @@ import org.roda.core.plugins.RODAObjectsProcessingLogic;
 import org.roda.core.plugins.RODAProcessingLogic;
 import org.roda.core.plugins.orchestrate.IngestJobPluginInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobReportAccumulator;
 import org.roda.core.plugins.orchestrate.SimpleJobPluginInfo;
 import org.roda.core.plugins.orchestrate.akka.Messages;
 import org.roda.core.plugins.plugins.reindex.ReindexAIPPlugin;
@@ -324,7 +325,7 @@ public final class PluginHelper {
 
     try {
       Job job = model.retrieveJob(jobId);
-      model.createOrUpdateJobReport(report, job);
+      createOrUpdateJobReport(model, report, job);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error creating Job Report", e);
     }
@@ -334,10 +335,10 @@ public final class PluginHelper {
     AIPState newState) {
     try {
       String jobId = getJobId(plugin);
-      Report jobReport = model.retrieveJobReport(jobId, aipId, true);
+      Report jobReport = retrieveJobReport(model, jobId, aipId);
       jobReport.setOutcomeObjectState(newState);
       Job job = model.retrieveJob(jobId);
-      model.createOrUpdateJobReport(jobReport, job);
+      createOrUpdateJobReport(model, jobReport, job);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
@@ -350,7 +351,7 @@ public final class PluginHelper {
     try {
       Report jobReport;
       try {
-        jobReport = model.retrieveJobReport(jobId, reportItem.getOutcomeObjectId(), true);
+        jobReport = retrieveJobReport(model, jobId, reportItem.getOutcomeObjectId());
       } catch (NotFoundException e) {
         jobReport = initPluginReportItem(plugin, reportItem.getOutcomeObjectId(), reportItem.getSourceObjectId())
           .setSourceObjectClass(reportItem.getSourceObjectClass())
@@ -376,7 +377,7 @@ public final class PluginHelper {
         }
       }
 
-      model.createOrUpdateJobReport(jobReport, cachedJob);
+      createOrUpdateJobReport(model, jobReport, cachedJob);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
@@ -385,12 +386,44 @@ public final class PluginHelper {
   private static void updateJobReport(ModelService model, Report report) {
     try {
       Job job = model.retrieveJob(report.getJobId());
-      model.createOrUpdateJobReport(report, job);
+      createOrUpdateJobReport(model, report, job);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
   }
 
+  /**
+   * Retrieves the job report of an object, taking into account the changes not
+   * yet written to storage if the job reports of the job are being accumulated
+   * (see {@link JobReportAccumulator})
+   */
+  public static Report retrieveJobReport(ModelService model, String jobId, String objectId)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    JobReportAccumulator accumulator = JobReportAccumulator.get(jobId);
+    Report jobReport = null;
+    if (accumulator != null) {
+      jobReport = accumulator.retrieve(IdUtils.getJobReportId(jobId, objectId));
+    }
+    if (jobReport == null) {
+      jobReport = model.retrieveJobReport(jobId, objectId, true);
+    }
+    return jobReport;
+  }
+
+  /**
+   * Creates/updates the job report, either directly in storage & index or, if
+   * the job reports of the job are being accumulated, in the accumulator (that
+   * will later write it)
+   */
+  public static void createOrUpdateJobReport(ModelService model, Report jobReport, Job job) throws GenericException {
+    JobReportAccumulator accumulator = JobReportAccumulator.get(jobReport.getJobId());
+    if (accumulator != null) {
+      accumulator.update(jobReport, job);
+    } else {
+      model.createOrUpdateJobReport(jobReport, job);
+    }
+  }
+
   /***************** Job related *****************/
   /***********************************************/
   public static <T extends IsRODAObject> String getJobId(Plugin<T> plugin) {
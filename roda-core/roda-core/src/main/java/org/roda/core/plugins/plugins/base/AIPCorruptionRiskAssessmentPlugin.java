@@ -67,7 +67,7 @@ import org.roda.core.plugins.orchestrate.SimpleJobPluginInfo;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.StorageService;
-import org.roda.core.util.FileUtility;
+import org.roda.core.storage.fs.FSUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -174,8 +174,7 @@ public class AIPCorruptionRiskAssessmentPlugin extends AbstractPlugin<AIP> {
 
                 // calculate hashes
                 try {
-                  Map<String, String> checksums = FileUtility
-                    .checksums(currentFileBinary.getContent().createInputStream(), algorithms);
+                  Map<String, String> checksums = FSUtils.generateContentDigest(currentFileBinary, algorithms);
 
                   for (Fixity f : fixities) {
                     String checksum = checksums.get(f.getMessageDigestAlgorithm());
@@ -13,6 +13,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,7 +39,6 @@ import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSUtils;
-import org.roda.core.util.FileUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -125,7 +125,7 @@ public class InventoryReportPluginUtils {
           try {
             StoragePath descriptiveMetadataStoragePath = ModelUtils.getDescriptiveMetadataStoragePath(dm);
             Binary descriptiveMetadataBinary = storage.getBinary(descriptiveMetadataStoragePath);
-            fixities = FileUtility.checksums(descriptiveMetadataBinary.getContent().createInputStream(),
+            fixities = FSUtils.generateContentDigest(descriptiveMetadataBinary,
               InventoryReportPlugin.CHECKSUM_ALGORITHMS);
           } catch (IOException | GenericException | RequestNotValidException | NotFoundException
             | AuthorizationDeniedException | NoSuchAlgorithmException e) {
@@ -153,6 +153,7 @@ public class InventoryReportPluginUtils {
 
     List<String> fileInfo = new ArrayList<>();
     List<Fixity> fixities = null;
+    Map<String, String> calculatedFixities = null;
 
     for (String fieldName : fields) {
       if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_SIP_ID)) {
@@ -179,7 +180,15 @@ public class InventoryReportPluginUtils {
           }
 
           if (fixities != null) {
-            fileInfo.add(getFixity(fieldName, fixities, file, storage));
+            String fixity = getFixity(fieldName, fixities);
+            if (StringUtils.isBlank(fixity)) {
+              // calculate all missing checksums at once, reading the file once
+              if (calculatedFixities == null) {
+                calculatedFixities = calculateFixities(fields, file, storage);
+              }
+              fixity = calculatedFixities.getOrDefault(fieldName, "");
+            }
+            fileInfo.add(fixity);
           } else {
             fileInfo.add("");
           }
@@ -194,7 +203,7 @@ public class InventoryReportPluginUtils {
     return fileInfo;
   }
 
-  private static String getFixity(String fixityAlgorithm, List<Fixity> fixities, File file, StorageService storage) {
+  private static String getFixity(String fixityAlgorithm, List<Fixity> fixities) {
     String fixity = "";
     if (fixities != null && !fixities.isEmpty()) {
       for (Fixity f : fixities) {
@@ -204,16 +213,26 @@ public class InventoryReportPluginUtils {
         }
       }
     }
-    if (StringUtils.isBlank(fixity)) {
-      try {
-        Binary binary = storage.getBinary(ModelUtils.getFileStoragePath(file));
-        fixity = FileUtility.checksum(binary.getContent().createInputStream(), fixityAlgorithm);
-      } catch (NoSuchAlgorithmException | IOException | GenericException | RequestNotValidException | NotFoundException
-        | AuthorizationDeniedException e) {
-        fixity = "";
+    return fixity;
+  }
+
+  private static Map<String, String> calculateFixities(List<String> fields, File file, StorageService storage) {
+    List<String> algorithms = new ArrayList<>();
+    for (String fieldName : fields) {
+      if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(fieldName.toUpperCase())) {
+        algorithms.add(fieldName);
       }
     }
-    return fixity;
+
+    Map<String, String> calculatedFixities;
+    try {
+      Binary binary = storage.getBinary(ModelUtils.getFileStoragePath(file));
+      calculatedFixities = FSUtils.generateContentDigest(binary, algorithms);
+    } catch (NoSuchAlgorithmException | IOException | GenericException | RequestNotValidException | NotFoundException
+      | AuthorizationDeniedException e) {
+      calculatedFixities = new HashMap<>();
+    }
+    return calculatedFixities;
   }
 
   public static List<List<String>> getOtherMetadataInformation(List<String> fields, String otherMetadataType, AIP aip,
@@ -260,8 +279,7 @@ public class InventoryReportPluginUtils {
             Binary otherMetadataBinary = storage.getBinary(ModelUtils.getOtherMetadataStoragePath(
               otherMetadata.getAipId(), otherMetadata.getRepresentationId(), otherMetadata.getFileDirectoryPath(),
               otherMetadata.getFileId(), otherMetadata.getFileSuffix(), otherMetadata.getType()));
-            fixities = FileUtility.checksums(otherMetadataBinary.getContent().createInputStream(),
-              InventoryReportPlugin.CHECKSUM_ALGORITHMS);
+            fixities = FSUtils.generateContentDigest(otherMetadataBinary, InventoryReportPlugin.CHECKSUM_ALGORITHMS);
           } catch (IOException | GenericException | RequestNotValidException | NotFoundException
             | AuthorizationDeniedException | NoSuchAlgorithmException e) {
             LOGGER.error(
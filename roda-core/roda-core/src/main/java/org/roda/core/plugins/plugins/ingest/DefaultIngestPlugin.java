@@ -244,6 +244,9 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
 
       // 10) Auto accept
       if (!aips.isEmpty()) {
+        // make the documents of the new AIPs searchable (once per block) so
+        // that the AIP state change reaches all of them
+        commitAIPs(index);
         if (PluginHelper.verifyIfStepShouldBePerformed(this,
           getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_AUTO_ACCEPT))) {
           pluginReport = doAutoAccept(index, model, storage, aips);
@@ -605,6 +608,14 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
     return executePlugin(index, model, storage, aips, RodaConstants.PLUGIN_CLASS_TIKA_FULLTEXT, params);
   }
 
+  private void commitAIPs(IndexService index) {
+    try {
+      index.commitAIPs();
+    } catch (GenericException e) {
+      LOGGER.warn("Could not commit the AIPs index before changing their state", e);
+    }
+  }
+
   private Report doAutoAccept(IndexService index, ModelService model, StorageService storage, List<AIP> aips) {
     return executePlugin(index, model, storage, aips, AutoAcceptSIPPlugin.class.getName());
   }
@@ -65,16 +65,17 @@ public class EARKSIPToAIPPluginUtils {
       processIPRepresentationInformation(model, representation, aip.getId(), notify, false);
     }
 
-    model.notifyAipCreated(aip.getId());
-
     AIP createdAIP = model.retrieveAIP(aip.getId());
 
-    // Set Permissions
+    // Set Permissions (before indexing the AIP, so that all its documents are
+    // indexed with them)
     Permissions readPermissions = PermissionUtils.grantReadPermissionToUserGroup(model, createdAIP,
       aip.getPermissions());
     Permissions finalPermissions = PermissionUtils.grantAllPermissions(username, readPermissions, fullPermissions);
     createdAIP.setPermissions(finalPermissions);
-    model.updateAIP(createdAIP, username);
+    model.updateAIP(createdAIP, username, notify);
+
+    model.notifyAipCreated(aip.getId());
 
     return model.retrieveAIP(aip.getId());
   }
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.MetadataFileUtils;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.InvalidParameterException;
@@ -58,6 +59,7 @@ public class TransferredResourceToAIPPlugin extends SIPToAIPPlugin {
   private static final String UNPACK_DESCRIPTION = "Extracted objects from package in file/folder format.";
 
   private boolean createSubmission = false;
+  private boolean moveTransferredResources = false;
   private Optional<String> computedSearchScope;
 
   @Override
@@ -105,6 +107,15 @@ public class TransferredResourceToAIPPlugin extends SIPToAIPPlugin {
   public Report execute(IndexService index, ModelService model, StorageService storage,
     List<LiteOptionalWithCause> liteList) throws PluginException {
     computedSearchScope = PluginHelper.getSearchScopeFromParameters(this, model);
+    moveTransferredResources = RodaCoreFactory.getRodaConfiguration()
+      .getBoolean("core.ingest.sip2aip.move_transferred_resources", false);
+    if (moveTransferredResources
+      && RodaCoreFactory.getRodaConfiguration().getBoolean("core.ingest.processed.move_when_autoaccept", false)) {
+      // transferred resources must still exist to be moved after auto accept
+      LOGGER.warn("Transferred resources are copied (not moved) into the storage because they are moved to the "
+        + "processed folder after auto accept");
+      moveTransferredResources = false;
+    }
 
     return PluginHelper.processObjects(this, new RODAObjectProcessingLogic<TransferredResource>() {
       @Override
@@ -149,7 +160,7 @@ public class TransferredResourceToAIPPlugin extends SIPToAIPPlugin {
       if (transferredResource.isFile()) {
         String fileId = transferredResource.getName();
         List<String> directoryPath = new ArrayList<>();
-        ContentPayload payload = new FSPathContentPayload(transferredResourcePath);
+        ContentPayload payload = new FSPathContentPayload(transferredResourcePath, moveTransferredResources);
         boolean notifyFileCreated = false;
 
         model.createFile(aip.getId(), representationId, directoryPath, fileId, payload, notifyFileCreated);
@@ -199,7 +210,7 @@ public class TransferredResourceToAIPPlugin extends SIPToAIPPlugin {
         String fileId = file.getFileName().toString();
         List<String> directoryPath = extractDirectoryPath(transferredResourcePath, file);
         try {
-          ContentPayload payload = new FSPathContentPayload(file);
+          ContentPayload payload = new FSPathContentPayload(file, moveTransferredResources);
           boolean notifyFileCreated = false;
           model.createFile(aip.getId(), representationId, directoryPath, fileId, payload, notifyFileCreated);
         } catch (RODAException e) {
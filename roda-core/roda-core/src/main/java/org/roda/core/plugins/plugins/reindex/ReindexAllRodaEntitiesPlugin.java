@@ -7,6 +7,7 @@
  */
 package org.roda.core.plugins.plugins.reindex;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -14,6 +15,8 @@ import java.util.Map;
 
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.v2.IsRODAObject;
@@ -24,12 +27,15 @@ import org.roda.core.data.v2.index.select.SelectedItemsNone;
 import org.roda.core.data.v2.ip.TransferredResource;
 import org.roda.core.data.v2.ip.metadata.IndexedPreservationAgent;
 import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginParameter;
+import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
 import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.data.v2.jobs.Report;
 import org.roda.core.data.v2.jobs.Report.PluginState;
 import org.roda.core.data.v2.log.LogEntry;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.ShadowIndexBuilder;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.AbstractPlugin;
 import org.roda.core.plugins.Plugin;
@@ -44,6 +50,16 @@ import org.slf4j.LoggerFactory;
 
 public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
   private static final Logger LOGGER = LoggerFactory.getLogger(ReindexAllRodaEntitiesPlugin.class);
+  private boolean rebuildInShadowIndexes = false;
+
+  private static Map<String, PluginParameter> pluginParameters = new HashMap<>();
+  static {
+    pluginParameters.put(RodaConstants.PLUGIN_PARAMS_REBUILD_IN_SHADOW_INDEXES,
+      new PluginParameter(RodaConstants.PLUGIN_PARAMS_REBUILD_IN_SHADOW_INDEXES, "Rebuild in shadow indexes",
+        PluginParameterType.BOOLEAN, "false", false, false,
+        "Rebuild indexes next to the current ones and switch to them in the end, so that the current ones can be used "
+          + "meanwhile (only available with embedded Solr and SolrCloud)."));
+  }
 
   @Override
   public void init() throws PluginException {
@@ -72,22 +88,56 @@ public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
     return "1.0";
   }
 
+  @Override
+  public List<PluginParameter> getParameters() {
+    ArrayList<PluginParameter> parameters = new ArrayList<>();
+    parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_REBUILD_IN_SHADOW_INDEXES));
+    return parameters;
+  }
+
+  @Override
+  public void setParameterValues(Map<String, String> parameters) throws InvalidParameterException {
+    super.setParameterValues(parameters);
+    if (parameters != null && parameters.containsKey(RodaConstants.PLUGIN_PARAMS_REBUILD_IN_SHADOW_INDEXES)) {
+      rebuildInShadowIndexes = Boolean
+        .parseBoolean(parameters.get(RodaConstants.PLUGIN_PARAMS_REBUILD_IN_SHADOW_INDEXES));
+    }
+  }
+
   @Override
   public Report execute(IndexService index, ModelService model, StorageService storage,
     List<LiteOptionalWithCause> list) throws PluginException {
     final List<Class<? extends IsRODAObject>> classes = PluginHelper.getReindexObjectClasses();
     classes.remove(Job.class);
+
+    final List<Class<? extends IsRODAObject>> shadowClasses = new ArrayList<>();
+    if (rebuildInShadowIndexes) {
+      if (ShadowIndexBuilder.isSupported(index.getSolrClient())) {
+        shadowClasses.addAll(ShadowIndexBuilder.getSupportedClasses(classes));
+        classes.removeAll(shadowClasses);
+      } else {
+        LOGGER.warn("Rebuilding in shadow indexes is not supported by the Solr in use, reindexing in place");
+      }
+    }
+
     return PluginHelper.processVoids(this, new RODAProcessingLogic<Void>() {
       @Override
       public void process(IndexService index, ModelService model, StorageService storage, Report report, Job cachedJob,
         SimpleJobPluginInfo jobPluginInfo, Plugin<Void> plugin) {
-        reindexAll(model, report, jobPluginInfo, cachedJob, classes);
+        reindexAll(index, model, report, jobPluginInfo, cachedJob, classes, shadowClasses);
       }
-    }, index, model, storage, classes.size());
+    }, index, model, storage, classes.size() + shadowClasses.size());
   }
 
-  private void reindexAll(ModelService model, Report pluginReport, SimpleJobPluginInfo jobPluginInfo, Job job,
-    List<Class<? extends IsRODAObject>> classes) {
+  private void reindexAll(IndexService index, ModelService model, Report pluginReport,
+    SimpleJobPluginInfo jobPluginInfo, Job job, List<Class<? extends IsRODAObject>> classes,
+    List<Class<? extends IsRODAObject>> shadowClasses) {
+
+    if (!shadowClasses.isEmpty()) {
+      Report reportItem = rebuildInShadowIndexes(index, model, shadowClasses, jobPluginInfo);
+      pluginReport.addReport(reportItem);
+      PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+    }
 
     for (Class<? extends IsRODAObject> reindexClass : classes) {
       Report reportItem = reindexRODAObject(model, reindexClass, jobPluginInfo);
@@ -100,6 +150,26 @@ public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
     pluginReport.setPluginState(PluginState.SUCCESS);
   }
 
+  private Report rebuildInShadowIndexes(IndexService index, ModelService model,
+    List<Class<? extends IsRODAObject>> shadowClasses, SimpleJobPluginInfo jobPluginInfo) {
+    LOGGER.debug("Rebuilding indexes of {} in shadow indexes", shadowClasses);
+    Report report = PluginHelper.initPluginReportItem(this, IdUtils.createUUID(), Void.class);
+
+    try {
+      new ShadowIndexBuilder(index.getSolrClient(), model).rebuild(shadowClasses);
+      jobPluginInfo.incrementObjectsProcessedWithSuccess(shadowClasses.size());
+      report.setPluginState(PluginState.SUCCESS).setPluginDetails("Indexes rebuilt in shadow indexes");
+    } catch (GenericException e) {
+      // live indexes were kept as they were
+      LOGGER.error("Error rebuilding indexes in shadow indexes", e);
+      jobPluginInfo.incrementObjectsProcessedWithFailure(shadowClasses.size());
+      report.setPluginState(PluginState.FAILURE)
+        .setPluginDetails("Could not rebuild indexes in shadow indexes, current indexes were kept: " + e.getMessage());
+    }
+
+    return report;
+  }
+
   private Report reindexRODAObject(ModelService model, Class<? extends IsRODAObject> reindexClass,
     SimpleJobPluginInfo jobPluginInfo) {
     LOGGER.debug("Creating job to reindexing all {}", reindexClass.getSimpleName());
@@ -12,6 +12,9 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Path;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
 /**
  * Interface to keep information on how to access the contents of a binary file.
  * 
@@ -28,6 +31,33 @@ public interface ContentPayload {
    */
   public InputStream createInputStream() throws IOException;
 
+  /**
+   * Create a new inputstream over a range of the content, that should be
+   * explicitly closed after being consumed. By default, the content before the
+   * range is read and skipped, so implementations that can start reading at
+   * any position should override this method.
+   * 
+   * @param offset
+   *          position of the first byte of the range
+   * @param length
+   *          maximum number of bytes of the range (the stream ends earlier if
+   *          the content ends before the end of the range)
+   * @return
+   */
+  public default InputStream createInputStream(long offset, long length) throws IOException {
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid range (offset " + offset + ", length " + length + ")");
+    }
+    InputStream inputStream = createInputStream();
+    try {
+      IOUtils.skip(inputStream, offset);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(inputStream);
+      throw e;
+    }
+    return new BoundedInputStream(inputStream, length);
+  }
+
   /**
    * Write the current stream to the specified file path.
    * 
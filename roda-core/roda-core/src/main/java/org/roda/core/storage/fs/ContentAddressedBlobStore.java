@@ -0,0 +1,222 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store of binary contents (blobs) addressed by their digest, each one kept
+ * only once no matter how many binaries have that content. Binaries are hard
+ * links to their blob, so the number of links of a blob (kept by the file
+ * system) is its reference count: moving a binary to the trash keeps the blob
+ * alive and blobs whose only link is the one in this store can be deleted (see
+ * {@link #deleteUnreferencedBlobs()}).
+ *
+ * Blobs must never be changed in place, i.e. binaries are always updated by
+ * replacing their link (see {@link #store(ContentPayload, Path)}).
+ */
+public class ContentAddressedBlobStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedBlobStore.class);
+
+  public static final String DIGEST_ALGORITHM = RodaConstants.SHA256;
+  private static final String TEMPORARY_FOLDER = "tmp";
+  private static final String TEMPORARY_SUFFIX = ".temp";
+  private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+
+  private final Path blobsPath;
+  private final Path temporaryPath;
+  // blobs must not be deleted while new links to them are being created
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean linksSupported = true;
+
+  public ContentAddressedBlobStore(Path blobsPath) throws GenericException {
+    this.blobsPath = blobsPath;
+    this.temporaryPath = blobsPath.resolve(TEMPORARY_FOLDER);
+    try {
+      Files.createDirectories(temporaryPath);
+    } catch (IOException e) {
+      throw new GenericException("Could not create blob store at " + blobsPath, e);
+    }
+  }
+
+  /**
+   * Makes the target path have the content of the payload, storing the content
+   * only if there is no blob with the same digest yet (content of a file with
+   * a known digest is not even copied)
+   *
+   * @return the digest of the content
+   */
+  public String store(ContentPayload payload, Path target) throws IOException, GenericException {
+    if (payload instanceof FSPathContentPayload) {
+      String digest = FSUtils.computeContentDigest(((FSPathContentPayload) payload).getPath(), DIGEST_ALGORITHM);
+      if (linkToExistingBlob(digest, target)) {
+        return digest;
+      }
+    }
+
+    Path temporaryFile = Files.createTempFile(temporaryPath, "blob", TEMPORARY_SUFFIX);
+    try {
+      payload.writeToPath(temporaryFile);
+      String digest = FSUtils.computeContentDigest(temporaryFile, DIGEST_ALGORITHM);
+      lock.readLock().lock();
+      try {
+        Path blob = getBlobPath(digest);
+        if (!Files.exists(blob)) {
+          Files.createDirectories(blob.getParent());
+          try {
+            Files.move(temporaryFile, blob, StandardCopyOption.ATOMIC_MOVE);
+          } catch (FileAlreadyExistsException e) {
+            // stored meanwhile by someone else
+          }
+        }
+        link(blob, target);
+      } finally {
+        lock.readLock().unlock();
+      }
+      return digest;
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  private boolean linkToExistingBlob(String digest, Path target) throws IOException {
+    lock.readLock().lock();
+    try {
+      Path blob = getBlobPath(digest);
+      if (Files.exists(blob)) {
+        link(blob, target);
+        return true;
+      } else {
+        return false;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Makes the target path share the content of the source path (e.g. a binary
+   * being copied), without copying it
+   */
+  public void share(Path source, Path target, boolean replaceExisting) throws IOException {
+    if (!replaceExisting && Files.exists(target)) {
+      throw new FileAlreadyExistsException(target.toString());
+    }
+    lock.readLock().lock();
+    try {
+      link(source, target);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Creates a hard link to the source on the target path (replacing it
+   * atomically if it exists) or, if the file system does not support it,
+   * copies the source. The link (or copy) is first created in the temporary
+   * folder of this store, so that it is never seen next to the target (nor
+   * left there if something fails), and then moved to the target.
+   */
+  private void link(Path source, Path target) throws IOException {
+    Path temporaryLink = temporaryPath.resolve(IdUtils.createUUID() + TEMPORARY_SUFFIX);
+    try {
+      boolean linked = false;
+      if (linksSupported) {
+        try {
+          Files.createLink(temporaryLink, source);
+          linked = true;
+        } catch (UnsupportedOperationException e) {
+          LOGGER.warn("Hard links are not supported, contents will be copied instead", e);
+          linksSupported = false;
+        } catch (IOException e) {
+          // e.g. source and target in different file systems
+          LOGGER.debug("Could not create hard link to {}, copying it instead", source, e);
+        }
+      }
+      if (!linked) {
+        Files.copy(source, temporaryLink);
+      }
+      try {
+        Files.move(temporaryLink, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        // target is not in the same file system as this store
+        moveThroughSibling(temporaryLink, target);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryLink);
+    }
+  }
+
+  private void moveThroughSibling(Path temporaryLink, Path target) throws IOException {
+    Path sibling = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX + System.nanoTime());
+    try {
+      Files.move(temporaryLink, sibling);
+      Files.move(sibling, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(sibling);
+    }
+  }
+
+  private Path getBlobPath(String digest) {
+    return blobsPath.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+  }
+
+  /**
+   * Deletes the blobs that are no longer referenced by any binary (including
+   * the ones in the trash)
+   *
+   * @return the number of blobs deleted
+   */
+  public long deleteUnreferencedBlobs() throws GenericException {
+    AtomicLong deleted = new AtomicLong(0);
+    lock.writeLock().lock();
+    try {
+      Files.walkFileTree(blobsPath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          return temporaryPath.equals(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Object linkCount = Files.getAttribute(file, LINK_COUNT_ATTRIBUTE);
+          if (linkCount instanceof Number && ((Number) linkCount).intValue() <= 1) {
+            Files.delete(file);
+            deleted.incrementAndGet();
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+      throw new GenericException("Error deleting unreferenced blobs from " + blobsPath, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    LOGGER.info("Deleted {} unreferenced blobs from {}", deleted.get(), blobsPath);
+    return deleted.get();
+  }
+
+}
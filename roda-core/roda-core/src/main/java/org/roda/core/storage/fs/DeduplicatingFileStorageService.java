@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.ContentPayload;
+
+/**
+ * File System storage service that keeps each distinct binary content only
+ * once, in a {@link ContentAddressedBlobStore}, being the binaries (with the
+ * same folder structure of {@link FileStorageService}) hard links to their
+ * content.
+ *
+ * <p>
+ * Creating a binary whose content is already stored, copying binaries (e.g.
+ * into a new representation or a DIP) and creating binary versions do not copy
+ * any content. Deleted binaries are moved to the trash, as in
+ * {@link FileStorageService}, and their content is only deleted when no binary
+ * (in the storage, in the history or in the trash) refers to it anymore (see
+ * {@link #deleteUnreferencedBlobs()}).
+ * </p>
+ */
+public class DeduplicatingFileStorageService extends FileStorageService {
+
+  public static final String BLOBS_SUFFIX = "-blobs";
+
+  private final ContentAddressedBlobStore blobStore;
+
+  public DeduplicatingFileStorageService(Path basePath, String trashDirName) throws GenericException {
+    super(basePath, trashDirName);
+    blobStore = new ContentAddressedBlobStore(basePath.resolveSibling(basePath.getFileName() + BLOBS_SUFFIX));
+  }
+
+  public DeduplicatingFileStorageService(Path basePath) throws GenericException {
+    this(basePath, null);
+  }
+
+  @Override
+  protected void writeBinary(ContentPayload payload, Path binaryPath) throws IOException {
+    try {
+      blobStore.store(payload, binaryPath);
+    } catch (GenericException e) {
+      throw new IOException("Could not store content of " + binaryPath, e);
+    }
+  }
+
+  @Override
+  protected void copyBinary(Path sourcePath, Path targetPath, boolean replaceExisting) throws IOException {
+    blobStore.share(sourcePath, targetPath, replaceExisting);
+  }
+
+  @Override
+  protected void copyPath(final Path sourcePath, final Path targetPath)
+    throws AlreadyExistsException, GenericException {
+    if (FSUtils.exists(targetPath)) {
+      throw new AlreadyExistsException("Cannot copy because target path already exists: " + targetPath);
+    }
+
+    try {
+      Files.createDirectories(targetPath.getParent());
+      if (FSUtils.isDirectory(sourcePath)) {
+        Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+            Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+            blobStore.share(file, targetPath.resolve(sourcePath.relativize(file)), false);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } else {
+        blobStore.share(sourcePath, targetPath, false);
+      }
+    } catch (IOException e) {
+      throw new GenericException("Error while copying from " + sourcePath + " to " + targetPath, e);
+    }
+  }
+
+  /**
+   * Deletes the contents no longer referenced by any binary (e.g. after the
+   * trash is emptied)
+   *
+   * @return the number of contents deleted
+   */
+  public long deleteUnreferencedBlobs() throws GenericException {
+    return blobStore.deleteUnreferencedBlobs();
+  }
+
+}
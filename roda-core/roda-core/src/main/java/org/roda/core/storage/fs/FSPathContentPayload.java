@@ -10,10 +10,15 @@ package org.roda.core.storage.fs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.roda.core.storage.ContentPayload;
 
 /**
@@ -24,9 +29,22 @@ import org.roda.core.storage.ContentPayload;
 public class FSPathContentPayload implements ContentPayload {
 
   private final Path path;
+  private final boolean moveOnWrite;
 
   public FSPathContentPayload(Path path) {
+    this(path, false);
+  }
+
+  /**
+   * @param moveOnWrite
+   *          if true, the file is moved (instead of copied) when written to
+   *          another path, which takes no time if both are in the same file
+   *          system (symbolic links are always copied, i.e. the file they
+   *          point to is copied)
+   */
+  public FSPathContentPayload(Path path, boolean moveOnWrite) {
     this.path = path;
+    this.moveOnWrite = moveOnWrite;
   }
 
   @Override
@@ -34,9 +52,33 @@ public class FSPathContentPayload implements ContentPayload {
     return Files.newInputStream(path);
   }
 
+  @Override
+  public InputStream createInputStream(long offset, long length) throws IOException {
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid range (offset " + offset + ", length " + length + ")");
+    }
+    // starts reading at the offset, without reading what is before it
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      channel.position(offset);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return new BoundedInputStream(Channels.newInputStream(channel), length);
+  }
+
   @Override
   public void writeToPath(Path outPath) throws IOException {
-    Files.copy(path, outPath, StandardCopyOption.REPLACE_EXISTING);
+    if (moveOnWrite && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+      Files.move(path, outPath, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      FSUtils.copyFile(path, outPath, true);
+    }
+  }
+
+  public Path getPath() {
+    return path;
   }
 
   @Override
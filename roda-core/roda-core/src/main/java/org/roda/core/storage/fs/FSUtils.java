@@ -9,30 +9,40 @@ package org.roda.core.storage.fs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -72,6 +82,9 @@ public final class FSUtils {
   private static final String SEPARATOR = "/";
   private static final String SEPARATOR_REGEX = "/";
   private static final String SEPARATOR_REPLACEMENT = "%2F";
+  private static final int DIGEST_BUFFER_SIZE = 1048576;
+  private static final ThreadLocal<ByteBuffer> DIGEST_BUFFER = ThreadLocal
+    .withInitial(() -> ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE));
 
   /**
    * Private empty constructor
@@ -249,7 +262,7 @@ public final class FSUtils {
 
           @Override
           public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-            Files.copy(file, targetPath.resolve(sourcePath.relativize(file)));
+            copyFile(file, targetPath.resolve(sourcePath.relativize(file)), false);
             return FileVisitResult.CONTINUE;
           }
         });
@@ -258,10 +271,7 @@ public final class FSUtils {
       }
     } else {
       try {
-
-        CopyOption[] copyOptions = replaceExisting ? new CopyOption[] {StandardCopyOption.REPLACE_EXISTING}
-          : new CopyOption[] {};
-        Files.copy(sourcePath, targetPath, copyOptions);
+        copyFile(sourcePath, targetPath, replaceExisting);
       } catch (IOException e) {
         throw new GenericException("Error while copying one file into another", e);
       }
@@ -270,6 +280,66 @@ public final class FSUtils {
 
   }
 
+  /**
+   * Copies a file to another path, letting the kernel transfer the bytes from
+   * one file to the other (i.e. without going through user space buffers). The
+   * bytes are written to a temporary file, next to the target, that is then
+   * moved over the target, so the target is never seen partially written and,
+   * if it is a hard link (e.g. deduplicated storage), the other links to it are
+   * left untouched.
+   * 
+   * @param sourcePath
+   *          source file
+   * @param targetPath
+   *          target file
+   * @param replaceExisting
+   *          true if the target file should be replaced if it already exists;
+   *          false otherwise
+   * @throws FileAlreadyExistsException
+   *           if the target file exists and should not be replaced
+   * @throws IOException
+   *           if an error occurs while copying (e.g. the source file was
+   *           truncated meanwhile)
+   */
+  public static void copyFile(final Path sourcePath, final Path targetPath, boolean replaceExisting)
+    throws IOException {
+    if (Files.exists(targetPath, LinkOption.NOFOLLOW_LINKS)) {
+      if (!replaceExisting) {
+        throw new FileAlreadyExistsException(targetPath.toString());
+      } else if (Files.isSameFile(sourcePath, targetPath)) {
+        return;
+      }
+    }
+
+    Path tempPath = targetPath.resolveSibling(targetPath.getFileName().toString() + ".temp" + System.nanoTime());
+    try {
+      try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ);
+        FileChannel target = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+          long transferred = source.transferTo(position, size - position, target);
+          if (transferred <= 0) {
+            break;
+          }
+          position += transferred;
+        }
+        if (position < size) {
+          throw new IOException("Could only copy " + position + " of " + size + " bytes from " + sourcePath
+            + " (was it truncated meanwhile?)");
+        }
+      }
+
+      if (replaceExisting) {
+        Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } else {
+        Files.move(tempPath, targetPath);
+      }
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
   public static void deletePathQuietly(Path path) {
     try {
       deletePath(path);
@@ -477,76 +547,60 @@ public final class FSUtils {
   }
 
   public static Long recursivelyCountPath(Path directoryPath) throws NotFoundException, GenericException {
-    // starting at -1 because the walk counts the directory itself
-    Long count = -1L;
-    try (Stream<Path> walk = Files.walk(directoryPath)) {
-      final Iterator<Path> pathIterator = walk.iterator();
-      while (pathIterator.hasNext()) {
-        count++;
-        pathIterator.next();
-      }
+    try {
+      return ParallelDirectoryWalker.count(directoryPath, false);
     } catch (NoSuchFileException e) {
       throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + directoryPath);
     } catch (IOException e) {
       throw new GenericException("Could not list contents of entity at: " + directoryPath, e);
     }
-
-    return count;
   }
 
   public static CloseableIterable<Resource> recursivelyListPath(final Path basePath, final Path path)
     throws NotFoundException, GenericException {
-    CloseableIterable<Resource> resourceIterable;
+    final ParallelDirectoryWalker.WalkIterator entryIterator;
     try {
-      final Stream<Path> walk = Files.walk(path, FileVisitOption.FOLLOW_LINKS);
-      final Iterator<Path> pathIterator = walk.iterator();
-
-      // skip root
-      if (pathIterator.hasNext()) {
-        pathIterator.next();
-      }
-
-      resourceIterable = new CloseableIterable<Resource>() {
+      // entries are streamed as the tree is walked
+      entryIterator = ParallelDirectoryWalker.iterate(path, true);
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + path, e);
+    } catch (IOException e) {
+      throw new GenericException("Could not list contents of entity at: " + path, e);
+    }
 
-        @Override
-        public Iterator<Resource> iterator() {
-          return new Iterator<Resource>() {
+    return new CloseableIterable<Resource>() {
 
-            @Override
-            public boolean hasNext() {
-              return pathIterator.hasNext();
-            }
+      @Override
+      public Iterator<Resource> iterator() {
+        return new Iterator<Resource>() {
 
-            @Override
-            public Resource next() {
-              Path next = pathIterator.next();
-              Resource ret;
-              try {
-                ret = convertPathToResource(basePath, next);
-              } catch (GenericException | NotFoundException | RequestNotValidException e) {
-                LOGGER.error("Error while list path " + basePath + " while parsing resource " + next, e);
-                ret = null;
-              }
+          @Override
+          public boolean hasNext() {
+            return entryIterator.hasNext();
+          }
 
-              return ret;
+          @Override
+          public Resource next() {
+            ParallelDirectoryWalker.WalkEntry next = entryIterator.next();
+            Resource ret;
+            try {
+              ret = convertPathToResource(basePath, next.getPath(), next.getAttributes());
+            } catch (RequestNotValidException e) {
+              LOGGER.error("Error while list path " + basePath + " while parsing resource " + next.getPath(), e);
+              ret = null;
             }
 
-          };
-        }
-
-        @Override
-        public void close() throws IOException {
-          walk.close();
-        }
-      };
+            return ret;
+          }
 
-    } catch (NoSuchFileException e) {
-      throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + path, e);
-    } catch (IOException e) {
-      throw new GenericException("Could not list contents of entity at: " + path, e);
-    }
+        };
+      }
 
-    return resourceIterable;
+      @Override
+      public void close() throws IOException {
+        entryIterator.close();
+      }
+    };
   }
 
   /**
@@ -615,30 +669,45 @@ public final class FSUtils {
    */
   public static Resource convertPathToResource(Path basePath, Path path)
     throws RequestNotValidException, NotFoundException, GenericException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Cannot find file or directory at " + path);
+    } catch (IOException e) {
+      throw new GenericException("Could not get file attributes", e);
+    }
+    return convertPathToResource(basePath, path, attributes);
+  }
+
+  /**
+   * Converts a path into a resource, using the already known attributes of the
+   * path instead of reading them again
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @param attributes
+   *          attributes of the path
+   * @throws RequestNotValidException
+   */
+  public static Resource convertPathToResource(Path basePath, Path path, BasicFileAttributes attributes)
+    throws RequestNotValidException {
     Resource resource;
 
     // TODO support binary reference
 
-    if (!FSUtils.exists(path)) {
-      throw new NotFoundException("Cannot find file or directory at " + path);
-    }
-
     // storage path
     StoragePath storagePath = FSUtils.getStoragePath(basePath, path);
 
     // construct
-    if (FSUtils.isDirectory(path)) {
+    if (attributes.isDirectory()) {
       resource = new DefaultDirectory(storagePath);
     } else {
       ContentPayload content = new FSPathContentPayload(path);
-      long sizeInBytes;
-      try {
-        sizeInBytes = Files.size(path);
-        Map<String, String> contentDigest = null;
-        resource = new DefaultBinary(storagePath, content, sizeInBytes, false, contentDigest);
-      } catch (IOException e) {
-        throw new GenericException("Could not get file size", e);
-      }
+      Map<String, String> contentDigest = null;
+      resource = new DefaultBinary(storagePath, content, attributes.size(), false, contentDigest);
     }
     return resource;
   }
@@ -724,39 +793,7 @@ public final class FSUtils {
   }
 
   public static String computeContentDigest(Path path, String algorithm) throws GenericException {
-    try (FileChannel fc = FileChannel.open(path)) {
-      final int bufferSize = 1073741824;
-      final long size = fc.size();
-      final MessageDigest hash = MessageDigest.getInstance(algorithm);
-      long position = 0;
-      while (position < size) {
-        final MappedByteBuffer data = fc.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, bufferSize));
-        if (!data.isLoaded()) {
-          data.load();
-        }
-        hash.update(data);
-        position += data.limit();
-        if (position >= size) {
-          break;
-        }
-      }
-
-      byte[] mdbytes = hash.digest();
-      StringBuilder hexString = new StringBuilder();
-
-      for (int i = 0; i < mdbytes.length; i++) {
-        String hexInt = Integer.toHexString((0xFF & mdbytes[i]));
-        if (hexInt.length() == 1) {
-          hexString.append('0');
-        }
-        hexString.append(hexInt);
-      }
-
-      return hexString.toString();
-
-    } catch (NoSuchAlgorithmException | IOException e) {
-      throw new GenericException("Cannot compute content digest for " + path + " using algorithm " + algorithm);
-    }
+    return generateContentDigest(path, Arrays.asList(algorithm)).get(algorithm);
   }
 
   /**
@@ -767,16 +804,128 @@ public final class FSUtils {
    * @throws GenericException
    */
   public static Map<String, String> generateContentDigest(Path path, String... algorithms) throws GenericException {
-    Map<String, String> digests = new HashMap<>();
+    return generateContentDigest(path, Arrays.asList(algorithms));
+  }
+
+  /**
+   * Method for computing one or more file content digests (a.k.a. hash's),
+   * reading the file only once independently of the number of algorithms
+   * 
+   * @param path
+   *          file which digests will be computed
+   * @param algorithms
+   *          any algorithm supported by the installed security providers (e.g.
+   *          MD5, SHA-1, SHA-256)
+   * @throws GenericException
+   */
+  public static Map<String, String> generateContentDigest(Path path, Collection<String> algorithms)
+    throws GenericException {
+    try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+      return generateContentDigest(fc, algorithms);
+    } catch (NoSuchAlgorithmException | IOException e) {
+      throw new GenericException(
+        "Cannot compute content digest for " + path + " using algorithms " + algorithms + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Computes one or more content digests of a binary, reading its content only
+   * once. If the binary content is available in the file system, the file is
+   * read directly.
+   */
+  public static Map<String, String> generateContentDigest(Binary binary, Collection<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    ContentPayload content = binary.getContent();
+    if (content instanceof FSPathContentPayload) {
+      try (FileChannel fc = FileChannel.open(((FSPathContentPayload) content).getPath(), StandardOpenOption.READ)) {
+        return generateContentDigest(fc, algorithms);
+      }
+    } else {
+      try (InputStream inputStream = content.createInputStream();
+        ReadableByteChannel channel = Channels.newChannel(inputStream)) {
+        return generateContentDigest(channel, algorithms);
+      }
+    }
+  }
 
+  /**
+   * Computes one or more content digests of the channel content, updating all
+   * digests with each block read (using a bounded direct buffer) so that the
+   * content is read only once.
+   */
+  public static Map<String, String> generateContentDigest(ReadableByteChannel channel, Collection<String> algorithms)
+    throws IOException, NoSuchAlgorithmException {
+    Map<String, MessageDigest> digestors = new LinkedHashMap<>();
     for (String algorithm : algorithms) {
-      String digest = computeContentDigest(path, algorithm);
-      digests.put(algorithm, digest);
+      digestors.put(algorithm, MessageDigest.getInstance(algorithm));
+    }
+
+    ByteBuffer buffer = DIGEST_BUFFER.get();
+    buffer.clear();
+    while (channel.read(buffer) != -1) {
+      buffer.flip();
+      for (MessageDigest digestor : digestors.values()) {
+        buffer.mark();
+        digestor.update(buffer);
+        buffer.reset();
+      }
+      buffer.clear();
     }
 
+    Map<String, String> digests = new HashMap<>();
+    for (Entry<String, MessageDigest> entry : digestors.entrySet()) {
+      digests.put(entry.getKey(), toHexString(entry.getValue().digest()));
+    }
     return digests;
   }
 
+  /**
+   * Computes the content digests of several files, hashing different files in
+   * parallel (each one is read only once)
+   * 
+   * @param parallelism
+   *          max number of files being hashed at the same time
+   * @throws GenericException
+   */
+  public static Map<Path, Map<String, String>> generateContentDigests(Collection<Path> paths,
+    Collection<String> algorithms, int parallelism) throws GenericException {
+    Map<Path, Map<String, String>> ret = new HashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, paths.size())));
+    try {
+      Map<Path, Future<Map<String, String>>> futures = new LinkedHashMap<>();
+      for (Path path : paths) {
+        futures.put(path, executor.submit(() -> generateContentDigest(path, algorithms)));
+      }
+
+      for (Entry<Path, Future<Map<String, String>>> entry : futures.entrySet()) {
+        ret.put(entry.getKey(), entry.getValue().get());
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GenericException) {
+        throw (GenericException) e.getCause();
+      }
+      throw new GenericException("Cannot compute content digests", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while computing content digests", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    return ret;
+  }
+
+  private static String toHexString(byte[] mdbytes) {
+    StringBuilder hexString = new StringBuilder();
+    for (int i = 0; i < mdbytes.length; i++) {
+      String hexInt = Integer.toHexString((0xFF & mdbytes[i]));
+      if (hexInt.length() == 1) {
+        hexString.append('0');
+      }
+      hexString.append(hexInt);
+    }
+    return hexString.toString();
+  }
+
   public static Path createRandomDirectory(Path parent) throws IOException {
     Path directory;
     do {
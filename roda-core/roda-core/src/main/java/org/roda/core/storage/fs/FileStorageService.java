@@ -13,7 +13,6 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
@@ -318,7 +317,7 @@ public class FileStorageService implements StorageService {
           }
 
           // writing file
-          payload.writeToPath(binPath);
+          writeBinary(payload, binPath);
           ContentPayload newPayload = new FSPathContentPayload(binPath);
           Long sizeInBytes = Files.size(binPath);
           boolean isReference = false;
@@ -351,7 +350,7 @@ public class FileStorageService implements StorageService {
         Path binPath = FSUtils.createRandomFile(parent);
 
         // writing file
-        payload.writeToPath(binPath);
+        writeBinary(payload, binPath);
         StoragePath storagePath = FSUtils.getStoragePath(basePath, binPath);
         ContentPayload newPayload = new FSPathContentPayload(binPath);
         Long sizeInBytes = Files.size(binPath);
@@ -381,7 +380,7 @@ public class FileStorageService implements StorageService {
         throw new GenericException("Looking for a binary but found something else");
       } else {
         try {
-          payload.writeToPath(binaryPath);
+          writeBinary(payload, binaryPath);
         } catch (IOException e) {
           throw new GenericException("Could not update binary content", e);
         }
@@ -421,6 +420,28 @@ public class FileStorageService implements StorageService {
     return FSUtils.getEntityPath(basePath, storagePath);
   }
 
+  /**
+   * Writes the content of a binary to its path (sub-classes may change how the
+   * content is kept, as long as it can be read from that path)
+   */
+  protected void writeBinary(ContentPayload payload, Path binaryPath) throws IOException {
+    payload.writeToPath(binaryPath);
+  }
+
+  /**
+   * Copies the file of a binary (e.g. to and from its history)
+   */
+  protected void copyBinary(Path sourcePath, Path targetPath, boolean replaceExisting) throws IOException {
+    FSUtils.copyFile(sourcePath, targetPath, replaceExisting);
+  }
+
+  /**
+   * Copies a directory/file of this storage to another path of this storage
+   */
+  protected void copyPath(Path sourcePath, Path targetPath) throws AlreadyExistsException, GenericException {
+    FSUtils.copy(sourcePath, targetPath, false);
+  }
+
   @Override
   public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
@@ -428,7 +449,7 @@ public class FileStorageService implements StorageService {
     if (fromService instanceof FileStorageService) {
       Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
       Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
-      FSUtils.copy(sourcePath, targetPath, false);
+      copyPath(sourcePath, targetPath);
 
     } else {
       Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
@@ -590,7 +611,7 @@ public class FileStorageService implements StorageService {
       }
 
       // writing file
-      Files.copy(binPath, dataPath);
+      copyBinary(binPath, dataPath, false);
 
       // Creating metadata
       DefaultBinaryVersion b = new DefaultBinaryVersion();
@@ -627,7 +648,7 @@ public class FileStorageService implements StorageService {
 
     try {
       // writing file
-      Files.copy(binVersionPath, binPath, StandardCopyOption.REPLACE_EXISTING);
+      copyBinary(binVersionPath, binPath, true);
     } catch (IOException e) {
       throw new GenericException("Could not create binary", e);
     }
@@ -0,0 +1,442 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Append-only file that packs many small binaries (entries), each one
+ * identified by a name (e.g. a path relative to the folder of the pack file).
+ *
+ * <p>
+ * Each record of the file has the length of the entry name, the name (UTF-8),
+ * the length of the content (or -1 if the entry was deleted), the content and
+ * the CRC32 of all of the above. Writing or deleting an entry appends a new
+ * record (forced to disk before returning), so the index of the entries (name
+ * to content offset and length) is rebuilt by reading the records in order.
+ * When the records that are no longer used take most of the file, the file is
+ * compacted (i.e. rewritten with the entries in use only).
+ * </p>
+ *
+ * <p>
+ * A record at the end of the file that is incomplete or does not match its CRC
+ * (e.g. RODA stopped while appending it) is ignored and only removed by the
+ * next write. Any other record that cannot be read makes the pack file
+ * unusable (an exception is thrown) instead of being silently dropped.
+ * </p>
+ *
+ * <p>
+ * All operations over the same file are serialized (also between different
+ * instances for the same file) and the index is rebuilt whenever the file is
+ * changed outside this instance (e.g. moved to the trash).
+ * </p>
+ */
+public class PackFile {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PackFile.class);
+
+  private static final int DELETED = -1;
+  // entry names are paths inside an AIP, so anything longer is not a name
+  private static final int MAX_NAME_LENGTH = 4096;
+  private static final String COMPACT_SUFFIX = ".compact";
+  // the file is only compacted if it would shrink at least this much
+  private static final long MIN_BYTES_TO_RECLAIM = 65536;
+  private static final Striped<Lock> LOCKS = Striped.lock(256);
+
+  private final Path path;
+  private final SortedMap<String, Entry> entries = new TreeMap<>();
+  private long knownSize = -1;
+  // end of the last valid record (where the next one is appended)
+  private long validSize = 0;
+  private Object knownFileKey = null;
+  private long unusedBytes = 0;
+
+  public PackFile(Path path) {
+    this.path = path;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * @return the content of the entry
+   * @throws NoSuchFileException
+   *           if there is no such entry
+   */
+  public byte[] read(String name) throws IOException {
+    Lock lock = LOCKS.get(path);
+    lock.lock();
+    try {
+      refresh();
+      Entry entry = entries.get(name);
+      if (entry == null) {
+        throw new NoSuchFileException(path + "!" + name);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        readFully(channel, buffer, entry.offset);
+      }
+      return buffer.array();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the size of the entry or null if there is no such entry
+   */
+  public Integer getSize(String name) throws IOException {
+    Lock lock = LOCKS.get(path);
+    lock.lock();
+    try {
+      refresh();
+      Entry entry = entries.get(name);
+      return entry != null ? entry.length : null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the names and sizes of the entries whose name is the given one or
+   *         starts with the given prefix followed by a '/' (all entries if the
+   *         prefix is empty)
+   */
+  public Map<String, Integer> list(String prefix) throws IOException {
+    Lock lock = LOCKS.get(path);
+    lock.lock();
+    try {
+      refresh();
+      Map<String, Integer> ret = new TreeMap<>();
+      Map<String, Entry> candidates = prefix.isEmpty() ? entries : entries.tailMap(prefix);
+      for (Map.Entry<String, Entry> entry : candidates.entrySet()) {
+        String name = entry.getKey();
+        if (prefix.isEmpty() || name.startsWith(prefix + "/") || name.equals(prefix)) {
+          ret.put(name, entry.getValue().length);
+        } else if (!name.startsWith(prefix)) {
+          break;
+        }
+      }
+      return ret;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes (or replaces) the content of the entry
+   */
+  public void write(String name, byte[] content) throws IOException {
+    Lock lock = LOCKS.get(path);
+    lock.lock();
+    try {
+      refresh();
+      long contentOffset = append(name, content);
+      Entry previous = entries.put(name, new Entry(contentOffset, content.length));
+      if (previous != null) {
+        unusedBytes += recordLength(name, previous.length);
+      }
+      compactIfWorthIt();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Deletes the entry
+   *
+   * @return true if the entry existed
+   */
+  public boolean delete(String name) throws IOException {
+    Lock lock = LOCKS.get(path);
+    lock.lock();
+    try {
+      refresh();
+      Entry previous = entries.remove(name);
+      if (previous != null) {
+        if (entries.isEmpty()) {
+          Files.deleteIfExists(path);
+          forget();
+        } else {
+          append(name, null);
+          unusedBytes += recordLength(name, previous.length) + recordLength(name, 0);
+          compactIfWorthIt();
+        }
+      }
+      return previous != null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends a record (after the last valid one), which must be done holding
+   * the lock of the file
+   *
+   * @return the offset of the content of the record
+   */
+  private long append(String name, byte[] content) throws IOException {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = toRecord(nameBytes, content);
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      if (channel.size() > validSize) {
+        // the last record was not completely written (e.g. RODA stopped)
+        LOGGER.warn("Discarding incomplete record at the end of pack file {} (offset {})", path, validSize);
+        channel.truncate(validSize);
+      }
+      long recordOffset = validSize;
+      long position = recordOffset;
+      while (record.hasRemaining()) {
+        position += channel.write(record, position);
+      }
+      channel.force(true);
+      validSize = position;
+      knownSize = channel.size();
+      knownFileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+      return recordOffset + Integer.BYTES + nameBytes.length + Integer.BYTES;
+    }
+  }
+
+  private static ByteBuffer toRecord(byte[] nameBytes, byte[] content) {
+    int contentLength = content != null ? content.length : 0;
+    ByteBuffer record = ByteBuffer.allocate(recordLength(nameBytes.length, contentLength));
+    record.putInt(nameBytes.length);
+    record.put(nameBytes);
+    record.putInt(content != null ? content.length : DELETED);
+    if (content != null) {
+      record.put(content);
+    }
+    record.putInt(crc(record.array(), record.position()));
+    record.flip();
+    return record;
+  }
+
+  private static int crc(byte[] bytes, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, length);
+    return (int) crc.getValue();
+  }
+
+  private static int recordLength(String name, int contentLength) {
+    return recordLength(name.getBytes(StandardCharsets.UTF_8).length, contentLength);
+  }
+
+  private static int recordLength(int nameLength, int contentLength) {
+    return Integer.BYTES + nameLength + Integer.BYTES + contentLength + Integer.BYTES;
+  }
+
+  /**
+   * Rebuilds the index if the file is not the one last read or written by this
+   * instance. The file is only read, never changed.
+   *
+   * @throws IOException
+   *           if a record other than the last one is not valid
+   */
+  private void refresh() throws IOException {
+    if (!Files.exists(path)) {
+      forget();
+      return;
+    }
+
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    if (attributes.size() == knownSize && Objects.equals(attributes.fileKey(), knownFileKey)) {
+      return;
+    }
+
+    forget();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        long nextPosition = readRecord(channel, position, size);
+        if (nextPosition < 0) {
+          LOGGER.warn("Ignoring incomplete record at the end of pack file {} (offset {})", path, position);
+          break;
+        }
+        position = nextPosition;
+      }
+      validSize = position;
+      knownSize = size;
+    } catch (IOException e) {
+      forget();
+      throw e;
+    }
+    knownFileKey = attributes.fileKey();
+  }
+
+  /**
+   * Reads the record at the given position, adding it to the index
+   *
+   * @return the position of the next record or -1 if the record is the last
+   *         one of the file and it is incomplete or does not match its CRC
+   * @throws IOException
+   *           if the record is not valid and is not the last one
+   */
+  private long readRecord(FileChannel channel, long position, long size) throws IOException {
+    if (size - position < Integer.BYTES + Integer.BYTES) {
+      return -1;
+    }
+    ByteBuffer intBuffer = ByteBuffer.allocate(Integer.BYTES);
+    int nameLength = readInt(channel, intBuffer, position);
+    if (nameLength == 0 && isZeroFrom(channel, position, size)) {
+      // the file grew but the record was never written
+      return -1;
+    } else if (nameLength <= 0 || nameLength > MAX_NAME_LENGTH) {
+      return checkLastRecord(position, position + Integer.BYTES, size);
+    }
+
+    long contentLengthOffset = position + Integer.BYTES + nameLength;
+    if (contentLengthOffset + Integer.BYTES > size) {
+      return -1;
+    }
+    int contentLength = readInt(channel, intBuffer, contentLengthOffset);
+    if (contentLength < DELETED) {
+      return checkLastRecord(position, contentLengthOffset + Integer.BYTES, size);
+    }
+    if (contentLengthOffset + Integer.BYTES + Math.max(0, contentLength) + Integer.BYTES > size) {
+      return -1;
+    }
+    int recordLength = recordLength(nameLength, Math.max(0, contentLength));
+
+    ByteBuffer record = ByteBuffer.allocate(recordLength);
+    readFully(channel, record, position);
+    int crcOffset = recordLength - Integer.BYTES;
+    if (record.getInt(crcOffset) != crc(record.array(), crcOffset)) {
+      return checkLastRecord(position, position + recordLength, size);
+    }
+
+    String name = new String(record.array(), Integer.BYTES, nameLength, StandardCharsets.UTF_8);
+    Entry previous = contentLength == DELETED ? entries.remove(name)
+      : entries.put(name, new Entry(contentLengthOffset + Integer.BYTES, contentLength));
+    if (previous != null) {
+      unusedBytes += recordLength(name, previous.length);
+    }
+    if (contentLength == DELETED) {
+      unusedBytes += recordLength(name, 0);
+    }
+    return position + recordLength;
+  }
+
+  /**
+   * @return -1 if the invalid record is the last one of the file (i.e. it was
+   *         not completely written)
+   * @throws IOException
+   *           if there is more data after the invalid record
+   */
+  private long checkLastRecord(long position, long recordEnd, long size) throws IOException {
+    if (recordEnd < size) {
+      throw new IOException("Pack file " + path + " is corrupted (invalid record at offset " + position + ")");
+    }
+    return -1;
+  }
+
+  private static boolean isZeroFrom(FileChannel channel, long position, long size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    long currentPosition = position;
+    while (currentPosition < size) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), size - currentPosition));
+      readFully(channel, buffer, currentPosition);
+      for (int i = 0; i < buffer.limit(); i++) {
+        if (buffer.get(i) != 0) {
+          return false;
+        }
+      }
+      currentPosition += buffer.limit();
+    }
+    return true;
+  }
+
+  private void forget() {
+    entries.clear();
+    unusedBytes = 0;
+    validSize = 0;
+    knownSize = -1;
+    knownFileKey = null;
+  }
+
+  private void compactIfWorthIt() throws IOException {
+    if (unusedBytes < MIN_BYTES_TO_RECLAIM || unusedBytes * 2 < knownSize) {
+      return;
+    }
+
+    LOGGER.debug("Compacting pack file {} ({} of {} bytes unused)", path, unusedBytes, knownSize);
+    Path compactPath = path.resolveSibling(path.getFileName() + COMPACT_SUFFIX);
+    List<String> names = new ArrayList<>(entries.keySet());
+    try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+      FileChannel target = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      for (String name : names) {
+        Entry entry = entries.get(name);
+        ByteBuffer content = ByteBuffer.allocate(entry.length);
+        readFully(source, content, entry.offset);
+        ByteBuffer record = toRecord(name.getBytes(StandardCharsets.UTF_8), content.array());
+        while (record.hasRemaining()) {
+          target.write(record);
+        }
+      }
+      target.force(true);
+    }
+    Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    // offsets changed, so the index is rebuilt
+    forget();
+    refresh();
+  }
+
+  private static int readInt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    buffer.clear();
+    readFully(channel, buffer, position);
+    return buffer.getInt(0);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long currentPosition = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, currentPosition);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      currentPosition += read;
+    }
+  }
+
+  private static class Entry {
+    private final long offset;
+    private final int length;
+
+    public Entry(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+}
@@ -0,0 +1,444 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.Entity;
+import org.roda.core.storage.InputStreamContentPayload;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterators;
+
+/**
+ * File System storage service that keeps the small metadata binaries of each
+ * AIP (e.g. aip.json, PREMIS files or characterization outputs under a
+ * metadata folder) packed in a single {@link PackFile}, in the AIP folder,
+ * instead of one file each.
+ *
+ * <p>
+ * Packed binaries are listed, counted and retrieved as any other binary. They
+ * are written back as plain files (unpacked) before being deleted (so they go
+ * to the trash), moved or copied from inside an AIP, versioned or directly
+ * accessed; a whole AIP is moved or copied with its pack file.
+ * </p>
+ */
+public class PackedFileStorageService extends FileStorageService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PackedFileStorageService.class);
+
+  public static final String PACK_FILE_NAME = ".metadata.pack";
+  public static final int DEFAULT_MAX_PACKED_BINARY_SIZE = 65536;
+  private static final String ENTRY_SEPARATOR = "/";
+  private static final int PACK_FILE_CACHE_SIZE = 1000;
+
+  private final int maxPackedBinarySize;
+  // pack files of the AIPs used lately, so their indexes are not rebuilt on
+  // every operation (each one still checks if the file changed meanwhile)
+  private final Cache<Path, PackFile> packFiles = CacheBuilder.newBuilder().maximumSize(PACK_FILE_CACHE_SIZE)
+    .build();
+
+  public PackedFileStorageService(Path basePath, String trashDirName, int maxPackedBinarySize)
+    throws GenericException {
+    super(basePath, trashDirName);
+    this.maxPackedBinarySize = maxPackedBinarySize;
+  }
+
+  public PackedFileStorageService(Path basePath) throws GenericException {
+    this(basePath, null, DEFAULT_MAX_PACKED_BINARY_SIZE);
+  }
+
+  /**
+   * @return true if the binary can be packed (i.e. it is the AIP metadata file
+   *         or it is under the metadata folder of an AIP or of one of its
+   *         representations)
+   */
+  private static boolean isPackable(StoragePath storagePath) {
+    if (!RodaConstants.STORAGE_CONTAINER_AIP.equals(storagePath.getContainerName())) {
+      return false;
+    }
+    List<String> directoryPath = storagePath.getDirectoryPath();
+    if (directoryPath.size() == 1) {
+      return RodaConstants.STORAGE_AIP_METADATA_FILENAME.equals(storagePath.getName());
+    } else if (directoryPath.size() >= 4
+      && RodaConstants.STORAGE_DIRECTORY_REPRESENTATIONS.equals(directoryPath.get(1))) {
+      return RodaConstants.STORAGE_DIRECTORY_METADATA.equals(directoryPath.get(3));
+    } else {
+      return directoryPath.size() >= 2 && RodaConstants.STORAGE_DIRECTORY_METADATA.equals(directoryPath.get(1));
+    }
+  }
+
+  /**
+   * @return true if the path is under (and not) the folder of an AIP
+   */
+  private static boolean isInsideAIP(StoragePath storagePath) {
+    return RodaConstants.STORAGE_CONTAINER_AIP.equals(storagePath.getContainerName())
+      && storagePath.asList().size() > 2;
+  }
+
+  /**
+   * @return true if the path is the folder of an AIP or under it
+   */
+  private static boolean isAIPOrInsideAIP(StoragePath storagePath) {
+    return RodaConstants.STORAGE_CONTAINER_AIP.equals(storagePath.getContainerName())
+      && storagePath.asList().size() > 1;
+  }
+
+  /**
+   * @return true if the path is the one of the pack file of an AIP
+   */
+  private static boolean isPackFile(StoragePath storagePath) {
+    return RodaConstants.STORAGE_CONTAINER_AIP.equals(storagePath.getContainerName())
+      && storagePath.asList().size() == 3 && PACK_FILE_NAME.equals(storagePath.getName());
+  }
+
+  private PackFile getPackFile(StoragePath storagePath) throws RequestNotValidException {
+    Path packFilePath = resolve(getAIPStoragePath(storagePath)).resolve(PACK_FILE_NAME);
+    return packFiles.asMap().computeIfAbsent(packFilePath, PackFile::new);
+  }
+
+  /**
+   * Forgets the pack files at or under the storage path (e.g. of an AIP that
+   * was deleted, moved or replaced)
+   */
+  private void invalidatePackFiles(StoragePath storagePath) {
+    Path path = resolve(storagePath);
+    packFiles.asMap().keySet().removeIf(packFilePath -> packFilePath.startsWith(path));
+  }
+
+  private static StoragePath getAIPStoragePath(StoragePath storagePath) throws RequestNotValidException {
+    return DefaultStoragePath.parse(storagePath.asList().subList(0, 2));
+  }
+
+  /**
+   * @return the name of the entry of the binary (or of the prefix of the
+   *         entries under the folder) in the pack file of its AIP
+   */
+  private static String getEntryName(StoragePath storagePath) {
+    List<String> path = storagePath.asList();
+    return StringUtils.join(path.subList(2, path.size()), ENTRY_SEPARATOR);
+  }
+
+  private static StoragePath getEntryStoragePath(StoragePath aipStoragePath, String entryName)
+    throws RequestNotValidException {
+    List<String> path = new ArrayList<>(aipStoragePath.asList());
+    Collections.addAll(path, entryName.split(ENTRY_SEPARATOR));
+    return DefaultStoragePath.parse(path);
+  }
+
+  private Binary getPackedBinary(PackFile packFile, StoragePath storagePath, String entryName, long sizeInBytes) {
+    ContentPayload content = new InputStreamContentPayload(
+      () -> new ByteArrayInputStream(packFile.read(entryName)));
+    return new DefaultBinary(storagePath, content, sizeInBytes, false, null);
+  }
+
+  /**
+   * @return the content of the payload or null if it is bigger than the max
+   *         size of a packed binary
+   */
+  private byte[] readIfSmall(ContentPayload payload) throws IOException {
+    try (InputStream inputStream = payload.createInputStream()) {
+      byte[] buffer = new byte[maxPackedBinarySize + 1];
+      int read = IOUtils.read(inputStream, buffer);
+      return read <= maxPackedBinarySize ? Arrays.copyOf(buffer, read) : null;
+    }
+  }
+
+  private Binary writePacked(StoragePath storagePath, byte[] content) throws IOException, RequestNotValidException {
+    Files.createDirectories(resolve(storagePath).getParent());
+    PackFile packFile = getPackFile(storagePath);
+    packFile.write(getEntryName(storagePath), content);
+    return getPackedBinary(packFile, storagePath, getEntryName(storagePath), content.length);
+  }
+
+  private boolean isPacked(StoragePath storagePath) throws IOException, RequestNotValidException {
+    return isInsideAIP(storagePath) && getPackFile(storagePath).getSize(getEntryName(storagePath)) != null;
+  }
+
+  /**
+   * Writes back as plain files the packed binaries at or under the storage
+   * path (so that they can be handled as any other file)
+   */
+  private void unpack(StoragePath storagePath, boolean includingAIP) throws GenericException {
+    if (!(isInsideAIP(storagePath) || (includingAIP && isAIPOrInsideAIP(storagePath)))) {
+      return;
+    }
+
+    try {
+      PackFile packFile = getPackFile(storagePath);
+      for (String entryName : packFile.list(getEntryName(storagePath)).keySet()) {
+        Path filePath = resolve(getEntryStoragePath(getAIPStoragePath(storagePath), entryName));
+        Files.createDirectories(filePath.getParent());
+        FSUtils.safeUpdate(new ByteArrayInputStream(packFile.read(entryName)), filePath);
+        packFile.delete(entryName);
+      }
+    } catch (IOException | RequestNotValidException e) {
+      throw new GenericException("Could not unpack binaries under " + storagePath, e);
+    }
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException {
+    if (!asReference && isPackable(storagePath) && !FSUtils.exists(resolve(storagePath))) {
+      try {
+        if (isPacked(storagePath)) {
+          throw new AlreadyExistsException("Binary already exists: " + storagePath);
+        }
+        byte[] content = readIfSmall(payload);
+        if (content != null) {
+          return writePacked(storagePath, content);
+        }
+      } catch (IOException | RequestNotValidException e) {
+        throw new GenericException("Could not create binary", e);
+      }
+    }
+    return super.createBinary(storagePath, payload, asReference);
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists) throws GenericException, NotFoundException, RequestNotValidException {
+    if (!asReference && isPackable(storagePath) && !FSUtils.exists(resolve(storagePath))) {
+      try {
+        boolean packed = isPacked(storagePath);
+        if (!packed && !createIfNotExists) {
+          throw new NotFoundException("Binary does not exist: " + storagePath);
+        }
+        byte[] content = readIfSmall(payload);
+        if (content != null) {
+          return writePacked(storagePath, content);
+        } else if (packed) {
+          // it no longer fits in the pack
+          getPackFile(storagePath).delete(getEntryName(storagePath));
+        }
+      } catch (IOException e) {
+        throw new GenericException("Could not update binary content", e);
+      }
+      return super.updateBinaryContent(storagePath, payload, asReference, true);
+    }
+    return super.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+  }
+
+  @Override
+  public Binary getBinary(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    try {
+      return super.getBinary(storagePath);
+    } catch (NotFoundException e) {
+      if (isInsideAIP(storagePath)) {
+        try {
+          PackFile packFile = getPackFile(storagePath);
+          Integer size = packFile.getSize(getEntryName(storagePath));
+          if (size != null) {
+            return getPackedBinary(packFile, storagePath, getEntryName(storagePath), size);
+          }
+        } catch (IOException e1) {
+          throw new GenericException("Could not get binary " + storagePath, e1);
+        }
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public Class<? extends Entity> getEntity(StoragePath storagePath) throws NotFoundException {
+    try {
+      return super.getEntity(storagePath);
+    } catch (NotFoundException e) {
+      try {
+        if (isPacked(storagePath)) {
+          return DefaultBinary.class;
+        }
+      } catch (IOException | RequestNotValidException e1) {
+        LOGGER.warn("Could not look for packed binary {}", storagePath, e1);
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return withPackedBinaries(storagePath, super.listResourcesUnderContainer(storagePath, recursive), recursive);
+  }
+
+  @Override
+  public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return count(listResourcesUnderContainer(storagePath, recursive));
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return withPackedBinaries(storagePath, super.listResourcesUnderDirectory(storagePath, recursive), recursive);
+  }
+
+  @Override
+  public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return count(listResourcesUnderDirectory(storagePath, recursive));
+  }
+
+  private static Long count(CloseableIterable<Resource> resources) {
+    try {
+      return (long) Iterators.size(resources.iterator());
+    } finally {
+      IOUtils.closeQuietly(resources);
+    }
+  }
+
+  /**
+   * Replaces the pack files found while listing by the binaries packed in them
+   * and adds the packed binaries directly under (or, if recursive, anywhere
+   * under) the listed folder of an AIP
+   */
+  private CloseableIterable<Resource> withPackedBinaries(StoragePath storagePath,
+    CloseableIterable<Resource> resources, boolean recursive) throws GenericException {
+    List<Resource> packedInFolder = new ArrayList<>();
+    if (isAIPOrInsideAIP(storagePath) && (!recursive || isInsideAIP(storagePath))) {
+      try {
+        PackFile packFile = getPackFile(storagePath);
+        String prefix = getEntryName(storagePath);
+        for (Entry<String, Integer> entry : packFile.list(prefix).entrySet()) {
+          String relativeName = prefix.isEmpty() ? entry.getKey() : entry.getKey().substring(prefix.length() + 1);
+          if (recursive || !relativeName.contains(ENTRY_SEPARATOR)) {
+            packedInFolder.add(getPackedBinary(packFile,
+              getEntryStoragePath(getAIPStoragePath(storagePath), entry.getKey()), entry.getKey(), entry.getValue()));
+          }
+        }
+      } catch (IOException | RequestNotValidException e) {
+        IOUtils.closeQuietly(resources);
+        throw new GenericException("Could not list packed binaries under " + storagePath, e);
+      }
+    }
+
+    return new CloseableIterable<Resource>() {
+      @Override
+      public Iterator<Resource> iterator() {
+        Iterator<Iterator<Resource>> expanded = Iterators.transform(resources.iterator(), resource -> {
+          if (resource != null && isPackFile(resource.getStoragePath())) {
+            return recursive ? listPackFile(resource.getStoragePath()) : Collections.emptyIterator();
+          } else {
+            return Collections.singletonList(resource).iterator();
+          }
+        });
+        return Iterators.concat(Iterators.concat(expanded), packedInFolder.iterator());
+      }
+
+      @Override
+      public void close() throws IOException {
+        resources.close();
+      }
+    };
+  }
+
+  private Iterator<Resource> listPackFile(StoragePath packFileStoragePath) {
+    List<Resource> packed = new ArrayList<>();
+    try {
+      StoragePath aipStoragePath = getAIPStoragePath(packFileStoragePath);
+      PackFile packFile = getPackFile(aipStoragePath);
+      for (Entry<String, Integer> entry : packFile.list("").entrySet()) {
+        packed.add(getPackedBinary(packFile, getEntryStoragePath(aipStoragePath, entry.getKey()), entry.getKey(),
+          entry.getValue()));
+      }
+    } catch (IOException | RequestNotValidException e) {
+      LOGGER.error("Error while listing packed binaries of {}", packFileStoragePath, e);
+    }
+    return packed.iterator();
+  }
+
+  @Override
+  public void deleteResource(StoragePath storagePath) throws NotFoundException, GenericException {
+    unpack(storagePath, false);
+    super.deleteResource(storagePath);
+    invalidatePackFiles(storagePath);
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    if (fromService instanceof PackedFileStorageService) {
+      ((PackedFileStorageService) fromService).unpack(fromStoragePath, false);
+    }
+    super.copy(fromService, fromStoragePath, toStoragePath);
+    invalidatePackFiles(toStoragePath);
+  }
+
+  @Override
+  public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    if (fromService instanceof PackedFileStorageService) {
+      ((PackedFileStorageService) fromService).unpack(fromStoragePath, false);
+    }
+    super.move(fromService, fromStoragePath, toStoragePath);
+    if (fromService instanceof PackedFileStorageService) {
+      ((PackedFileStorageService) fromService).invalidatePackFiles(fromStoragePath);
+    }
+    invalidatePackFiles(toStoragePath);
+  }
+
+  @Override
+  public DirectResourceAccess getDirectAccess(StoragePath storagePath) {
+    try {
+      unpack(storagePath, true);
+    } catch (GenericException e) {
+      LOGGER.error("Could not unpack binaries for direct access to {}", storagePath, e);
+    }
+    return super.getDirectAccess(storagePath);
+  }
+
+  @Override
+  public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    unpack(storagePath, false);
+    return super.createBinaryVersion(storagePath, properties);
+  }
+
+  @Override
+  public void revertBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    unpack(storagePath, false);
+    super.revertBinaryVersion(storagePath, version);
+  }
+
+}
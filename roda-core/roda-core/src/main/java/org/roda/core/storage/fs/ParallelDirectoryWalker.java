@@ -0,0 +1,417 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Walks a directory tree listing its directories in parallel, which pays off
+ * on file systems where each operation has a high latency (e.g. network file
+ * systems). The attributes of each entry are read only once and returned with
+ * it, so callers do not need to check again if it is a directory or what is
+ * its size.
+ *
+ * Entries are streamed (see {@link #iterate(Path, boolean)}): while they are
+ * consumed, the next subdirectories are already being listed, but no more than
+ * a bounded number of entries is kept waiting to be consumed.
+ */
+public final class ParallelDirectoryWalker {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelDirectoryWalker.class);
+
+  // most of the time is spent waiting for the file system, not computing
+  private static final ForkJoinPool POOL = new ForkJoinPool(
+    Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+  // threads that put the entries of each walk in order, which are daemon
+  // threads so that a walk never left to stop does not keep RODA from exiting
+  private static final ExecutorService PRODUCERS = Executors
+    .newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("directory-walker-%d").build());
+
+  // max number of subdirectories of a directory being listed ahead
+  private static final int PREFETCHED_DIRECTORIES = 8;
+  // max number of entries listed and not yet consumed
+  private static final int QUEUE_SIZE = 1000;
+  private static final long POLL_TIMEOUT_IN_MILLIS = 100;
+
+  private ParallelDirectoryWalker() {
+    // do nothing
+  }
+
+  /**
+   * Lists all entries under a directory (not including the directory itself),
+   * each directory being followed by the entries under it
+   *
+   * @param directory
+   *          directory to walk
+   * @param followLinks
+   *          true if symbolic links should be followed (links that would make
+   *          the walk go round in circles are not); false otherwise
+   * @return the entries under the directory or an empty list if the path is not
+   *         a directory
+   * @throws java.nio.file.NoSuchFileException
+   *           if the directory does not exist
+   * @throws IOException
+   */
+  public static List<WalkEntry> walk(Path directory, boolean followLinks) throws IOException {
+    List<WalkEntry> entries = new ArrayList<>();
+    try (WalkIterator iterator = iterate(directory, followLinks)) {
+      iterator.forEachRemaining(entries::add);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return entries;
+  }
+
+  /**
+   * Streams all entries under a directory (not including the directory
+   * itself), each directory being followed by the entries under it. The
+   * iterator must be closed if it is not consumed until the end (otherwise the
+   * walk only stops once the iterator is garbage collected).
+   *
+   * @param directory
+   *          directory to walk
+   * @param followLinks
+   *          true if symbolic links should be followed (links that would make
+   *          the walk go round in circles are not); false otherwise
+   * @return iterator over the entries under the directory (empty if the path is
+   *         not a directory), which throws {@link UncheckedIOException} if a
+   *         subdirectory cannot be listed
+   * @throws java.nio.file.NoSuchFileException
+   *           if the directory does not exist
+   * @throws IOException
+   */
+  public static WalkIterator iterate(Path directory, boolean followLinks) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class,
+      linkOptions(followLinks));
+    WalkIterator iterator = new WalkIterator(followLinks);
+    if (attributes.isDirectory()) {
+      iterator.walk.start(directory, ancestorKeysOf(Collections.emptySet(), attributes));
+    } else {
+      iterator.walk.queue.add(Walk.END);
+    }
+    return iterator;
+  }
+
+  /**
+   * Counts all entries under a directory (not including the directory itself)
+   * without keeping them
+   *
+   * @return the number of entries under the directory or 0 if the path is not
+   *         a directory
+   * @throws java.nio.file.NoSuchFileException
+   *           if the directory does not exist
+   * @throws IOException
+   */
+  public static long count(Path directory, boolean followLinks) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class,
+      linkOptions(followLinks));
+    if (!attributes.isDirectory()) {
+      return 0;
+    }
+
+    try {
+      return POOL.invoke(new CountTask(directory, ancestorKeysOf(Collections.emptySet(), attributes), followLinks));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static LinkOption[] linkOptions(boolean followLinks) {
+    return followLinks ? new LinkOption[] {} : new LinkOption[] {LinkOption.NOFOLLOW_LINKS};
+  }
+
+  private static List<WalkEntry> list(Path directory, boolean followLinks) throws IOException {
+    List<WalkEntry> children = new ArrayList<>();
+    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+      for (Path child : directoryStream) {
+        children.add(new WalkEntry(child, readAttributes(child, followLinks)));
+      }
+    }
+    return children;
+  }
+
+  private static BasicFileAttributes readAttributes(Path path, boolean followLinks) throws IOException {
+    if (followLinks) {
+      try {
+        return Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (IOException e) {
+        // e.g. broken link, whose own attributes are used instead
+        LOGGER.trace("Could not follow link {}", path, e);
+      }
+    }
+    return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+  }
+
+  private static Set<Object> ancestorKeysOf(Set<Object> parentAncestorKeys, BasicFileAttributes attributes) {
+    Set<Object> ancestorKeys = new HashSet<>(parentAncestorKeys);
+    if (attributes.fileKey() != null) {
+      ancestorKeys.add(attributes.fileKey());
+    }
+    return ancestorKeys;
+  }
+
+  /**
+   * @return true if the entry is a directory that is not one of its own
+   *         ancestors (i.e. a link that would make the walk go round in
+   *         circles)
+   */
+  private static boolean isWalkable(WalkEntry entry, Set<Object> ancestorKeys) {
+    if (!entry.getAttributes().isDirectory()) {
+      return false;
+    }
+    Object fileKey = entry.getAttributes().fileKey();
+    if (fileKey != null && ancestorKeys.contains(fileKey)) {
+      LOGGER.warn("Not walking {} because it links to one of its parent directories", entry.getPath());
+      return false;
+    }
+    return true;
+  }
+
+  public static class WalkEntry {
+    private final Path path;
+    private final BasicFileAttributes attributes;
+
+    public WalkEntry(Path path, BasicFileAttributes attributes) {
+      this.path = path;
+      this.attributes = attributes;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public BasicFileAttributes getAttributes() {
+      return attributes;
+    }
+  }
+
+  /**
+   * Iterator over the entries put in a bounded queue, in order, by a producer
+   * that walks the tree depth first while the next subdirectories are listed
+   * in parallel
+   */
+  public static class WalkIterator implements Iterator<WalkEntry>, Closeable {
+    private final Walk walk;
+    private Object next = null;
+
+    private WalkIterator(boolean followLinks) {
+      this.walk = new Walk(this, followLinks);
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        try {
+          next = walk.queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new UncheckedIOException(new IOException("Interrupted while walking directory", e));
+        }
+      }
+      if (next instanceof UncheckedIOException) {
+        throw (UncheckedIOException) next;
+      }
+      return next != Walk.END;
+    }
+
+    @Override
+    public WalkEntry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      WalkEntry entry = (WalkEntry) next;
+      next = null;
+      return entry;
+    }
+
+    /**
+     * Stops the walk (if not yet done)
+     */
+    @Override
+    public void close() {
+      walk.close();
+    }
+  }
+
+  /**
+   * State of a walk shared by its iterator and its producer. The producer only
+   * keeps a weak reference to the iterator, so that the walk also stops if the
+   * iterator is discarded without being consumed until the end or closed.
+   */
+  private static class Walk {
+    private static final Object END = new Object();
+
+    private final WeakReference<WalkIterator> consumer;
+    private final boolean followLinks;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private volatile boolean closed = false;
+
+    private Walk(WalkIterator consumer, boolean followLinks) {
+      this.consumer = new WeakReference<>(consumer);
+      this.followLinks = followLinks;
+    }
+
+    private void start(Path directory, Set<Object> ancestorKeys) {
+      PRODUCERS.execute(() -> {
+        Object last = END;
+        try {
+          produce(POOL.submit(() -> list(directory, followLinks)), ancestorKeys);
+        } catch (IOException e) {
+          last = new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          last = new UncheckedIOException(new IOException("Interrupted while walking " + directory, e));
+        } catch (WalkClosedException e) {
+          return;
+        }
+        try {
+          put(last);
+        } catch (WalkClosedException | InterruptedException e) {
+          // nobody is waiting for the end
+        }
+      });
+    }
+
+    private void produce(ForkJoinTask<List<WalkEntry>> listing, Set<Object> ancestorKeys)
+      throws IOException, InterruptedException, WalkClosedException {
+      List<WalkEntry> children;
+      try {
+        children = listing.get();
+      } catch (ExecutionException e) {
+        throw toIOException(e);
+      }
+
+      List<WalkEntry> subdirectories = new ArrayList<>();
+      for (WalkEntry child : children) {
+        if (isWalkable(child, ancestorKeys)) {
+          subdirectories.add(child);
+        }
+      }
+
+      // subdirectories are listed ahead of their turn, but only a few at a time
+      Iterator<WalkEntry> toList = subdirectories.iterator();
+      Deque<ForkJoinTask<List<WalkEntry>>> listings = new ArrayDeque<>();
+      try {
+        int nextSubdirectory = 0;
+        for (WalkEntry child : children) {
+          put(child);
+          if (nextSubdirectory < subdirectories.size() && subdirectories.get(nextSubdirectory) == child) {
+            nextSubdirectory++;
+            while (listings.size() < PREFETCHED_DIRECTORIES && toList.hasNext()) {
+              Path subdirectory = toList.next().getPath();
+              listings.add(POOL.submit(() -> list(subdirectory, followLinks)));
+            }
+            produce(listings.poll(), ancestorKeysOf(ancestorKeys, child.getAttributes()));
+          }
+        }
+      } finally {
+        listings.forEach(pending -> pending.cancel(true));
+      }
+    }
+
+    private void put(Object item) throws InterruptedException, WalkClosedException {
+      do {
+        if (closed) {
+          throw new WalkClosedException();
+        }
+        if (consumer.get() == null) {
+          LOGGER.warn("Stopping a directory walk whose iterator was discarded without being closed");
+          close();
+          throw new WalkClosedException();
+        }
+      } while (!queue.offer(item, POLL_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    private void close() {
+      closed = true;
+      queue.clear();
+    }
+
+    private static IOException toIOException(ExecutionException e) {
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException) {
+          return (IOException) cause;
+        }
+      }
+      return new IOException(e.getCause());
+    }
+  }
+
+  private static class WalkClosedException extends Exception {
+    private static final long serialVersionUID = 2851730569471085734L;
+  }
+
+  private static class CountTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Path directory;
+    private final transient Set<Object> ancestorKeys;
+    private final boolean followLinks;
+
+    public CountTask(Path directory, Set<Object> ancestorKeys, boolean followLinks) {
+      this.directory = directory;
+      this.ancestorKeys = ancestorKeys;
+      this.followLinks = followLinks;
+    }
+
+    @Override
+    protected Long compute() {
+      long count = 0;
+      List<CountTask> subtasks = new ArrayList<>();
+      try {
+        for (WalkEntry child : list(directory, followLinks)) {
+          count++;
+          if (isWalkable(child, ancestorKeys)) {
+            CountTask subtask = new CountTask(child.getPath(), ancestorKeysOf(ancestorKeys, child.getAttributes()),
+              followLinks);
+            subtask.fork();
+            subtasks.add(subtask);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+
+      for (CountTask subtask : subtasks) {
+        count += subtask.join();
+      }
+      return count;
+    }
+  }
+
+}
@@ -12,6 +12,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.ActionLogWriter;
 import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.v2.log.LogEntry;
 import org.roda.core.data.v2.log.LogEntry.LOG_ENTRY_STATE;
@@ -72,11 +73,16 @@ public final class ControllerAssistantUtils {
   }
 
   private static void registerAction(LogEntry logEntry) {
-    try {
-      RodaCoreFactory.getModelService().addLogEntry(logEntry, RodaCoreFactory.getLogPath());
-    } catch (RODAException e) {
-      LOGGER.error("Error registering action (actionComponent={}, actionMethod={})", logEntry.getActionComponent(),
-        logEntry.getActionMethod(), e);
+    ActionLogWriter actionLogWriter = RodaCoreFactory.getActionLogWriter();
+    if (actionLogWriter != null) {
+      actionLogWriter.add(logEntry);
+    } else {
+      try {
+        RodaCoreFactory.getModelService().addLogEntry(logEntry, RodaCoreFactory.getLogPath());
+      } catch (RODAException e) {
+        LOGGER.error("Error registering action (actionComponent={}, actionMethod={})", logEntry.getActionComponent(),
+          logEntry.getActionMethod(), e);
+      }
     }
   }
 }